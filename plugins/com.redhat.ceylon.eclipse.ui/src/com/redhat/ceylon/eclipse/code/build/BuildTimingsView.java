@@ -0,0 +1,218 @@
+package com.redhat.ceylon.eclipse.code.build;
+
+import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
+import static com.redhat.ceylon.eclipse.util.CsvExportAction.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.part.ViewPart;
+
+import com.redhat.ceylon.eclipse.core.builder.BuildTimings;
+import com.redhat.ceylon.eclipse.core.builder.BuildTimings.UnitTiming;
+import com.redhat.ceylon.eclipse.core.builder.BuildTimingsHook;
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderCacheStatistics;
+import com.redhat.ceylon.eclipse.util.CsvExportAction;
+
+/**
+ * Shows the phases and the slowest typechecked units of the
+ * recent builds recorded by the {@link BuildTimingsHook}.
+ */
+public class BuildTimingsView extends ViewPart
+        implements BuildTimingsHook.Listener {
+
+    static final String ID = PLUGIN_ID + ".view.BuildTimingsView";
+
+    private static final int SHOWN_UNITS = 100;
+
+    private Combo buildCombo;
+    private Label summary;
+    private TableViewer viewer;
+    private List<BuildTimings> builds;
+
+    @Override
+    public void createPartControl(Composite parent) {
+        Composite composite = new Composite(parent, SWT.NONE);
+        composite.setLayout(new GridLayout(1, false));
+
+        buildCombo = new Combo(composite, SWT.DROP_DOWN | SWT.READ_ONLY);
+        GridDataFactory.fillDefaults().grab(true, false).applyTo(buildCombo);
+        buildCombo.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                showBuild();
+            }
+        });
+
+        summary = new Label(composite, SWT.WRAP);
+        GridDataFactory.fillDefaults().grab(true, false).applyTo(summary);
+
+        viewer = new TableViewer(composite,
+                SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.BORDER);
+        viewer.getTable().setHeaderVisible(true);
+        viewer.getTable().setLinesVisible(true);
+        GridDataFactory.fillDefaults().grab(true, true).applyTo(viewer.getControl());
+        viewer.setContentProvider(ArrayContentProvider.getInstance());
+        TableViewerColumn unitColumn =
+                new TableViewerColumn(viewer, SWT.LEFT);
+        unitColumn.getColumn().setText("Unit");
+        unitColumn.getColumn().setWidth(400);
+        unitColumn.setLabelProvider(new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return ((UnitTiming) element).getPath();
+            }
+        });
+        TableViewerColumn timeColumn =
+                new TableViewerColumn(viewer, SWT.RIGHT);
+        timeColumn.getColumn().setText("Typechecking (ms)");
+        timeColumn.getColumn().setWidth(120);
+        timeColumn.setLabelProvider(new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                long duration = ((UnitTiming) element).getDuration();
+                return String.format("%.1f", duration / 1000000.0);
+            }
+        });
+
+        IToolBarManager tbm = getViewSite().getActionBars().getToolBarManager();
+        tbm.add(new CsvExportAction(this, 
+                "Export the recorded builds as CSV", 
+                "build-timings.csv", "Export Build Timings") {
+            @Override
+            protected void writeCsv(Writer writer) throws IOException {
+                BuildTimingsView.writeCsv(writer, 
+                        BuildTimingsHook.getInstance().getRecentBuilds());
+            }
+        });
+
+        BuildTimingsHook.getInstance().addListener(this);
+        refresh();
+    }
+
+    @Override
+    public void dispose() {
+        BuildTimingsHook.getInstance().removeListener(this);
+        super.dispose();
+    }
+
+    @Override
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    @Override
+    public void buildRecorded(BuildTimings timings) {
+        Display.getDefault().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (!viewer.getControl().isDisposed()) {
+                    refresh();
+                }
+            }
+        });
+    }
+
+    private void refresh() {
+        builds = BuildTimingsHook.getInstance().getRecentBuilds();
+        DateFormat format = DateFormat.getTimeInstance();
+        String[] items = new String[builds.size()];
+        for (int i=0; i<items.length; i++) {
+            BuildTimings build = builds.get(i);
+            items[i] = format.format(new Date(build.getStartTime())) +
+                    " - " + (build.isFullBuild() ? "full" : "incremental") +
+                    " build of " + build.getProjectName() +
+                    " (" + build.getDuration() + " ms)";
+        }
+        buildCombo.setItems(items);
+        if (items.length > 0) {
+            buildCombo.select(0);
+        }
+        showBuild();
+    }
+
+    private void showBuild() {
+        int index = buildCombo.getSelectionIndex();
+        if (index < 0 || index >= builds.size()) {
+            summary.setText("No build recorded yet");
+            viewer.setInput(new Object[0]);
+        }
+        else {
+            BuildTimings build = builds.get(index);
+            summary.setText(getSummary(build));
+            viewer.setInput(build.getSlowestUnits(SHOWN_UNITS));
+        }
+        summary.getParent().layout();
+    }
+
+    private static String getSummary(BuildTimings build) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> phase:
+                build.getPhaseDurations().entrySet()) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(phase.getKey()).append(": ")
+                .append(phase.getValue()).append(" ms");
+        }
+        text.append('\n');
+        text.append(build.getNumberOfTypecheckedUnits())
+            .append(" typechecked units");
+        for (Map.Entry<String, Integer> files:
+                build.getFileCounts().entrySet()) {
+            text.append(", ").append(files.getValue())
+                .append(' ').append(files.getKey()).append(" files");
+        }
+        ModelLoaderCacheStatistics statistics = build.getCacheStatistics();
+        if (statistics != null && statistics.getHitRate() >= 0) {
+            text.append('\n')
+                .append(statistics.getNewClassMirrorLookups())
+                .append(" model loader lookups, ")
+                .append(Math.round(statistics.getHitRate() * 100))
+                .append("% without searching the Java model");
+        }
+        return text.toString();
+    }
+
+    /**
+     * One line per phase and per typechecked unit of each
+     * build, with the durations in microseconds.
+     */
+    private static void writeCsv(Writer writer, List<BuildTimings> builds)
+            throws IOException {
+        writer.write("project,start,full,kind,name,micros\n");
+        for (BuildTimings build: builds) {
+            String prefix = csv(build.getProjectName()) + "," +
+                    build.getStartTime() + "," + build.isFullBuild() + ",";
+            writer.write(prefix + "build,," + build.getDuration() * 1000 + "\n");
+            for (Map.Entry<String, Long> phase:
+                    build.getPhaseDurations().entrySet()) {
+                writer.write(prefix + "phase," + csv(phase.getKey()) + "," +
+                        phase.getValue() * 1000 + "\n");
+            }
+            for (UnitTiming unit:
+                    build.getSlowestUnits(Integer.MAX_VALUE)) {
+                writer.write(prefix + "unit," + csv(unit.getPath()) + "," +
+                        unit.getDuration() / 1000 + "\n");
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.redhat.ceylon.eclipse.code.complete;
 
 import static com.redhat.ceylon.model.typechecker.model.Util.isAbstraction;
+import static com.redhat.ceylon.model.typechecker.model.Util.isNameMatching;
+import static com.redhat.ceylon.model.typechecker.model.Util.isResolvable;
 import static com.redhat.ceylon.model.typechecker.model.Util.isTypeUnknown;
 import static com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer.AIDENTIFIER;
 import static com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer.ASTRING_LITERAL;
@@ -70,6 +72,8 @@ import static com.redhat.ceylon.eclipse.code.complete.RefinementCompletionPropos
 import static com.redhat.ceylon.eclipse.code.complete.TypeArgumentListCompletions.addTypeArgumentListProposal;
 import static com.redhat.ceylon.eclipse.code.outline.CeylonLabelProvider.getDecoratedImage;
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.AUTO_ACTIVATION_CHARS;
+import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.AUTO_INSERT;
+import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.AUTO_INSERT_PREFIX;
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.COMPLETION_FILTERS;
 import static com.redhat.ceylon.eclipse.util.EditorUtil.getPreferences;
 import static com.redhat.ceylon.eclipse.util.Nodes.findNode;
@@ -121,17 +125,27 @@ import java.util.regex.Pattern;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.Token;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.ITextOperationTarget;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
 import org.eclipse.jface.text.contentassist.IContextInformation;
 import org.eclipse.jface.text.contentassist.IContextInformationValidator;
+import org.eclipse.jface.text.source.ISourceViewer;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Display;
 
 import com.redhat.ceylon.model.typechecker.model.Class;
 import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
@@ -185,9 +199,190 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
     private int lastOffsetAcrossSessions=-1;
     private int lastOffset=-1;
     
+    /**
+     * Serializes the computations of the proposals, since
+     * they all parse the document with the same controller.
+     */
+    private final Object computationLock = new Object();
+    /**
+     * Incremented by each request for completions, so that
+     * the proposals computed for an earlier request are
+     * discarded.
+     */
+    private volatile int generation = 0;
+    private CompletionJob completionJob;
+    private CompletedProposals completedProposals;
+    private volatile boolean partialProposals;
+    
+    private final CompletionCandidateCache candidateCache = 
+            new CompletionCandidateCache();
+    /**
+     * The modification stamp of the document when it was
+     * last parsed during the current session, so that the
+     * requests that follow, while the document is unchanged,
+     * reuse the tree and the cached candidates.
+     */
+    private long parsedModificationStamp = 
+            IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    private Tree.CompilationUnit parsedRootNode;
+    /**
+     * Incremented when a session starts or ends, so that
+     * the next computation, which holds the computation
+     * lock, forgets the tree and the cached candidates.
+     * The UI thread never waits for the lock to reset them.
+     */
+    private volatile int parseStateResets = 0;
+    private int resetParseStateResets = 0;
+    
     public void sessionStarted() {
         secondLevel = false;
         lastOffset=-1;
+        resetParseState();
+    }
+    
+    public void sessionEnded() {
+        generation++;
+        cancelCompletionJob();
+        completedProposals = null;
+        resetParseState();
+    }
+    
+    private void resetParseState() {
+        parseStateResets++;
+    }
+    
+    /**
+     * Forgets the tree and the cached candidates if a 
+     * session started or ended since they were computed.
+     * Must be called while holding the computation lock.
+     */
+    private void resetStaleParseState() {
+        int resets = parseStateResets;
+        if (resets!=resetParseStateResets) {
+            parsedModificationStamp = 
+                    IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+            parsedRootNode = null;
+            candidateCache.clear();
+            resetParseStateResets = resets;
+        }
+    }
+    
+    /**
+     * The complete list of proposals, computed in background
+     * after the local proposals were shown.
+     */
+    private static final class CompletedProposals {
+        final IDocument document;
+        final long modificationStamp;
+        final int offset;
+        final boolean secondLevel;
+        final ICompletionProposal[] proposals;
+        CompletedProposals(IDocument document, int offset, 
+                boolean secondLevel, ICompletionProposal[] proposals) {
+            this.document = document;
+            this.modificationStamp = getModificationStamp(document);
+            this.offset = offset;
+            this.secondLevel = secondLevel;
+            this.proposals = proposals;
+        }
+        boolean isFor(IDocument document, int offset, boolean secondLevel) {
+            return this.document==document && 
+                    this.modificationStamp==getModificationStamp(document) &&
+                    this.offset==offset && 
+                    this.secondLevel==secondLevel;
+        }
+    }
+    
+    private static long getModificationStamp(IDocument document) {
+        return document instanceof IDocumentExtension4 ?
+                ((IDocumentExtension4) document).getModificationStamp() :
+                IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+    
+    /**
+     * Computes all the proposals in background, and shows 
+     * them in place of the local proposals if the document 
+     * and the caret didn't move in the meantime.
+     */
+    private final class CompletionJob extends Job {
+        private final ITextViewer viewer;
+        private final int offset;
+        private final boolean secondLevel;
+        private final boolean returnedParamInfo;
+        private final int generation;
+        private final long modificationStamp;
+        
+        CompletionJob(ITextViewer viewer, int offset, 
+                boolean secondLevel, boolean returnedParamInfo,
+                int generation) {
+            super("Preparing completions");
+            this.viewer = viewer;
+            this.offset = offset;
+            this.secondLevel = secondLevel;
+            this.returnedParamInfo = returnedParamInfo;
+            this.generation = generation;
+            this.modificationStamp = 
+                    getModificationStamp(viewer.getDocument());
+            setSystem(true);
+            setPriority(INTERACTIVE);
+        }
+        
+        @Override
+        protected IStatus run(IProgressMonitor jobMonitor) {
+            //stop as soon as the user types something
+            IProgressMonitor monitor = 
+                    new ProgressMonitorWrapper(jobMonitor) {
+                @Override
+                public boolean isCanceled() {
+                    return super.isCanceled() || isStale();
+                }
+            };
+            final ICompletionProposal[] proposals;
+            synchronized (computationLock) {
+                if (monitor.isCanceled() || isStale()) {
+                    return Status.CANCEL_STATUS;
+                }
+                //the document was already parsed for 
+                //the local proposals
+                proposals = getContentProposals(
+                        editor.getParseController(), 
+                        offset, viewer, secondLevel, 
+                        returnedParamInfo, false, false, 
+                        monitor);
+            }
+            if (proposals==null || monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            Display.getDefault().asyncExec(new java.lang.Runnable() {
+                @Override
+                public void run() {
+                    if (!isStale() && 
+                            viewer instanceof ITextOperationTarget &&
+                            viewer.getTextWidget()!=null &&
+                            !viewer.getTextWidget().isDisposed() &&
+                            viewer.getSelectedRange().x==offset) {
+                        completedProposals = 
+                                new CompletedProposals(viewer.getDocument(), 
+                                        offset, secondLevel, proposals);
+                        ((ITextOperationTarget) viewer)
+                                .doOperation(ISourceViewer.CONTENTASSIST_PROPOSALS);
+                    }
+                }
+            });
+            return Status.OK_STATUS;
+        }
+        
+        private boolean isStale() {
+            return generation!=CeylonCompletionProcessor.this.generation ||
+                    modificationStamp!=getModificationStamp(viewer.getDocument());
+        }
+    }
+    
+    private void cancelCompletionJob() {
+        if (completionJob!=null) {
+            completionJob.cancel();
+            completionJob = null;
+        }
     }
     
     public CeylonCompletionProcessor(CeylonEditor editor) {
@@ -196,6 +391,19 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
     
     public ICompletionProposal[] computeCompletionProposals(
             final ITextViewer viewer, final int offset) {
+        CompletedProposals completed = completedProposals;
+        completedProposals = null;
+        if (completed!=null && 
+                completed.isFor(viewer.getDocument(), offset, secondLevel)) {
+            //the proposals computed in background are 
+            //ready, show them in place of the local ones
+            return completed.proposals;
+        }
+        //the user kept typing, or asked for something else,
+        //so the proposals being computed are obsolete
+        final int currentGeneration = ++generation;
+        cancelCompletionJob();
+        
         if (offset!=lastOffsetAcrossSessions) {
             returnedParamInfo = false;
             secondLevel = false;
@@ -219,6 +427,11 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
         lastOffset = offset;
         lastOffsetAcrossSessions = offset;
         
+        //the proposals are computed in two steps: the 
+        //declarations of the current unit and the keywords
+        //are shown first, and the complete list, with the
+        //second-level proposals if requested, replaces them 
+        //once it is computed in background
         class Runnable implements IRunnableWithProgress {
             ICompletionProposal[] contentProposals = NO_COMPLETIONS;
             @Override
@@ -229,11 +442,26 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
                         IProgressMonitor.UNKNOWN);
                 CeylonParseController controller = 
                         editor.getParseController();
-                contentProposals = 
-                        getContentProposals(controller, 
-                                offset, viewer, 
-                                secondLevel, returnedParamInfo,
-                                monitor);
+                synchronized (computationLock) {
+                    partialProposals = false;
+                    contentProposals = 
+                            getContentProposals(controller, 
+                                    offset, viewer, 
+                                    false, returnedParamInfo,
+                                    true, true, monitor);
+                    if (partialProposals &&
+                            !canShowPartialProposals(contentProposals)) {
+                        //the content assistant would insert
+                        //a proposal, or their common prefix,
+                        //so the complete list is needed now
+                        partialProposals = false;
+                        contentProposals = 
+                                getContentProposals(controller, 
+                                        offset, viewer, 
+                                        secondLevel, returnedParamInfo,
+                                        false, false, monitor);
+                    }
+                }
                 if (contentProposals!=null && 
                         contentProposals.length==1 && 
                         contentProposals[0] instanceof 
@@ -244,6 +472,7 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
             }
         }
         Runnable runnable = new Runnable();
+        partialProposals = false;
         try {
             getWorkbench()
                     .getActiveWorkbenchWindow()
@@ -252,9 +481,37 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
         catch (Exception e) {
             e.printStackTrace();
         }
+        if (partialProposals && 
+                currentGeneration==generation) {
+            completionJob = 
+                    new CompletionJob(viewer, offset, 
+                            secondLevel, returnedParamInfo, 
+                            currentGeneration);
+            completionJob.schedule();
+        }
         return runnable.contentProposals;
     }
 
+    /**
+     * Determines if the given partial proposals can be shown
+     * until the complete list is computed, that is, if the
+     * content assistant won't insert one of them, or their
+     * common prefix, right away.
+     */
+    private static boolean canShowPartialProposals(
+            ICompletionProposal[] proposals) {
+        if (proposals==null || 
+                getPreferences().getBoolean(AUTO_INSERT_PREFIX)) {
+            return false;
+        }
+        else if (getPreferences().getBoolean(AUTO_INSERT)) {
+            return proposals.length>1;
+        }
+        else {
+            return proposals.length>0;
+        }
+    }
+
     private boolean isIdentifierCharacter(ITextViewer viewer, int offset)
             throws BadLocationException {
         char ch = viewer.getDocument().get(offset-1, 1).charAt(0);
@@ -299,6 +556,28 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
             int offset, ITextViewer viewer, 
             boolean secondLevel, boolean returnedParamInfo, 
             IProgressMonitor monitor) {
+        return getContentProposals(controller, offset, viewer, 
+                secondLevel, returnedParamInfo, true, false, 
+                monitor);
+    }
+    
+    /**
+     * @param parse true if the document must be parsed 
+     *        again, false if it was already parsed by the
+     *        previous computation
+     * @param localOnly true to propose only the keywords,
+     *        the members of the qualifying type, and the 
+     *        declarations of the current unit, without 
+     *        searching the imported declarations, in which
+     *        case {@link #partialProposals} is set if some
+     *        proposals may have been left out
+     */
+    private ICompletionProposal[] getContentProposals(
+            CeylonParseController controller,
+            int offset, ITextViewer viewer, 
+            boolean secondLevel, boolean returnedParamInfo, 
+            boolean parse, boolean localOnly,
+            IProgressMonitor monitor) {
         
         if (controller==null || viewer==null || 
                 controller.getRootNode()==null || 
@@ -306,9 +585,19 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
             return null;
         }
         
-        controller.parse(viewer.getDocument(), 
-                new NullProgressMonitor(), null);
-        controller.getHandler().updateAnnotations();
+        resetStaleParseState();
+        long modificationStamp = 
+                getModificationStamp(viewer.getDocument());
+        if (parse && 
+                (modificationStamp==IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP ||
+                 modificationStamp!=parsedModificationStamp ||
+                 controller.getRootNode()!=parsedRootNode)) {
+            controller.parse(viewer.getDocument(), 
+                    new NullProgressMonitor(), null);
+            controller.getHandler().updateAnnotations();
+            parsedModificationStamp = modificationStamp;
+            parsedRootNode = controller.getRootNode();
+        }
         List<CommonToken> tokens = controller.getTokens(); 
         Tree.CompilationUnit rn = controller.getRootNode();
         
@@ -428,10 +717,40 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
                         monitor);
         if (completions==null) {
             //finally, construct and sort proposals
-            Map<String, DeclarationWithProximity> proposals = 
-                    getProposals(node, scope, prefix, isMemberOp, rn);
-            Map<String, DeclarationWithProximity> functionProposals =
-                    getFunctionProposals(node, scope, prefix, isMemberOp);
+            Map<String, DeclarationWithProximity> proposals;
+            Map<String, DeclarationWithProximity> functionProposals;
+            if (localOnly && isUnqualified(node, isMemberOp)) {
+                proposals = getLocalProposals(scope, 
+                        node.getUnit(), prefix);
+            }
+            else {
+                proposals = candidateCache.getProposals(rn, node, 
+                        scope, isMemberOp, prefix);
+                if (proposals==null) {
+                    proposals = getProposals(node, scope, prefix, 
+                            isMemberOp, rn);
+                    candidateCache.putProposals(rn, node, scope, 
+                            isMemberOp, prefix, proposals);
+                }
+            }
+            if (localOnly) {
+                //the unary functions are searched among all
+                //the declarations in scope
+                functionProposals = 
+                        new HashMap<String, DeclarationWithProximity>();
+                partialProposals = true;
+            }
+            else {
+                functionProposals =
+                        candidateCache.getFunctionProposals(rn, node, 
+                                scope, isMemberOp, prefix);
+                if (functionProposals==null) {
+                    functionProposals = getFunctionProposals(node, 
+                            scope, prefix, isMemberOp);
+                    candidateCache.putFunctionProposals(rn, node, 
+                            scope, isMemberOp, prefix, functionProposals);
+                }
+            }
             filterProposals(proposals);
             filterProposals(functionProposals);
             Set<DeclarationWithProximity> sortedProposals = 
@@ -444,12 +763,68 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
                             sortedProposals, sortedFunctionProposals, 
                             controller, scope, node, adjustedToken, isMemberOp, 
                             viewer.getDocument(), secondLevel, inDoc,
-                            requiredType, previousTokenType, tokenType);
+                            requiredType, previousTokenType, tokenType,
+                            monitor);
         }
         return completions;
         
     }
     
+    /**
+     * Determines if the declarations proposed at the given
+     * node are searched among all the declarations in scope,
+     * rather than among the members of a type or a package.
+     */
+    private static boolean isUnqualified(Node node, boolean memberOp) {
+        return !memberOp &&
+                !(node instanceof Tree.MemberLiteral) &&
+                !(node instanceof Tree.TypeLiteral) &&
+                !(node instanceof Tree.QualifiedMemberOrTypeExpression) &&
+                !(node instanceof Tree.QualifiedType) &&
+                !(node instanceof Tree.BaseType && 
+                        ((Tree.BaseType) node).getPackageQualified());
+    }
+    
+    /**
+     * The declarations of the given unit, visible in the 
+     * given scope, and matching the given prefix, found 
+     * without searching the imported and the inherited 
+     * declarations.
+     */
+    private static Map<String, DeclarationWithProximity> 
+    getLocalProposals(Scope scope, Unit unit, String prefix) {
+        Map<String, DeclarationWithProximity> proposals = 
+                newEmptyProposals();
+        int proximity = 0;
+        for (Scope s=scope; 
+                s!=null && !(s instanceof Package); 
+                s=s.getContainer()) {
+            for (Declaration dec: s.getMembers()) {
+                addLocalProposal(dec, prefix, proximity, proposals);
+            }
+            proximity++;
+        }
+        if (unit!=null) {
+            for (Declaration dec: unit.getDeclarations()) {
+                if (dec.isToplevel()) {
+                    addLocalProposal(dec, prefix, proximity, proposals);
+                }
+            }
+        }
+        return proposals;
+    }
+
+    private static void addLocalProposal(Declaration dec, 
+            String prefix, int proximity, 
+            Map<String, DeclarationWithProximity> proposals) {
+        //the innermost declaration hides the outer ones
+        if (isResolvable(dec) && isNameMatching(prefix, dec) &&
+                !proposals.containsKey(dec.getName())) {
+            proposals.put(dec.getName(), 
+                    new DeclarationWithProximity(dec, proximity));
+        }
+    }
+    
     private void filterProposals(Map<String, DeclarationWithProximity> proposals) {
         List<Pattern> filters = getProposalFilters();
         if (!filters.isEmpty()) {
@@ -471,7 +846,35 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
         }
     }
 
-    private List<Pattern> getProposalFilters() {
+    private static List<Pattern> proposalFilters;
+    private static IPropertyChangeListener proposalFiltersListener;
+    
+    /**
+     * The patterns of the completion filters preference,
+     * compiled again only when the preference changes.
+     */
+    private static synchronized List<Pattern> getProposalFilters() {
+        if (proposalFiltersListener==null) {
+            proposalFiltersListener = new IPropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent event) {
+                    if (COMPLETION_FILTERS.equals(event.getProperty())) {
+                        synchronized (CeylonCompletionProcessor.class) {
+                            proposalFilters = null;
+                        }
+                    }
+                }
+            };
+            getPreferences()
+                    .addPropertyChangeListener(proposalFiltersListener);
+        }
+        if (proposalFilters==null) {
+            proposalFilters = compileProposalFilters();
+        }
+        return proposalFilters;
+    }
+    
+    private static List<Pattern> compileProposalFilters() {
         List<Pattern> filters = new ArrayList<Pattern>();
         String filtersString = 
                 getPreferences()
@@ -777,7 +1180,7 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
             boolean memberOp, IDocument doc, 
             boolean secondLevel, boolean inDoc,
             ProducedType requiredType, int previousTokenType, 
-            int tokenType) {
+            int tokenType, IProgressMonitor monitor) {
         
         final List<ICompletionProposal> result = 
                 new ArrayList<ICompletionProposal>();
@@ -896,6 +1299,9 @@ public class CeylonCompletionProcessor implements IContentAssistProcessor {
                     isModuleDescriptor(cpc) || 
                     isPackageDescriptor(cpc);
             for (DeclarationWithProximity dwp: sortedProposals) {
+                if (monitor.isCanceled()) {
+                    return null;
+                }
                 Declaration dec = dwp.getDeclaration();
             try {
                 if (!dec.isToplevel() && 
@@ -0,0 +1,122 @@
+package com.redhat.ceylon.eclipse.code.complete;
+
+import static com.redhat.ceylon.model.typechecker.model.Util.isNameMatching;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.model.typechecker.model.DeclarationWithProximity;
+import com.redhat.ceylon.model.typechecker.model.Scope;
+
+/**
+ * The declarations matching the prefix typed at a location,
+ * remembered for the rest of a completion session, so that
+ * a later request at the same location, for the same prefix
+ * or for a longer one, filters them instead of searching the
+ * scope again.
+ *
+ * The candidates are only reused as long as the tree they
+ * were computed from is the current tree of the editor, that
+ * is, until the document is typechecked again.
+ */
+final class CompletionCandidateCache {
+
+    private static final class Entry {
+        final Tree.CompilationUnit rootNode;
+        final Node node;
+        final Scope scope;
+        final boolean memberOp;
+        final String prefix;
+        final Map<String, DeclarationWithProximity> candidates;
+
+        Entry(Tree.CompilationUnit rootNode, Node node,
+                Scope scope, boolean memberOp, String prefix,
+                Map<String, DeclarationWithProximity> candidates) {
+            this.rootNode = rootNode;
+            this.node = node;
+            this.scope = scope;
+            this.memberOp = memberOp;
+            this.prefix = prefix;
+            this.candidates = candidates;
+        }
+
+        boolean isFor(Tree.CompilationUnit rootNode, Node node,
+                Scope scope, boolean memberOp, String prefix) {
+            return this.rootNode==rootNode &&
+                    this.node==node &&
+                    this.scope==scope &&
+                    this.memberOp==memberOp &&
+                    prefix.startsWith(this.prefix);
+        }
+    }
+
+    private Entry proposals;
+    private Entry functionProposals;
+
+    synchronized void clear() {
+        proposals = null;
+        functionProposals = null;
+    }
+
+    /**
+     * A copy of the cached declarations matching the given
+     * prefix, or null if they must be searched again.
+     */
+    synchronized Map<String, DeclarationWithProximity> getProposals(
+            Tree.CompilationUnit rootNode, Node node, Scope scope,
+            boolean memberOp, String prefix) {
+        return filter(proposals, rootNode, node, scope,
+                memberOp, prefix);
+    }
+
+    synchronized void putProposals(
+            Tree.CompilationUnit rootNode, Node node, Scope scope,
+            boolean memberOp, String prefix,
+            Map<String, DeclarationWithProximity> candidates) {
+        proposals = new Entry(rootNode, node, scope,
+                memberOp, prefix, copy(candidates));
+    }
+
+    synchronized Map<String, DeclarationWithProximity> getFunctionProposals(
+            Tree.CompilationUnit rootNode, Node node, Scope scope,
+            boolean memberOp, String prefix) {
+        return filter(functionProposals, rootNode, node, scope,
+                memberOp, prefix);
+    }
+
+    synchronized void putFunctionProposals(
+            Tree.CompilationUnit rootNode, Node node, Scope scope,
+            boolean memberOp, String prefix,
+            Map<String, DeclarationWithProximity> candidates) {
+        functionProposals = new Entry(rootNode, node, scope,
+                memberOp, prefix, copy(candidates));
+    }
+
+    private static Map<String, DeclarationWithProximity> filter(
+            Entry entry, Tree.CompilationUnit rootNode, Node node,
+            Scope scope, boolean memberOp, String prefix) {
+        if (entry==null ||
+                !entry.isFor(rootNode, node, scope, memberOp, prefix)) {
+            return null;
+        }
+        if (prefix.equals(entry.prefix)) {
+            return copy(entry.candidates);
+        }
+        Map<String, DeclarationWithProximity> result =
+                new TreeMap<String, DeclarationWithProximity>();
+        for (Map.Entry<String, DeclarationWithProximity> e:
+                entry.candidates.entrySet()) {
+            if (isNameMatching(prefix, e.getKey())) {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, DeclarationWithProximity> copy(
+            Map<String, DeclarationWithProximity> candidates) {
+        return new TreeMap<String, DeclarationWithProximity>(candidates);
+    }
+}
@@ -4,17 +4,15 @@ import static com.redhat.ceylon.eclipse.util.Nodes.getTokenIndexAtCharacter;
 
 import java.util.List;
 
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonToken;
-import org.antlr.runtime.CommonTokenStream;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.source.ICharacterPairMatcher;
 import org.eclipse.jface.text.source.ICharacterPairMatcherExtension;
 
-import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
 import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.eclipse.code.parse.IncrementalLexer;
 import com.redhat.ceylon.eclipse.util.Nodes;
 
 public class CeylonCharacterPairMatcher 
@@ -65,12 +63,8 @@ public class CeylonCharacterPairMatcher
     }
 
     private List<CommonToken> getTokens(IDocument document) {
-        ANTLRStringStream stream = 
-                new NewlineFixingStringStream(document.get());
-        CeylonLexer lexer = new CeylonLexer(stream);
-        CommonTokenStream ts = new CommonTokenStream(lexer);
-        ts.fill();
-        return ts.getTokens();
+        return IncrementalLexer.forDocument(document)
+                .getTokens(document);
     }
 
     private IRegion getRegion(List<CommonToken> tokens, int index,
@@ -119,7 +119,9 @@ import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IFileEditorInput;
+import org.eclipse.ui.IPartListener;
 import org.eclipse.ui.IPropertyListener;
+import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.IWorkbenchPartSite;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.editors.text.EditorsUI;
@@ -184,8 +186,6 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
     public static final String MESSAGE_BUNDLE = 
             "com.redhat.ceylon.eclipse.code.editor.EditorActionMessages";
 
-    private static final int REPARSE_SCHEDULE_DELAY = 200;
-
     private CeylonParserScheduler parserScheduler;
     private ProblemMarkerManager problemMarkerManager;
     private ICharacterPairMatcher bracketMatcher;
@@ -1110,11 +1110,24 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
 
     public synchronized void scheduleParsing() {
         if (parserScheduler!=null && !backgroundParsingPaused) {
-            parserScheduler.cancel();
-            parserScheduler.schedule(REPARSE_SCHEDULE_DELAY);
+            parserScheduler.scheduleReconcile();
         }
     }
 
+    /**
+     * Schedule parsing after a change to the model, so 
+     * that the source is typechecked again, even if only 
+     * whitespace and comments were edited in the meantime.
+     */
+    private void scheduleTypecheck() {
+        CeylonParseController parseController = 
+                this.parseController;
+        if (parseController!=null) {
+            parseController.forceTypecheck();
+        }
+        scheduleParsing();
+    }
+
     private void initializeParseController() {
         IEditorInput editorInput = getEditorInput();
         IFile file = getFile(editorInput);
@@ -1170,7 +1183,7 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
             new IResourceChangeListener() {
         public void resourceChanged(IResourceChangeEvent event) {
             if (event.getBuildKind()!=CLEAN_BUILD) {
-                scheduleParsing();
+                scheduleTypecheck();
             }
         }
     };
@@ -1233,8 +1246,32 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
             // other resources.
             // TODO: It would be better to match the markers to the 
             // annotations, and decide which annotations to remove.
-            scheduleParsing();
+            scheduleTypecheck();
+        }
+    };
+    
+    /**
+     * Tells the parser scheduler whether this is the active
+     * editor, so that it gives priority to the active editor.
+     * Activating a view doesn't change the active editor.
+     */
+    private IPartListener editorActivationListener = 
+            new IPartListener() {
+        @Override
+        public void partActivated(IWorkbenchPart part) {
+            if (part instanceof IEditorPart && 
+                    parserScheduler!=null) {
+                parserScheduler.setActive(part==CeylonEditor.this);
+            }
         }
+        @Override
+        public void partBroughtToTop(IWorkbenchPart part) {}
+        @Override
+        public void partClosed(IWorkbenchPart part) {}
+        @Override
+        public void partDeactivated(IWorkbenchPart part) {}
+        @Override
+        public void partOpened(IWorkbenchPart part) {}
     };
     
     private void initiateServiceControllers() {
@@ -1247,6 +1284,8 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
         
         addModelListener(new AdditionalAnnotationCreator(this));
         
+        addModelListener(new HighlightingUpdater(this));
+        
         installProjectionSupport();
         
         updateProjectionAnnotationManager();
@@ -1263,6 +1302,8 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
         getWorkspace().addResourceChangeListener(moveListener, IResourceChangeEvent.POST_CHANGE);
         getWorkspace().addResourceChangeListener(buildListener, IResourceChangeEvent.POST_BUILD);
         CeylonBuilder.addModelListener(this);
+        getSite().getPage().addPartListener(editorActivationListener);
+        parserScheduler.setActive(getSite().getPage().getActiveEditor()==this);
         
         parserScheduler.schedule();
         
@@ -1373,6 +1414,7 @@ public class CeylonEditor extends TextEditor implements ICeylonModelListener {
         }
         
         CeylonBuilder.removeModelListener(this);
+        getSite().getPage().removePartListener(editorActivationListener);
         
         IDocument document = getParseController().getDocument();
         if (document!=null) {
@@ -33,9 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonToken;
-import org.antlr.runtime.CommonTokenStream;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.text.AbstractInformationControlManager;
 import org.eclipse.jface.text.BadLocationException;
@@ -70,12 +68,11 @@ import com.redhat.ceylon.model.typechecker.model.Import;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.model.typechecker.model.Unit;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
-import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
 import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
+import com.redhat.ceylon.eclipse.code.parse.IncrementalLexer;
 
 public class CeylonSourceViewer extends ProjectionViewer {
     /**
@@ -355,15 +352,10 @@ public class CeylonSourceViewer extends ProjectionViewer {
                                     .startRewriteSession(SEQUENTIAL);
                     }
                     
-                    ANTLRStringStream stream = 
-                            new NewlineFixingStringStream(doc.get());
-                    CeylonLexer lexer = new CeylonLexer(stream);
-                    CommonTokenStream tokens = 
-                            new CommonTokenStream(lexer);
-                    tokens.fill();
                     CommonToken token = 
                             getTokenStrictlyContainingOffset(offset, 
-                                    tokens.getTokens());
+                                    IncrementalLexer.forDocument(doc)
+                                        .getTokens(doc));
                     boolean quoted;
                     boolean verbatim;
 //                    int startOfTokenInLine;
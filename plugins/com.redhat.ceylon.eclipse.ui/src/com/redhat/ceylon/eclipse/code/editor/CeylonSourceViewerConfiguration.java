@@ -110,6 +110,7 @@ public class CeylonSourceViewerConfiguration extends TextSourceViewerConfigurati
         
         @Override
         public void assistSessionEnded(ContentAssistEvent event) {
+            processor.sessionEnded();
             if (editor!=null) {
                 editor.unpauseBackgroundParsing();
                 editor.scheduleParsing();
@@ -0,0 +1,84 @@
+package com.redhat.ceylon.eclipse.code.editor;
+
+import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.SYNTACTIC_ANALYSIS;
+import static com.redhat.ceylon.eclipse.util.Nodes.getTokenIndexAtCharacter;
+
+import java.util.List;
+
+import org.antlr.runtime.CommonToken;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.swt.widgets.Display;
+
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
+import com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener;
+
+/**
+ * Recolors the identifiers of annotations and packages in
+ * the text that was lexed since the last parse, since the
+ * {@link PresentationDamageRepairer} colors the tokens
+ * before the parser has assigned their types.
+ */
+class HighlightingUpdater implements TreeLifecycleListener {
+
+    private CeylonEditor editor;
+
+    public HighlightingUpdater(CeylonEditor editor) {
+        this.editor = editor;
+    }
+
+    @Override
+    public Stage getStage() {
+        return SYNTACTIC_ANALYSIS;
+    }
+
+    @Override
+    public void update(CeylonParseController parseController,
+            IProgressMonitor monitor) {
+        List<CommonToken> tokens = parseController.getTokens();
+        if (tokens==null) {
+            return;
+        }
+        final IRegion region =
+                parseController.getLexer()
+                    .takeUnparsedRegion(tokens);
+        if (region==null || !hasParsedIdentifiers(tokens, region)) {
+            return;
+        }
+        Display.getDefault().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                CeylonSourceViewer viewer =
+                        editor.getCeylonSourceViewer();
+                if (viewer!=null) {
+                    int length = viewer.getDocument().getLength();
+                    int offset = Math.min(region.getOffset(), length);
+                    int end = Math.min(offset+region.getLength(), length);
+                    viewer.invalidateTextPresentation(offset, end-offset);
+                }
+            }
+        });
+    }
+
+    private static boolean hasParsedIdentifiers(
+            List<CommonToken> tokens, IRegion region) {
+        int end = region.getOffset()+region.getLength();
+        int index = getTokenIndexAtCharacter(tokens, 
+                region.getOffset());
+        if (index<0) index = -index;
+        for (; index<tokens.size(); index++) {
+            CommonToken token = tokens.get(index);
+            if (token.getStartIndex()>end) {
+                break;
+            }
+            int type = token.getType();
+            if (type==CeylonLexer.AIDENTIFIER ||
+                type==CeylonLexer.PIDENTIFIER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -8,10 +8,10 @@ import static com.redhat.ceylon.eclipse.util.Nodes.getTokenIndexAtCharacter;
 import java.util.Iterator;
 import java.util.List;
 
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DocumentEvent;
@@ -30,9 +30,10 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.graphics.Color;
 
-import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
 import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
 import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
+import com.redhat.ceylon.eclipse.code.parse.IncrementalLexer;
 
 class PresentationDamageRepairer implements IPresentationDamager, 
         IPresentationRepairer {
@@ -77,14 +78,143 @@ class PresentationDamageRepairer implements IPresentationDamager,
         Region tokenRegion = 
                 getContainingTokenRegion(event);
         if (tokenRegion == null) {
+            //relex the tokens around the change,
+            //and damage just those tokens
+            return getRelexedRegion(partition);
+        }
+        else {
             //the change is totally within a token,
             //and doesn't break it, return the
             //token extent
+            return tokenRegion;
+        }
+    }
+    
+    private IRegion getRelexedRegion(ITypedRegion partition) {
+        List<CommonToken> previousTokens = tokens;
+        updateTokens();
+        //null if another service lexed another text 
+        //of the document since the tokens were colored
+        IRegion relexed = 
+                IncrementalLexer.getRelexedRegion(tokens, 
+                        previousTokens);
+        if (relexed==null ||
+                changesContext(
+                        IncrementalLexer.getReplacedTokens(tokens), 
+                        relexed)) {
             return partition;
         }
-        else {
-            return tokenRegion;
+        //the token after the relexed tokens is colored
+        //as a member if it follows a member operator
+        int end = relexed.getOffset()+relexed.getLength();
+        int index = getTokenIndexAtCharacter(tokens, end);
+        if (index<0) index = -index;
+        for (; index<tokens.size(); index++) {
+            CommonToken token = tokens.get(index);
+            if (token.getType()==CeylonLexer.EOF) {
+                break;
+            }
+            end = Math.max(end, token.getStopIndex()+1);
+            if (token.getChannel()!=Token.HIDDEN_CHANNEL &&
+                    token.getStartIndex()>=
+                        relexed.getOffset()+relexed.getLength()) {
+                break;
+            }
         }
+        return new Region(relexed.getOffset(), 
+                end-relexed.getOffset());
+    }
+    
+    /**
+     * Does the change affect the coloring of the tokens
+     * which follow it, by opening or closing a string
+     * template or a meta literal?
+     */
+    private boolean changesContext(List<CommonToken> replaced, 
+            IRegion relexed) {
+        int backticks = 0;
+        int templates = 0;
+        for (CommonToken token: replaced) {
+            switch (token.getType()) {
+            case CeylonLexer.BACKTICK:
+                backticks++;
+                break;
+            case CeylonLexer.STRING_START:
+                templates++;
+                break;
+            case CeylonLexer.STRING_END:
+                templates--;
+                break;
+            }
+        }
+        int end = relexed.getOffset()+relexed.getLength();
+        int index = getTokenIndexAtCharacter(tokens, 
+                relexed.getOffset());
+        if (index<0) index = -index;
+        for (; index<tokens.size(); index++) {
+            CommonToken token = tokens.get(index);
+            if (token.getStartIndex()>=end) {
+                break;
+            }
+            switch (token.getType()) {
+            case CeylonLexer.BACKTICK:
+                backticks--;
+                break;
+            case CeylonLexer.STRING_START:
+                templates--;
+                break;
+            case CeylonLexer.STRING_END:
+                templates++;
+                break;
+            }
+        }
+        return backticks%2!=0 || templates!=0;
+    }
+    
+    /**
+     * Is the parse controller of the editor going to parse
+     * the tokens of the document we're coloring? It doesn't
+     * for a source archive, whose tokens come from the
+     * build.
+     */
+    private boolean isParsedByEditor() {
+        if (editor!=null && editor.isEditable()) {
+            CeylonSourceViewer viewer = 
+                    editor.getCeylonSourceViewer();
+            CeylonParseController controller = 
+                    editor.getParseController();
+            return viewer!=null && controller!=null &&
+                    viewer.getDocument()==document;
+        }
+        return false;
+    }
+    
+    /**
+     * Lex the document with the lexer shared by the services
+     * of its editors, and if no parse controller is going
+     * to parse the tokens, parse them, so that the lexer 
+     * knows the types the parser assigns to the identifiers
+     * of annotations and packages.
+     */
+    private void updateTokens() {
+        IncrementalLexer lexer = 
+                IncrementalLexer.forDocument(document);
+        List<CommonToken> newTokens = lexer.getTokens(document);
+        if (newTokens!=tokens && !isParsedByEditor()) {
+            CommonTokenStream tokenStream = 
+                    IncrementalLexer.getTokenStream(newTokens);
+            try {
+                new CeylonParser(tokenStream).compilationUnit();
+            }
+            catch (RecognitionException e) {
+                throw new RuntimeException(e);
+            }
+            @SuppressWarnings("unchecked")
+            List<CommonToken> parsedTokens = 
+                    tokenStream.getTokens();
+            lexer.parsed(newTokens, parsedTokens);
+        }
+        tokens = newTokens;
     }
     
     private Region getContainingTokenRegion(DocumentEvent event) {
@@ -195,27 +325,16 @@ class PresentationDamageRepairer implements IPresentationDamager,
     
     public void createPresentation(TextPresentation presentation, 
             ITypedRegion damage) {
-        ANTLRStringStream input = 
-                new NewlineFixingStringStream(document.get());
-        CeylonLexer lexer = 
-                new CeylonLexer(input);
-        CommonTokenStream tokenStream = 
-                new CommonTokenStream(lexer);
-        
-        CeylonParser parser = 
-                new CeylonParser(tokenStream);
-        try {
-            parser.compilationUnit();
-        }
-        catch (RecognitionException e) {
-            throw new RuntimeException(e);
-        }
-        
-        //it sounds strange, but it's better to parse
-        //and cache here than in getDamageRegion(),
-        //because these methods get called in strange
-        //orders
-        tokens = tokenStream.getTokens();
+        //it sounds strange, but we need to lex here
+        //too, because these methods get called in 
+        //strange orders, though usually the tokens 
+        //were already lexed by getDamageRegion()
+        //(note that we don't parse, so identifiers 
+        //of annotations and packages in the edited 
+        //text get colored by the HighlightingUpdater, 
+        //once the parse controller has parsed the 
+        //tokens)
+        updateTokens();
         
         highlightTokens(presentation, damage);
     }
@@ -227,12 +346,19 @@ class PresentationDamageRepairer implements IPresentationDamager,
         boolean inMetaLiteral=false;
         int inInterpolated=0;
         boolean afterMemberOp = false;
+        List<CommonToken> tokens = this.tokens;
+        //the types assigned by the parser
+        int[] types = IncrementalLexer.forDocument(document)
+                .getParsedTypes(tokens);
         //start iterating tokens
         Iterator<CommonToken> iter = tokens.iterator();
+        int index = -1;
         if (iter!=null) {
             while (iter.hasNext()) {
                 CommonToken token= iter.next();
-                int tt = token.getType();
+                index++;
+                int tt = types==null ? 
+                        token.getType() : types[index];
                 if (tt==CeylonLexer.EOF) {
                     break;
                 }
@@ -280,7 +406,7 @@ class PresentationDamageRepairer implements IPresentationDamager,
                 }
                 changeTokenPresentation(presentation, 
                         afterMemberOp && tt==CeylonLexer.LIDENTIFIER ?
-                                getMemberColoring() : getColoring(token), 
+                                getMemberColoring() : getColoring(token, tt), 
                         startOffset, endOffset,
                         inMetaLiteral || inInterpolated>1 ||
                             inInterpolated>0
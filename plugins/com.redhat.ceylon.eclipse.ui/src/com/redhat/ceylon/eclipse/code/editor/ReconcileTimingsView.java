@@ -0,0 +1,352 @@
+package com.redhat.ceylon.eclipse.code.editor;
+
+import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.SLOW_RECONCILE_THRESHOLD;
+import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
+import static com.redhat.ceylon.eclipse.util.CsvExportAction.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+import com.redhat.ceylon.eclipse.code.parse.LatencyHistogram;
+import com.redhat.ceylon.eclipse.code.parse.ReconcileTimings;
+import com.redhat.ceylon.eclipse.code.parse.ReconcileTimings.SlowReconcile;
+import com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage;
+import com.redhat.ceylon.eclipse.util.CsvExportAction;
+import com.redhat.ceylon.eclipse.util.EditorUtil;
+
+/**
+ * Shows the latency histograms of the reconciles of the
+ * Ceylon editors, of their stages and of their listeners,
+ * and the recent slow reconciles, as recorded by the
+ * {@link ReconcileTimings}.
+ */
+public class ReconcileTimingsView extends ViewPart
+        implements ReconcileTimings.Listener {
+
+    static final String ID = PLUGIN_ID + ".view.ReconcileTimingsView";
+
+    private Label summary;
+    private TableViewer histogramViewer;
+    private TableViewer slowViewer;
+    private boolean refreshScheduled;
+
+    private static final class Row {
+        final String kind;
+        final String name;
+        final LatencyHistogram histogram;
+        Row(String kind, String name, LatencyHistogram histogram) {
+            this.kind = kind;
+            this.name = name;
+            this.histogram = histogram;
+        }
+    }
+
+    @Override
+    public void createPartControl(Composite parent) {
+        Composite composite = new Composite(parent, SWT.NONE);
+        composite.setLayout(new GridLayout(1, false));
+
+        summary = new Label(composite, SWT.WRAP);
+        GridDataFactory.fillDefaults().grab(true, false).applyTo(summary);
+
+        SashForm sash = new SashForm(composite, SWT.VERTICAL);
+        GridDataFactory.fillDefaults().grab(true, true).applyTo(sash);
+
+        histogramViewer = createTable(sash);
+        addColumn(histogramViewer, "Kind", 80, SWT.LEFT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return ((Row) element).kind;
+            }
+        });
+        addColumn(histogramViewer, "Name", 250, SWT.LEFT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return ((Row) element).name;
+            }
+        });
+        addColumn(histogramViewer, "Count", 70, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return Long.toString(((Row) element).histogram.getCount());
+            }
+        });
+        addColumn(histogramViewer, "Mean (ms)", 80, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return String.format("%.1f", ((Row) element).histogram.getMean());
+            }
+        });
+        addPercentileColumn(50);
+        addPercentileColumn(90);
+        addPercentileColumn(99);
+        addColumn(histogramViewer, "Max (ms)", 80, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                long max = ((Row) element).histogram.getMax();
+                return String.format("%.1f", max / 1000000.0);
+            }
+        });
+
+        slowViewer = createTable(sash);
+        addColumn(slowViewer, "Slow reconcile", 100, SWT.LEFT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                long start = ((SlowReconcile) element).getStartTime();
+                return DateFormat.getTimeInstance().format(new Date(start));
+            }
+        });
+        addColumn(slowViewer, "File", 200, SWT.LEFT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return ((SlowReconcile) element).getFileName();
+            }
+        });
+        addColumn(slowViewer, "Size (chars)", 90, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return Integer.toString(((SlowReconcile) element).getSize());
+            }
+        });
+        addColumn(slowViewer, "Duration (ms)", 90, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                long duration = ((SlowReconcile) element).getDuration();
+                return String.format("%.1f", duration / 1000000.0);
+            }
+        });
+        addColumn(slowViewer, "Slowest part", 250, SWT.LEFT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                return getSlowestPart((SlowReconcile) element);
+            }
+        });
+        sash.setWeights(new int[] { 3, 2 });
+
+        IToolBarManager tbm = getViewSite().getActionBars().getToolBarManager();
+        tbm.add(new ResetAction());
+        tbm.add(new CsvExportAction(this, 
+                "Export the reconcile latencies as CSV", 
+                "reconcile-timings.csv", "Export Reconcile Timings") {
+            @Override
+            protected void writeCsv(Writer writer) throws IOException {
+                ReconcileTimingsView.writeCsv(writer, 
+                        ReconcileTimings.getInstance());
+            }
+        });
+
+        ReconcileTimings.getInstance().addListener(this);
+        refresh();
+    }
+
+    private static TableViewer createTable(Composite parent) {
+        TableViewer viewer = new TableViewer(parent,
+                SWT.H_SCROLL | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.BORDER);
+        viewer.getTable().setHeaderVisible(true);
+        viewer.getTable().setLinesVisible(true);
+        viewer.setContentProvider(ArrayContentProvider.getInstance());
+        return viewer;
+    }
+
+    private static void addColumn(TableViewer viewer, String text,
+            int width, int style, ColumnLabelProvider labelProvider) {
+        TableViewerColumn column = new TableViewerColumn(viewer, style);
+        column.getColumn().setText(text);
+        column.getColumn().setWidth(width);
+        column.setLabelProvider(labelProvider);
+    }
+
+    private void addPercentileColumn(final int percentile) {
+        //an upper bound, given the widths of the buckets
+        addColumn(histogramViewer, "p" + percentile + " (ms)", 70, SWT.RIGHT,
+                new ColumnLabelProvider() {
+            @Override
+            public String getText(Object element) {
+                long bound = ((Row) element).histogram.getPercentile(percentile);
+                return Long.toString(bound);
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        ReconcileTimings.getInstance().removeListener(this);
+        super.dispose();
+    }
+
+    @Override
+    public void setFocus() {
+        histogramViewer.getControl().setFocus();
+    }
+
+    @Override
+    public void reconcileRecorded() {
+        //reconciles are frequent, so coalesce the refreshes
+        synchronized (this) {
+            if (refreshScheduled) {
+                return;
+            }
+            refreshScheduled = true;
+        }
+        Display.getDefault().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ReconcileTimingsView.this) {
+                    refreshScheduled = false;
+                }
+                if (!histogramViewer.getControl().isDisposed()) {
+                    refresh();
+                }
+            }
+        });
+    }
+
+    private void refresh() {
+        ReconcileTimings timings = ReconcileTimings.getInstance();
+        histogramViewer.setInput(getRows(timings));
+        List<SlowReconcile> slowReconciles = timings.getSlowReconciles();
+        slowViewer.setInput(slowReconciles);
+        int threshold = EditorUtil.getPreferences()
+                .getInt(SLOW_RECONCILE_THRESHOLD);
+        LatencyHistogram reconciles = timings.getReconcileHistogram();
+        StringBuilder text = new StringBuilder();
+        text.append(reconciles.getCount()).append(" reconciles, ")
+            .append(timings.getCanceledReconciles()).append(" canceled");
+        if (threshold > 0) {
+            text.append(", ").append(slowReconciles.size())
+                .append(" recent reconciles slower than ")
+                .append(threshold).append(" ms, logged to ")
+                .append(ReconcileTimings.getLogFile().getPath());
+        }
+        summary.setText(text.toString());
+        summary.getParent().layout();
+    }
+
+    private static List<Row> getRows(ReconcileTimings timings) {
+        List<Row> rows = new ArrayList<Row>();
+        rows.add(new Row("reconcile", "",
+                timings.getReconcileHistogram()));
+        for (Map.Entry<Stage, LatencyHistogram> stage:
+                timings.getStageHistograms().entrySet()) {
+            rows.add(new Row("stage", stage.getKey().name(),
+                    stage.getValue()));
+        }
+        for (Map.Entry<String, LatencyHistogram> listener:
+                timings.getListenerHistograms().entrySet()) {
+            rows.add(new Row("listener", listener.getKey(),
+                    listener.getValue()));
+        }
+        return rows;
+    }
+
+    private static String getSlowestPart(SlowReconcile reconcile) {
+        String slowest = null;
+        long max = -1;
+        for (Map.Entry<String, Long> stage:
+                reconcile.getStageDurations().entrySet()) {
+            if (stage.getValue() > max) {
+                max = stage.getValue();
+                slowest = stage.getKey();
+            }
+        }
+        for (Map.Entry<String, Long> listener:
+                reconcile.getListenerDurations().entrySet()) {
+            if (listener.getValue() > max) {
+                max = listener.getValue();
+                slowest = listener.getKey();
+            }
+        }
+        return slowest == null ? "" :
+            String.format("%s (%.1f ms)", slowest, max / 1000000.0);
+    }
+
+    private class ResetAction extends Action {
+        ResetAction() {
+            super("Reset");
+            setToolTipText("Forget the recorded reconciles");
+            setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+                    .getImageDescriptor(ISharedImages.IMG_ELCL_REMOVEALL));
+        }
+        @Override
+        public void run() {
+            ReconcileTimings.getInstance().reset();
+        }
+    }
+
+    /**
+     * One line per histogram, with the count, the total and
+     * the maximum in microseconds, followed by the count of
+     * each bucket, then one line per part of each recent
+     * slow reconcile.
+     */
+    private static void writeCsv(Writer writer, ReconcileTimings timings)
+            throws IOException {
+        writer.write("kind,name,count,totalMicros,maxMicros");
+        for (int i=0; i<LatencyHistogram.getBucketCount(); i++) {
+            long bound = LatencyHistogram.getUpperBound(i);
+            writer.write(bound < 0 ? ",more" : ",under" + bound + "ms");
+        }
+        writer.write('\n');
+        for (Row row: getRows(timings)) {
+            LatencyHistogram histogram = row.histogram;
+            writer.write(row.kind + "," + csv(row.name) + "," +
+                    histogram.getCount() + "," +
+                    histogram.getTotal() / 1000 + "," +
+                    histogram.getMax() / 1000);
+            for (long count: histogram.getCounts()) {
+                writer.write("," + count);
+            }
+            writer.write('\n');
+        }
+        writer.write("\nfile,size,start,kind,name,micros\n");
+        for (SlowReconcile reconcile: timings.getSlowReconciles()) {
+            String prefix = csv(reconcile.getFileName()) + "," +
+                    reconcile.getSize() + "," +
+                    reconcile.getStartTime() + ",";
+            writer.write(prefix + "reconcile,," +
+                    reconcile.getDuration() / 1000 + "\n");
+            for (Map.Entry<String, Long> stage:
+                    reconcile.getStageDurations().entrySet()) {
+                writer.write(prefix + "stage," + csv(stage.getKey()) + "," +
+                        stage.getValue() / 1000 + "\n");
+            }
+            for (Map.Entry<String, Long> listener:
+                    reconcile.getListenerDurations().entrySet()) {
+                writer.write(prefix + "listener," + csv(listener.getKey()) + "," +
+                        listener.getValue() / 1000 + "\n");
+            }
+        }
+    }
+}
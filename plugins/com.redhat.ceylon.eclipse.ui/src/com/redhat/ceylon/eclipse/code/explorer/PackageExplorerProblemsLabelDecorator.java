@@ -9,6 +9,8 @@ import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.internal.ui.packageview.PackageExplorerProblemsDecorator;
 import org.eclipse.jdt.ui.JavaElementImageDescriptor;
 
+import com.redhat.ceylon.eclipse.util.ProblemSeverityCache;
+
 public class PackageExplorerProblemsLabelDecorator extends PackageExplorerProblemsDecorator {
     
 //    private boolean flatPackageMode;
@@ -67,7 +69,8 @@ public class PackageExplorerProblemsLabelDecorator extends PackageExplorerProble
 //                    return ERRORTICK_BUILDPATH_ERROR;
 //                }
 //            }
-            severity= res.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+            severity= ProblemSeverityCache.getInstance()
+                    .getMaxProblemSeverity(res, IResource.DEPTH_INFINITE);
 //        } else {
 //            IMarker[] markers= res.findMarkers(IMarker.PROBLEM, true, depth);
 //            if (markers != null && markers.length > 0) {
@@ -87,6 +87,7 @@ import com.redhat.ceylon.eclipse.core.model.JavaCompilationUnit;
 import com.redhat.ceylon.eclipse.core.model.ProjectSourceFile;
 import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
 import com.redhat.ceylon.eclipse.ui.CeylonResources;
+import com.redhat.ceylon.eclipse.util.DeclarationNameIndex;
 import com.redhat.ceylon.eclipse.util.DocBrowser;
 
 public class OpenDeclarationDialog extends FilteredItemsSelectionDialog {
@@ -845,13 +846,19 @@ public class OpenDeclarationDialog extends FilteredItemsSelectionDialog {
                     throws CoreException {
         usedNames.clear();
         monitor.beginTask("Filtering", estimateWork(monitor));
+        //only the declarations with the right prefix or
+        //camel humps are candidates for simple name patterns
+        String pattern = itemsFilter.getPattern();
         Set<String> searchedArchives = new HashSet<String>();
         for (IProject project: getProjects()) {
             TypeChecker typeChecker = 
                     getProjectTypeChecker(project);
             fill(contentProvider, itemsFilter, 
-                    typeChecker.getPhasedUnits()
-                        .getPhasedUnits());
+                    DeclarationNameIndex.getSourceDeclarations(
+                            project, 
+                            typeChecker.getPhasedUnits()
+                                .getPhasedUnits(), 
+                            pattern));
             monitor.worked(1);
             if (monitor.isCanceled()) break;
             Modules modules = 
@@ -867,8 +874,20 @@ public class OpenDeclarationDialog extends FilteredItemsSelectionDialog {
                         (!excludeOracleJDK || 
                                 !isOracleJDKModule(moduleName)) &&
                             searchedArchives.add(uniqueIdentifier(module))) {
-                        fill(contentProvider, itemsFilter, 
-                                module, monitor);
+                        if (module.isProjectModule()) {
+                            //the Java units of projects change
+                            //with every build
+                            fill(contentProvider, itemsFilter, 
+                                    module, monitor);
+                        }
+                        else {
+                            fill(contentProvider, itemsFilter, module, 
+                                    DeclarationNameIndex.getModuleDeclarations(
+                                            uniqueIdentifier(module), 
+                                            module, pattern, 
+                                            includeMembers));
+                            monitor.worked(module.getPackages().size());
+                        }
                         monitor.worked(1);
                         if (monitor.isCanceled()) break;
                     }
@@ -895,6 +914,43 @@ public class OpenDeclarationDialog extends FilteredItemsSelectionDialog {
         }
     }
     
+    private void fill(AbstractContentProvider contentProvider,
+            ItemsFilter itemsFilter, JDTModule module, 
+            List<Declaration> indexedDeclarations) {
+        Map<Package,Boolean> filteredPackages = 
+                new HashMap<Package,Boolean>();
+        for (Declaration dec: indexedDeclarations) {
+            Package pack = dec.getUnit().getPackage();
+            Boolean filtered = filteredPackages.get(pack);
+            if (filtered==null) {
+                filtered = isFiltered(pack);
+                filteredPackages.put(pack, filtered);
+            }
+            if (!filtered && 
+                    includeDeclarationAndContainers(module, dec)) {
+                contentProvider.add(new DeclarationProxy(dec), 
+                        itemsFilter);
+                nameOccurs(dec);
+            }
+        }
+    }
+    
+    private boolean includeDeclarationAndContainers(JDTModule module, 
+            Declaration dec) {
+        if (!includeDeclaration(module, dec)) {
+            return false;
+        }
+        Object container = dec.getContainer();
+        while (container instanceof Declaration) {
+            Declaration containingDec = (Declaration) container;
+            if (!includeDeclaration(module, containingDec)) {
+                return false;
+            }
+            container = containingDec.getContainer();
+        }
+        return true;
+    }
+    
     protected static class DeclarationProxy {
         private Declaration declaration;
         private String location;
@@ -961,18 +1017,15 @@ public class OpenDeclarationDialog extends FilteredItemsSelectionDialog {
     
     private void fill(AbstractContentProvider contentProvider,
             ItemsFilter itemsFilter, 
-            List<? extends PhasedUnit> units) {
-        for (PhasedUnit unit: units) {
+            List<Declaration> sourceDeclarations) {
+        for (Declaration dec: sourceDeclarations) {
             JDTModule jdtModule = (JDTModule) 
-                    unit.getPackage().getModule();
-            for (Declaration dec: unit.getDeclarations()) {
-                if (includeDeclaration(jdtModule, dec)) {
-                    contentProvider.add(new DeclarationProxy(dec), 
-                            itemsFilter);
-                    nameOccurs(dec);
-                }
+                    dec.getUnit().getPackage().getModule();
+            if (includeDeclaration(jdtModule, dec)) {
+                contentProvider.add(new DeclarationProxy(dec), 
+                        itemsFilter);
+                nameOccurs(dec);
             }
-            
         }
     }
 
@@ -4,6 +4,8 @@ import static com.redhat.ceylon.eclipse.code.outline.HierarchyMode.HIERARCHY;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getModelLoader;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getTypeCheckers;
 import static com.redhat.ceylon.eclipse.util.ModelProxy.getDeclarationInUnit;
+import static com.redhat.ceylon.eclipse.util.SubtypeIndex.addDirectSubtype;
+import static com.redhat.ceylon.eclipse.util.SubtypeIndex.addDirectSubtypes;
 import static com.redhat.ceylon.model.typechecker.model.Util.getInterveningRefinements;
 import static com.redhat.ceylon.model.typechecker.model.Util.getSignature;
 import static com.redhat.ceylon.model.typechecker.model.Util.isAbstraction;
@@ -11,6 +13,7 @@ import static com.redhat.ceylon.model.typechecker.model.Util.isAbstraction;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,7 +39,6 @@ import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.model.typechecker.model.ProducedType;
 import com.redhat.ceylon.model.typechecker.model.Scope;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
-import com.redhat.ceylon.model.typechecker.model.TypeParameter;
 import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
 import com.redhat.ceylon.model.typechecker.model.Unit;
 
@@ -452,74 +454,152 @@ public final class CeylonHierarchyContentProvider
             IEditorPart part = site.getPage().getActiveEditor();
             
             List<ProducedType> signature = getSignature(declaration);
+            Map<TypeDeclaration, List<TypeDeclaration>> directSubtypes = 
+                    new HashMap<TypeDeclaration, List<TypeDeclaration>>();
             int ps = packages.size();
             for (Package p: packages) { //workaround CME
-                int ms = p.getMembers().size();
                 monitor.subTask("scanning " + p.getNameAsString());
-                for (Unit u: p.getUnits()) {
-                    try {
-                        //TODO: unshared inner types get 
-                        //      missed for binary modules
-                        for (Declaration d: u.getDeclarations()) {
-                            d = replaceWithCurrentEditorDeclaration(part, p, d); //TODO: not enough to catch *new* subtypes in the dirty editor
-                            if (d instanceof ClassOrInterface || 
-                                    d instanceof TypeParameter) {
-                                try {
-                                    if (declaration instanceof TypeDeclaration) {
-                                        TypeDeclaration td = (TypeDeclaration) d;
-                                        if (!(td instanceof TypeParameter)) {
-                                            ClassOrInterface etd = 
-                                                    td.getExtendedTypeDeclaration();
-                                            if (etd!=null) {
-                                                add(td, etd);
-                                            }
-                                            for (TypeDeclaration std: 
-                                                td.getSatisfiedTypeDeclarations()) {
-                                                add(td, std);
-                                            }
-                                        }
-                                    }
-                                    else if (declaration instanceof TypedDeclaration) {
-                                        Declaration refinedDeclaration = declaration.getRefinedDeclaration();
-                                        TypeDeclaration td = (TypeDeclaration) d;
-                                        Declaration dec = 
-                                                td.getDirectMember(declaration.getName(), signature, false);
-                                        if (dec!=null && dec.getRefinedDeclaration()!=null &&
-                                                dec.getRefinedDeclaration().equals(refinedDeclaration)) {
-                                            List<Declaration> refinements = 
-                                                    getInterveningRefinements(declaration.getName(), signature,
-                                                            refinedDeclaration, td,
-                                                            (TypeDeclaration) refinedDeclaration.getContainer());
-                                            //TODO: keep the directly refined declarations in the model
-                                            //      (get the typechecker to set this up)
-                                            for (Declaration candidate: refinements) {
-                                                if (getInterveningRefinements(declaration.getName(), signature,
-                                                        refinedDeclaration, td,
-                                                        (TypeDeclaration) candidate.getContainer()).size()==1) {
-                                                    add(dec, candidate);
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                catch (Exception e) {
-                                    System.err.println(d.getQualifiedNameString());
-                                    throw e;
+                if (isInDirtyEditor(part, p)) {
+                    for (Unit u: p.getUnits()) {
+                        try {
+                            for (Declaration d: u.getDeclarations()) {
+                                d = replaceWithCurrentEditorDeclaration(part, p, d); //TODO: not enough to catch *new* subtypes in the dirty editor
+                                if (d instanceof ClassOrInterface) {
+                                    addDirectSubtype((TypeDeclaration) d, 
+                                            directSubtypes);
                                 }
                             }
-                            monitor.worked(15000/ps/ms);
-                            if (monitor.isCanceled()) return;
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
                         }
                     }
-                    catch (Exception e) {
-                        e.printStackTrace();
-                    }
                 }
+                else {
+                    //only the packages with changed units 
+                    //are scanned again
+                    addDirectSubtypes(p, directSubtypes);
+                }
+                monitor.worked(15000/ps);
                 if (monitor.isCanceled()) return;
             }
+            
+            if (declaration instanceof TypeDeclaration) {
+                TypeDeclaration td = (TypeDeclaration) declaration;
+                addSubtypes(td, directSubtypes, 
+                        new HashSet<TypeDeclaration>());
+                addSupertypes(td, packages, 
+                        new HashSet<TypeDeclaration>());
+            }
+            else if (declaration instanceof TypedDeclaration) {
+                Declaration refinedDeclaration = declaration.getRefinedDeclaration();
+                if (refinedDeclaration!=null &&
+                        refinedDeclaration.getContainer() instanceof TypeDeclaration) {
+                    //only the subtypes of the type declaring the 
+                    //refined member can refine it
+                    Set<TypeDeclaration> types = 
+                            new LinkedHashSet<TypeDeclaration>();
+                    collectSubtypes((TypeDeclaration) refinedDeclaration.getContainer(), 
+                            directSubtypes, types);
+                    for (TypeDeclaration td: types) {
+                        if (!packages.contains(td.getUnit().getPackage())) {
+                            continue;
+                        }
+                        try {
+                            Declaration dec = 
+                                    td.getDirectMember(declaration.getName(), signature, false);
+                            if (dec!=null && dec.getRefinedDeclaration()!=null &&
+                                    dec.getRefinedDeclaration().equals(refinedDeclaration)) {
+                                List<Declaration> refinements = 
+                                        getInterveningRefinements(declaration.getName(), signature,
+                                                refinedDeclaration, td,
+                                                (TypeDeclaration) refinedDeclaration.getContainer());
+                                //TODO: keep the directly refined declarations in the model
+                                //      (get the typechecker to set this up)
+                                for (Declaration candidate: refinements) {
+                                    if (getInterveningRefinements(declaration.getName(), signature,
+                                            refinedDeclaration, td,
+                                            (TypeDeclaration) candidate.getContainer()).size()==1) {
+                                        add(dec, candidate);
+                                    }
+                                }
+                            }
+                        }
+                        catch (Exception e) {
+                            System.err.println(td.getQualifiedNameString());
+                            e.printStackTrace();
+                        }
+                        if (monitor.isCanceled()) return;
+                    }
+                }
+            }
             monitor.done();
         }
 
+        /**
+         * Adds the given type and its subtypes, recursively,
+         * to the hierarchy.
+         */
+        private void addSubtypes(TypeDeclaration td, 
+                Map<TypeDeclaration, List<TypeDeclaration>> directSubtypes,
+                Set<TypeDeclaration> visited) {
+            if (visited.add(td)) {
+                List<TypeDeclaration> subtypes = directSubtypes.get(td);
+                if (subtypes!=null) {
+                    for (TypeDeclaration std: subtypes) {
+                        add(std, td);
+                        addSubtypes(std, directSubtypes, visited);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the supertypes of the given type, recursively,
+         * to the hierarchy.
+         */
+        private void addSupertypes(TypeDeclaration td, Set<Package> packages,
+                Set<TypeDeclaration> visited) {
+            if (td instanceof ClassOrInterface && visited.add(td) &&
+                    packages.contains(td.getUnit().getPackage())) {
+                ClassOrInterface etd = td.getExtendedTypeDeclaration();
+                if (etd!=null) {
+                    add(td, etd);
+                    addSupertypes(etd, packages, visited);
+                }
+                for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+                    add(td, std);
+                    addSupertypes(std, packages, visited);
+                }
+            }
+        }
+
+        private void collectSubtypes(TypeDeclaration td,
+                Map<TypeDeclaration, List<TypeDeclaration>> directSubtypes,
+                Set<TypeDeclaration> types) {
+            if (types.add(td)) {
+                List<TypeDeclaration> subtypes = directSubtypes.get(td);
+                if (subtypes!=null) {
+                    for (TypeDeclaration std: subtypes) {
+                        collectSubtypes(std, directSubtypes, types);
+                    }
+                }
+            }
+        }
+
+        private boolean isInDirtyEditor(IEditorPart part, Package p) {
+            if (part instanceof CeylonEditor && part.isDirty()) {
+                CompilationUnit rootNode = 
+                        ((CeylonEditor) part).getParseController()
+                                .getRootNode();
+                if (rootNode!=null) {
+                    Unit unit = rootNode.getUnit();
+                    return unit!=null && unit.getPackage().equals(p);
+                }
+            }
+            return false;
+        }
+
         private Declaration replaceWithCurrentEditorDeclaration(IEditorPart part, 
                 Package p, Declaration d) {
             if (part instanceof CeylonEditor && part.isDirty()) {
@@ -83,6 +83,7 @@ import com.redhat.ceylon.eclipse.core.model.JDTModule;
 import com.redhat.ceylon.eclipse.ui.CeylonResources;
 import com.redhat.ceylon.eclipse.util.EditorUtil;
 import com.redhat.ceylon.eclipse.util.ErrorCollectionVisitor;
+import com.redhat.ceylon.eclipse.util.ProblemSeverityCache;
 
 /**
  * Styled Label Provider which can be used to provide labels for Ceylon elements.
@@ -1110,6 +1111,11 @@ public class CeylonLabelProvider extends StyledCellLabelProvider
     static int getMaxProblemMarkerSeverity(IResource res, int depth, IMarkerFilter markerFilter) {
         if (res == null || !res.isAccessible())
             return 0;
+        //the filtered markers are a subset of all the markers,
+        //so there is nothing to filter if there are none
+        if (ProblemSeverityCache.getInstance()
+                .getMaxProblemSeverity(res, depth)==0)
+            return 0;
     
         boolean hasWarnings= false; // if resource has errors, will return error image immediately
         IMarker[] markers= null;
@@ -1145,7 +1151,8 @@ public class CeylonLabelProvider extends StyledCellLabelProvider
      * @param depth TODO
      */
     static int getMaxProblemMarkerSeverity(IResource res, int depth) {
-        return getMaxProblemMarkerSeverity(res, depth, acceptAllMarkers);
+        return ProblemSeverityCache.getInstance()
+                .getMaxProblemSeverity(res, depth);
     }
     
     private static String getPackageLabel(Package packageModel) {
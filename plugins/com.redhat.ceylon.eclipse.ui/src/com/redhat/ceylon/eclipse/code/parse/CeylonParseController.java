@@ -8,6 +8,7 @@ import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.S
 import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.TYPE_ANALYSIS;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.allClasspathContainersInitialized;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getInterpolatedCeylonSystemRepo;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getModelLock;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjects;
 import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getReferencedProjectsOutputRepositories;
@@ -22,23 +23,29 @@ import static org.eclipse.core.runtime.jobs.Job.getJobManager;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
 
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.text.IDocument;
@@ -46,7 +53,6 @@ import org.eclipse.jface.text.IDocument;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.common.config.CeylonConfig;
 import com.redhat.ceylon.compiler.java.loader.UnknownTypeCollector;
-import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder;
 import com.redhat.ceylon.model.typechecker.util.ModuleManager;
@@ -60,7 +66,6 @@ import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.redhat.ceylon.model.typechecker.model.Modules;
 import com.redhat.ceylon.model.typechecker.model.Package;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
 import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
 import com.redhat.ceylon.compiler.typechecker.parser.LexError;
 import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
@@ -141,6 +146,31 @@ public class CeylonParseController {
      */
     private List<CommonToken> tokens;
     
+    /**
+     * The tokens of the lexer of which the most-recently 
+     * parsed tokens are copies.
+     */
+    private List<CommonToken> lexedTokens;
+    
+    /**
+     * Lexes the successive versions of the source, relexing
+     * only the edited tokens. When parsing a document, it is
+     * the lexer shared by the services of the editors of the
+     * document.
+     */
+    private IncrementalLexer lexer = new IncrementalLexer();
+    
+    /**
+     * The tokens of the lexer and the text of the most 
+     * recent typecheck. When the lexer returns tokens with
+     * the same syntax, because the edits changed only 
+     * whitespace and comments, the parsed tokens are moved 
+     * to their positions, so that the typechecked tree 
+     * remains valid.
+     */
+    private volatile List<CommonToken> typecheckedTokens;
+    private String typecheckedContents;
+    
     /**
      * The type checker associated with the most recent parse. 
      * May be null if this parse controller has never parsed 
@@ -171,6 +201,7 @@ public class CeylonParseController {
         this.project = project;
         this.filePath = filePath;
         this.handler = handler;
+        forceTypecheck();
     }
     
     public AnnotationCreator getHandler() {
@@ -259,13 +290,15 @@ public class CeylonParseController {
                     typeChecker = builtPhasedUnit.getTypeChecker();
                     rootNode = builtPhasedUnit.getCompilationUnit();
                     tokens = builtPhasedUnit.getTokens();
+                    lexedTokens = null;
+                    typecheckedTokens = null;
                     stage = SYNTACTIC_ANALYSIS;
                     if (stager!=null) {
                         stager.afterStage(LEXICAL_ANALYSIS, monitor);
                         stager.afterStage(SYNTACTIC_ANALYSIS, monitor);
                     }
                     final IProject finalProject = project;
-                    useTypechecker(phasedUnit, new Runnable() {
+                    useTypechecker(finalProject, new Runnable() {
                         @Override
                         public void run() {
                             if (showWarnings(finalProject)) {
@@ -288,12 +321,27 @@ public class CeylonParseController {
             return;
         }
         
-        NewlineFixingStringStream stream = 
-                new NewlineFixingStringStream(contents);
-        CeylonLexer lexer = new CeylonLexer(stream);
-        CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-        tokenStream.fill();
+        List<CommonToken> newTokens = lexer.getTokens(contents);
+        if (IncrementalLexer.isSameSyntax(newTokens, typecheckedTokens) && 
+                !contents.equals(typecheckedContents)) {
+            //the edits changed only whitespace and 
+            //comments, so the typechecked tree is 
+            //still valid, if its tokens didn't move
+            List<CommonToken> reusedTokens = 
+                    reuseParsedTokens(newTokens);
+            if (reusedTokens!=null) {
+                reuseTypecheckedTree(newTokens, reusedTokens, 
+                        contents, monitor, stager);
+                return;
+            }
+        }
+        typecheckedTokens = null;
+        typecheckedContents = null;
+        
+        CommonTokenStream tokenStream = 
+                IncrementalLexer.getTokenStream(newTokens);
         tokens = tokenStream.getTokens();
+        lexedTokens = newTokens;
         
         stage = LEXICAL_ANALYSIS;
         if (stager!=null) {
@@ -317,8 +365,10 @@ public class CeylonParseController {
         //      services like FoldingUpdater can
         //      make use of it in the callback
         rootNode = cu;
+        lexer.parsed(lexedTokens, tokens);
         
-        collectLexAndParseErrors(lexer, parser, cu);
+        collectLexAndParseErrors(IncrementalLexer.getErrors(lexedTokens), 
+                parser, cu);
         
         stage = SYNTACTIC_ANALYSIS;
         if (stager!=null) {
@@ -384,7 +434,7 @@ public class CeylonParseController {
 
         VirtualFile file = createSourceCodeVirtualFile(contents, path);
         builtPhasedUnit = (IdePhasedUnit) typeChecker.getPhasedUnit(file); // TODO : refactor !
-        phasedUnit = typecheck(path, file, cu, srcDir, 
+        phasedUnit = typecheck(project, path, file, cu, srcDir, 
                 showWarnings, builtPhasedUnit);
         rootNode = phasedUnit.getCompilationUnit();
         if (project != null && !CeylonNature.isEnabled(project)) {
@@ -407,6 +457,8 @@ public class CeylonParseController {
             });
         }
         collectErrors(rootNode);
+        typecheckedTokens = lexedTokens;
+        typecheckedContents = contents;
         
         stage = TYPE_ANALYSIS;
         if (stager!=null) {
@@ -415,6 +467,96 @@ public class CeylonParseController {
         }
         
     }
+    
+    /**
+     * Since the last typecheck, the edits changed only 
+     * whitespace and comments, without moving the tokens 
+     * of the typechecked tree. Swap in the given tokens, 
+     * collect the errors again, and notify the listeners, 
+     * without parsing and typechecking.
+     */
+    private void reuseTypecheckedTree(List<CommonToken> newTokens,
+            List<CommonToken> reusedTokens, String contents, 
+            IProgressMonitor monitor, Stager stager) {
+        lexedTokens = newTokens;
+        tokens = reusedTokens;
+        lexer.parsed(lexedTokens, tokens);
+        
+        stage = LEXICAL_ANALYSIS;
+        if (stager!=null) {
+            stager.afterStage(LEXICAL_ANALYSIS, monitor);
+        }
+        
+        if (isCanceling(monitor)) {
+            return;
+        }
+        
+        stage = SYNTACTIC_ANALYSIS;
+        if (stager!=null) {
+            stager.afterStage(SYNTACTIC_ANALYSIS, monitor);
+        }
+        
+        if (isCanceling(monitor)) {
+            return;
+        }
+        
+        collectErrors(rootNode);
+        typecheckedContents = contents;
+        
+        stage = TYPE_ANALYSIS;
+        if (stager!=null) {
+            stager.afterStage(FOR_OUTLINE, monitor);
+            stager.afterStage(TYPE_ANALYSIS, monitor);
+        }
+    }
+    
+    /**
+     * A new list of the tokens of the typechecked tree, with 
+     * the hidden tokens replaced by the given tokens of the 
+     * lexer, or null if the edits moved one of the tokens 
+     * the tree refers to. 
+     * 
+     * The tokens of the tree are never moved, since the tree 
+     * is read at the same time by the editor services and by 
+     * the searches, through the phased unit, and its nodes 
+     * can't be pointed to other tokens.
+     */
+    private List<CommonToken> reuseParsedTokens(
+            List<CommonToken> lexedTokens) {
+        if (tokens==null || tokens.size()!=lexedTokens.size()) {
+            return null;
+        }
+        List<CommonToken> result = 
+                new ArrayList<CommonToken>(tokens.size());
+        for (int i=0; i<tokens.size(); i++) {
+            CommonToken token = tokens.get(i);
+            CommonToken lexed = lexedTokens.get(i);
+            if (token.getChannel()==Token.HIDDEN_CHANNEL ||
+                    token.getType()==Token.EOF) {
+                result.add(lexed);
+            }
+            else if (token.getStartIndex()==lexed.getStartIndex() &&
+                    token.getStopIndex()==lexed.getStopIndex() &&
+                    token.getLine()==lexed.getLine() &&
+                    token.getCharPositionInLine()==
+                        lexed.getCharPositionInLine()) {
+                result.add(token);
+            }
+            else {
+                return null;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Typecheck the source again in the next parse, even
+     * if the edits since the last typecheck changed only 
+     * whitespace and comments, because the model changed.
+     */
+    public void forceTypecheck() {
+        typecheckedTokens = null;
+    }
 
     private VirtualFile createSourceCodeVirtualFile(String contents, 
             IPath path) {
@@ -439,13 +581,11 @@ public class CeylonParseController {
         }
     }
 
-    private void collectLexAndParseErrors(CeylonLexer lexer,
+    private void collectLexAndParseErrors(List<LexError> lexerErrors,
             CeylonParser parser, Tree.CompilationUnit cu) {
-        List<LexError> lexerErrors = lexer.getErrors();
         for (LexError le : lexerErrors) {
             cu.addLexError(le);
         }
-        lexerErrors.clear();
         
         List<ParseError> parserErrors = parser.getErrors();
         for (ParseError pe : parserErrors) {
@@ -460,14 +600,15 @@ public class CeylonParseController {
         }
     }
 
-    private PhasedUnit typecheck(IPath path, VirtualFile file,
+    private PhasedUnit typecheck(IProject project, 
+            IPath path, VirtualFile file,
             Tree.CompilationUnit cu, VirtualFile srcDir, 
             final boolean showWarnings, 
             final PhasedUnit builtPhasedUnit) {
         if (isExternalPath(path) && builtPhasedUnit!=null) {
             // reuse the existing AST
             phasedUnit = builtPhasedUnit;
-            useTypechecker(builtPhasedUnit, new Runnable() {
+            useTypechecker(project, new Runnable() {
                 @Override
                 public void run() {
                     builtPhasedUnit.analyseTypes();
@@ -510,7 +651,8 @@ public class CeylonParseController {
         
         final PhasedUnit phasedUnitToTypeCheck = phasedUnit;
         
-        useTypechecker(phasedUnitToTypeCheck, new Runnable() {
+        final IProject finalProject = project;
+        useTypechecker(project, new Runnable() {
             @Override
             public void run() {
                 phasedUnitToTypeCheck.validateTree();
@@ -528,25 +670,57 @@ public class CeylonParseController {
                 phasedUnitToTypeCheck.getCompilationUnit().visit(utc);
                 phasedUnitToTypeCheck.getCompilationUnit()
                     .visit(new WarningSuppressionVisitor<Warning>(Warning.class, 
-                            CeylonBuilder.getSuppressedWarnings(project)));
+                            CeylonBuilder.getSuppressedWarnings(finalProject)));
             }
         });
         
         return phasedUnit;
     }
 
-    private void useTypechecker(final PhasedUnit phasedUnitToTypeCheck,
+    /**
+     * Runs the typechecking steps of a working copy in a
+     * job scheduled with the rules of the project and of
+     * the projects it references, whose models it reads,
+     * so that no build or other workspace operation on 
+     * them runs in the meantime, while holding the model
+     * locks of these projects, so that no other editor 
+     * typechecks against them and no builder mutates them.
+     * Editors of unrelated projects typecheck concurrently.
+     * The rules are acquired before the locks, as by the
+     * builder.
+     */
+    private void useTypechecker(final IProject project, 
             final Runnable typecheckSteps) {
+        if (project == null) {
+            // the typechecker was created for this editor only
+            typecheckSteps.run();
+            return;
+        }
+        final List<IProject> projects = getModelProjects(project);
         Job typecheckJob = 
-                new Job("Typechecking the working copy of " + 
-                        phasedUnitToTypeCheck.getPathRelativeToSrcDir()) {
+                new Job("Typechecking a working copy of project " + 
+                        project.getName()) {
             @Override
             protected IStatus run(IProgressMonitor monitor) {
-                typecheckSteps.run();
+                List<Lock> locks = new ArrayList<Lock>(projects.size());
+                try {
+                    for (IProject p: projects) {
+                        Lock lock = getModelLock(p);
+                        lock.lock();
+                        locks.add(lock);
+                    }
+                    typecheckSteps.run();
+                }
+                finally {
+                    for (Lock lock: locks) {
+                        lock.unlock();
+                    }
+                }
                 return Status.OK_STATUS;
             }
         };
-        typecheckJob.setRule(ResourcesPlugin.getWorkspace().getRoot());
+        typecheckJob.setRule(MultiRule.combine(
+                projects.toArray(new ISchedulingRule[projects.size()])));
         CeylonParserScheduler scheduler = getScheduler();
         if (scheduler != null) {
             typecheckJob.setPriority(scheduler.getPriority());
@@ -560,6 +734,38 @@ public class CeylonParseController {
         }
     }
 
+    /**
+     * The given project and the projects it references, 
+     * directly or not, sorted by name, so that the model 
+     * locks are always acquired in the same order.
+     */
+    private static List<IProject> getModelProjects(IProject project) {
+        Set<IProject> projects = new TreeSet<IProject>(
+                new Comparator<IProject>() {
+            @Override
+            public int compare(IProject p1, IProject p2) {
+                return p1.getName().compareTo(p2.getName());
+            }
+        });
+        addModelProjects(project, projects);
+        return new ArrayList<IProject>(projects);
+    }
+
+    private static void addModelProjects(IProject project, 
+            Set<IProject> projects) {
+        if (projects.add(project) && project.isAccessible()) {
+            try {
+                for (IProject referenced: 
+                        project.getReferencedProjects()) {
+                    addModelProjects(referenced, projects);
+                }
+            }
+            catch (CoreException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private static TypeChecker createTypeChecker(IProject project, 
             boolean showWarnings) 
             throws CoreException {
@@ -779,6 +985,10 @@ public class CeylonParseController {
         return tokens;
     }
     
+    public IncrementalLexer getLexer() {
+        return lexer;
+    }
+    
     public TypeChecker getTypeChecker() {
         return typeChecker;
     }
@@ -790,6 +1000,7 @@ public class CeylonParseController {
     public void parse(IDocument doc, IProgressMonitor monitor, 
             Stager stager) {
         document = doc;
+        lexer = IncrementalLexer.forDocument(doc);
         parse(document.get(), monitor, stager);
     }
 
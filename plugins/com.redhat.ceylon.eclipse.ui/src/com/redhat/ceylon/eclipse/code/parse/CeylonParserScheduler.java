@@ -18,10 +18,39 @@ import com.redhat.ceylon.eclipse.code.editor.CeylonEditor;
 import com.redhat.ceylon.eclipse.code.editor.CeylonSourceViewer;
 import com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage;
 
+/**
+ * Reconciles the source of a {@link CeylonEditor}: parses
+ * and typechecks it, and notifies the listeners of each
+ * {@link Stage}.
+ * 
+ * A change to the document schedules a reconcile with
+ * {@link #scheduleReconcile()}, after a delay which grows
+ * with the cost of the recent reconciles of the editor and
+ * with the size of the document, so that a burst of edits
+ * is coalesced into a single reconcile. The delay is longer
+ * for an editor which is not the active editor, and the
+ * reconcile is scheduled again with the shorter delay when
+ * the editor is activated.
+ */
 public class CeylonParserScheduler extends Job {
 
+    private static final int MIN_DELAY = 200;
+    private static final int MAX_DELAY = 1500;
+    private static final int BACKGROUND_DELAY_FACTOR = 5;
+    /**
+     * The longest time edits to the active editor may keep
+     * postponing its reconcile.
+     */
+    private static final int MAX_LATENCY = 3000;
+
     private boolean canceling = false;
     
+    private final Object scheduleLock = new Object();
+    private boolean active = true;
+    private long averageCost = -1;
+    private long pendingSince = -1;
+    private long runningSince = -1;
+    
     private CeylonParseController parseController;
     private CeylonEditor editor;
     private AnnotationCreator annotationCreator;
@@ -61,9 +90,107 @@ public class CeylonParserScheduler extends Job {
         return canceling;
     }
     
+    /**
+     * Schedule a reconcile after a change to the document,
+     * canceling the reconcile in progress, unless it has
+     * been postponed for too long already.
+     */
+    public void scheduleReconcile() {
+        long delay;
+        boolean cancel;
+        synchronized (scheduleLock) {
+            long now = System.currentTimeMillis();
+            if (pendingSince<0) {
+                pendingSince = now;
+            }
+            delay = getDelay();
+            if (active) {
+                long remaining = pendingSince + MAX_LATENCY - now;
+                delay = Math.max(0, Math.min(delay, remaining));
+            }
+            cancel = runningSince<0 || 
+                    now - runningSince < MAX_LATENCY;
+        }
+        if (cancel || getState()!=RUNNING) {
+            cancel();
+        }
+        schedule(delay);
+    }
+    
+    /**
+     * Tell the scheduler if its editor is the active editor,
+     * rescheduling a pending reconcile if it became active.
+     */
+    public void setActive(boolean active) {
+        long delay;
+        synchronized (scheduleLock) {
+            if (this.active==active) {
+                return;
+            }
+            this.active = active;
+            delay = getDelay();
+        }
+        setPriority(active ? SHORT : DECORATE);
+        int state = getState();
+        if (active && (state==SLEEPING || state==WAITING)) {
+            cancel();
+            schedule(delay);
+        }
+    }
+    
+    /**
+     * The delay before a reconcile: half the average cost
+     * of the recent reconciles, plus a millisecond per
+     * thousand characters, and longer if the editor isn't
+     * active.
+     */
+    private long getDelay() {
+        long delay = MIN_DELAY;
+        if (averageCost>0) {
+            delay += averageCost/2;
+        }
+        CeylonSourceViewer csv = editor.getCeylonSourceViewer();
+        IDocument document = csv==null ? null : csv.getDocument();
+        if (document!=null) {
+            delay += document.getLength()/1000;
+        }
+        delay = Math.min(delay, MAX_DELAY);
+        return active ? delay : delay * BACKGROUND_DELAY_FACTOR;
+    }
+    
+    private void reconcileStarted() {
+        synchronized (scheduleLock) {
+            runningSince = pendingSince;
+            pendingSince = -1;
+        }
+    }
+    
+    private void reconcileFinished(boolean canceled, long cost) {
+        synchronized (scheduleLock) {
+            if (canceled) {
+                //the edits are still pending
+                if (runningSince>=0 && 
+                        (pendingSince<0 || runningSince<pendingSince)) {
+                    pendingSince = runningSince;
+                }
+            }
+            else {
+                averageCost = averageCost<0 ? 
+                        cost : (3*averageCost + cost)/4;
+            }
+            runningSince = -1;
+        }
+    }
+    
     public class Stager {
+        private final ReconcileTimings.Reconcile timing;
+        Stager(ReconcileTimings.Reconcile timing) {
+            this.timing = timing;
+        }
         void afterStage(Stage stage, IProgressMonitor monitor) {
-            notifyModelListeners(stage, monitor);
+            timing.stageReached(stage);
+            notifyModelListeners(stage, monitor, timing);
+            timing.listenersNotified();
         }
     }
 
@@ -118,17 +245,32 @@ public class CeylonParserScheduler extends Job {
                 // don't bother to retrieve the AST; we don't 
                 // need it; just make sure the document gets 
                 // parsed
-                parseController.parse(document, wrappedMonitor, new Stager());
-                if (wrappedMonitor.isCanceled() || 
-                        editor.isBackgroundParsingPaused()) {
+                reconcileStarted();
+                long start = System.currentTimeMillis();
+                ReconcileTimings.Reconcile timing = 
+                        ReconcileTimings.getInstance()
+                            .start(editor.getEditorInput().getName(), 
+                                    document.getLength());
+                parseController.parse(document, wrappedMonitor, 
+                        new Stager(timing));
+                boolean canceled = wrappedMonitor.isCanceled() || 
+                        editor.isBackgroundParsingPaused();
+                if (canceled) {
                     annotationCreator.clearMessages();
                 }
                 else {
+                    long annotationStart = System.nanoTime();
                     annotationCreator.updateAnnotations();
+                    timing.listenerNotified(annotationCreator, 
+                            System.nanoTime()-annotationStart);
                 }
+                timing.end(canceled);
+                reconcileFinished(canceled, 
+                        System.currentTimeMillis()-start);
             } 
             catch (Exception e) {
                 e.printStackTrace();
+                reconcileFinished(true, 0);
             }
             return wrappedMonitor.isCanceled() ? //&& sourceStillExists()
                     Status.OK_STATUS : 
@@ -151,7 +293,8 @@ public class CeylonParserScheduler extends Job {
         listeners.clear();
     }
 
-    private synchronized void notifyModelListeners(Stage stage, IProgressMonitor monitor) {
+    private synchronized void notifyModelListeners(Stage stage, 
+            IProgressMonitor monitor, ReconcileTimings.Reconcile timing) {
         if (parseController!=null) {
             for (TreeLifecycleListener listener: new ArrayList<TreeLifecycleListener>(listeners)) {
                 if (editor.isBackgroundParsingPaused() || 
@@ -159,7 +302,10 @@ public class CeylonParserScheduler extends Job {
                     break;
                 }
                 if (listener.getStage()==stage) {
+                    long start = System.nanoTime();
                     listener.update(parseController, monitor);
+                    timing.listenerNotified(listener, 
+                            System.nanoTime()-start);
                 }
             }
         }
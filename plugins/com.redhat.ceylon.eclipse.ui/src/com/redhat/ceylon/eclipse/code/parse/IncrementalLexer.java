@@ -0,0 +1,613 @@
+package com.redhat.ceylon.eclipse.code.parse;
+
+import static com.redhat.ceylon.eclipse.util.Nodes.getTokenIndexAtCharacter;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.compiler.typechecker.parser.LexError;
+import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
+
+/**
+ * Lexes successive versions of the text of a document,
+ * relexing only the tokens around the edited text.
+ * <p>
+ * The edit is found by comparing the new text with the
+ * previously lexed text. The {@link CeylonLexer} is then
+ * restarted at the token preceding the edit, since the
+ * lexer may have looked ahead into the edited text when
+ * it lexed that token, and it stops as soon as it produces
+ * a token that starts at the same place, in the unchanged
+ * text after the edit, as a previous token. The tokens
+ * after that point are copies of the previous tokens, 
+ * shifted, and the tokens before the restart point are
+ * the previous tokens. The whole text is lexed again when
+ * the previous text had lexical errors, or when the edit
+ * introduces some.
+ * <p>
+ * A token list, and its tokens, are never modified once 
+ * returned, so they may be read by any thread. Each token
+ * list is a version of the text, which carries its own 
+ * {@link #getErrors(List) lexical errors}, its own {@link
+ * #getTokenStream(List) token stream} for the parser and 
+ * the {@link #getRelexedRegion(List, List) region} relexed
+ * since the version it was lexed from, so that the services
+ * sharing the lexer, which may lex different texts of the
+ * document in turn, never mix up the results of different
+ * versions. Token lists which differ only in whitespace
+ * and comments, so that the parser would see the same 
+ * tokens, have the {@link #isSameSyntax(List, List) same
+ * syntax}, and a tree built from one of them may be moved
+ * to the positions of the other.
+ * <p>
+ * The tokens always have the types assigned by the lexer:
+ * the {@link com.redhat.ceylon.compiler.typechecker.parser.CeylonParser},
+ * which sets the type of the identifiers of annotations
+ * and packages, parses copies of them, returned by
+ * {@link #getTokenStream(List)}. The types it assigned
+ * are {@link #parsed(List, List) recorded} separately, and
+ * carried over to the unchanged tokens of the following
+ * texts, for the syntax highlighting.
+ * <p>
+ * There is a single instance per document, returned by
+ * {@link #forDocument(IDocument)}, which the services of
+ * the editors of the document share, so that each edit is
+ * lexed only once: the {@link CeylonParseController}, the
+ * syntax highlighting, the auto edits and the bracket
+ * matching. The tokens of a document are versioned by the
+ * modification stamp of the document, so that they are
+ * returned without even copying the text of the document
+ * when it didn't change since it was lexed.
+ */
+public class IncrementalLexer {
+
+    private static final Map<IDocument, IncrementalLexer> lexers =
+            new WeakHashMap<IDocument, IncrementalLexer>();
+    
+    private static final AtomicLong versions = new AtomicLong();
+
+    /**
+     * The lexer shared by the services of the editors of
+     * the given document.
+     */
+    public static IncrementalLexer forDocument(IDocument document) {
+        synchronized (lexers) {
+            IncrementalLexer lexer = lexers.get(document);
+            if (lexer==null) {
+                lexer = new IncrementalLexer();
+                lexers.put(document, lexer);
+            }
+            return lexer;
+        }
+    }
+
+    private String text;
+    private long modificationStamp =
+            IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    private TokenList tokens;
+    private IRegion unparsedRegion;
+    private List<CommonToken> parsedTokens;
+    private int[] parsedTypes;
+
+    /**
+     * The tokens of the given text, including the tokens
+     * of the hidden channel and the EOF token.
+     */
+    public synchronized List<CommonToken> getTokens(String text) {
+        if (tokens==null || !text.equals(this.text)) {
+            if (tokens==null || !tokens.errors.isEmpty() ||
+                    !relex(text)) {
+                lex(text);
+            }
+            this.text = text;
+            modificationStamp =
+                    IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+        }
+        return tokens;
+    }
+
+    /**
+     * The tokens of the current text of the given document,
+     * including the tokens of the hidden channel and the EOF
+     * token.
+     */
+    public synchronized List<CommonToken> getTokens(IDocument document) {
+        long stamp = document instanceof IDocumentExtension4 ?
+                ((IDocumentExtension4) document).getModificationStamp() :
+                IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+        if (tokens==null || 
+                stamp==IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP ||
+                stamp!=modificationStamp) {
+            getTokens(document.get());
+            modificationStamp = stamp;
+        }
+        return tokens;
+    }
+
+    /**
+     * A token stream for the parser over copies of the 
+     * given tokens, with the types assigned by the lexer.
+     */
+    public static CommonTokenStream getTokenStream(
+            List<CommonToken> tokens) {
+        List<CommonToken> copies = 
+                new ArrayList<CommonToken>(tokens.size());
+        for (CommonToken token: tokens) {
+            copies.add(new CommonToken(token));
+        }
+        CommonTokenStream tokenStream =
+                new CommonTokenStream(
+                        new TokenListSource(copies));
+        tokenStream.fill();
+        return tokenStream;
+    }
+    
+    /**
+     * Records the types the parser assigned to the given
+     * parsed copies of the given tokens, if they are the 
+     * tokens of the last lexed text.
+     */
+    public synchronized void parsed(List<CommonToken> lexedTokens,
+            List<CommonToken> parsedTokens) {
+        if (lexedTokens!=tokens || 
+                parsedTokens.size()!=tokens.size()) {
+            return;
+        }
+        int[] types = new int[parsedTokens.size()];
+        for (int i=0; i<types.length; i++) {
+            types[i] = parsedTokens.get(i).getType();
+        }
+        this.parsedTokens = parsedTokens;
+        parsedTypes = types;
+    }
+    
+    /**
+     * The types of the given tokens, if they are the tokens
+     * of the last lexed text, as assigned by the last parse
+     * to the tokens it has seen, and by the lexer to the 
+     * others, or null if no text was parsed since it was 
+     * last lexed from scratch. The array must not be 
+     * modified.
+     */
+    public synchronized int[] getParsedTypes(List<CommonToken> tokens) {
+        return tokens==this.tokens ? parsedTypes : null;
+    }
+
+    /**
+     * Do the given tokens, returned by an incremental lexer,
+     * differ from the other given tokens only in whitespace
+     * and comments, so that the parser would see the same 
+     * tokens?
+     */
+    public static boolean isSameSyntax(List<CommonToken> tokens,
+            List<CommonToken> otherTokens) {
+        return tokens instanceof TokenList &&
+                otherTokens instanceof TokenList &&
+                ((TokenList) tokens).syntax==
+                    ((TokenList) otherTokens).syntax;
+    }
+
+    /**
+     * The lexical errors of the text of the given tokens, 
+     * returned by an incremental lexer.
+     */
+    public static List<LexError> getErrors(List<CommonToken> tokens) {
+        return tokens instanceof TokenList ?
+                ((TokenList) tokens).errors :
+                Collections.<LexError>emptyList();
+    }
+
+    /**
+     * The region of the text of the given tokens covered by
+     * the tokens which were lexed again, if they were lexed
+     * from the given previous tokens, or null if they were
+     * lexed from another version of the text, or if the 
+     * whole text was lexed.
+     */
+    public static IRegion getRelexedRegion(List<CommonToken> tokens,
+            List<CommonToken> previousTokens) {
+        if (tokens instanceof TokenList &&
+                previousTokens instanceof TokenList) {
+            TokenList list = (TokenList) tokens;
+            if (list.previousVersion==
+                    ((TokenList) previousTokens).version) {
+                return list.relexedRegion;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The tokens of the previous text that were replaced
+     * by the tokens of the {@link #getRelexedRegion(List, List)
+     * relexed region} of the given tokens.
+     */
+    public static List<CommonToken> getReplacedTokens(
+            List<CommonToken> tokens) {
+        return tokens instanceof TokenList ?
+                ((TokenList) tokens).replacedTokens :
+                Collections.<CommonToken>emptyList();
+    }
+
+    /**
+     * Answers the region of the last lexed text covered by
+     * tokens that the parser had not seen before it parsed
+     * the given {@link #parsed(List, List) parsed tokens}, 
+     * if they are the copies of the tokens of the last 
+     * lexed text, and forgets it, or answers null.
+     */
+    public synchronized IRegion takeUnparsedRegion(
+            List<CommonToken> parsedTokens) {
+        if (parsedTokens==null || 
+                parsedTokens!=this.parsedTokens) {
+            return null;
+        }
+        IRegion region = unparsedRegion;
+        unparsedRegion = null;
+        return region;
+    }
+
+    private void lex(String text) {
+        CeylonLexer lexer =
+                new CeylonLexer(new NewlineFixingStringStream(text));
+        CommonTokenStream tokenStream =
+                new CommonTokenStream(lexer);
+        tokenStream.fill();
+        @SuppressWarnings("unchecked")
+        List<CommonToken> lexed = tokenStream.getTokens();
+        List<LexError> errors = lexer.getErrors().isEmpty() ?
+                Collections.<LexError>emptyList() :
+                unmodifiableList(new ArrayList<LexError>(lexer.getErrors()));
+        tokens = new TokenList(lexed, new Object(), errors, 
+                -1, null, Collections.<CommonToken>emptyList());
+        unparsedRegion = new Region(0, text.length());
+        parsedTokens = null;
+        parsedTypes = null;
+    }
+
+    private boolean relex(String newText) {
+        String oldText = text;
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        if (oldLength==0 || tokens.size()<2) {
+            return false;
+        }
+
+        //find the edited text
+        int limit = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix<limit &&
+                oldText.charAt(prefix)==newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix<limit-prefix &&
+                oldText.charAt(oldLength-1-suffix)==
+                newText.charAt(newLength-1-suffix)) {
+            suffix++;
+        }
+        int newEditEnd = newLength-suffix;
+        int delta = newLength-oldLength;
+
+        //restart the lexer at the start of the token
+        //preceding the token containing the edit
+        int containing =
+                getTokenIndexAtCharacter(tokens,
+                        Math.max(prefix-1, 0));
+        if (containing<0) containing = -containing;
+        int first = Math.max(containing-1, 0);
+        CommonToken restartToken = tokens.get(first);
+        if (restartToken.getType()==CeylonLexer.EOF) {
+            return false;
+        }
+        int restart = restartToken.getStartIndex();
+        RestartedStringStream stream =
+                new RestartedStringStream(newText, restart,
+                        restartToken.getLine(),
+                        restartToken.getCharPositionInLine());
+        CeylonLexer lexer = new CeylonLexer(stream);
+
+        List<CommonToken> relexed = new ArrayList<CommonToken>();
+        int resync = -1;
+        int lineDelta = 0;
+        int columnDelta = 0;
+        int oldIndex = first;
+        while (true) {
+            CommonToken token = (CommonToken) lexer.nextToken();
+            if (!lexer.getErrors().isEmpty()) {
+                return false;
+            }
+            int type = token.getType();
+            int start = token.getStartIndex();
+            if (type!=CeylonLexer.EOF && start>=newEditEnd) {
+                //the text after the edit is unchanged, so
+                //if an old token started at the same place
+                //then all the following tokens are the same
+                int oldStart = start-delta;
+                while (oldIndex<tokens.size() &&
+                        tokens.get(oldIndex).getStartIndex()<oldStart) {
+                    oldIndex++;
+                }
+                if (oldIndex<tokens.size()) {
+                    CommonToken old = tokens.get(oldIndex);
+                    if (old.getStartIndex()==oldStart &&
+                            old.getType()!=CeylonLexer.EOF) {
+                        resync = oldIndex;
+                        lineDelta = token.getLine()-old.getLine();
+                        columnDelta = token.getCharPositionInLine()-
+                                old.getCharPositionInLine();
+                        break;
+                    }
+                }
+            }
+            token.setTokenIndex(first+relexed.size());
+            detach(token);
+            relexed.add(token);
+            if (type==CeylonLexer.EOF) {
+                break;
+            }
+        }
+
+        int end = resync<0 ? tokens.size() : resync;
+        CommonToken last = relexed.get(relexed.size()-1);
+        int relexedEnd = Math.max(restart,
+                Math.min(last.getStopIndex()+1, newLength));
+        IRegion region = new Region(restart, relexedEnd-restart);
+        List<CommonToken> replacedTokens = unmodifiableList(
+                new ArrayList<CommonToken>(tokens.subList(first, end)));
+        
+        boolean sameSyntax = 
+                isSameTokens(tokens.subList(first, end), relexed);
+        List<CommonToken> result =
+                new ArrayList<CommonToken>(first+relexed.size()+
+                        tokens.size()-end);
+        //the tokens before the relexed tokens didn't move
+        result.addAll(tokens.subList(0, first));
+        result.addAll(relexed);
+        if (resync>=0) {
+            int shift = result.size()-resync;
+            boolean unchanged = delta==0 && lineDelta==0 &&
+                    columnDelta==0 && shift==0;
+            int resyncLine = tokens.get(resync).getLine();
+            for (int i=resync; i<tokens.size(); i++) {
+                CommonToken old = tokens.get(i);
+                CommonToken token;
+                if (unchanged) {
+                    token = old;
+                }
+                else {
+                    token = new CommonToken(old);
+                    token.setStartIndex(old.getStartIndex()+delta);
+                    token.setStopIndex(old.getStopIndex()+delta);
+                    token.setLine(old.getLine()+lineDelta);
+                    if (old.getLine()==resyncLine) {
+                        token.setCharPositionInLine(
+                                old.getCharPositionInLine()+columnDelta);
+                        if (columnDelta!=0 && isColumnSensitive(old)) {
+                            sameSyntax = false;
+                        }
+                    }
+                    token.setTokenIndex(result.size());
+                    detach(token);
+                }
+                result.add(token);
+            }
+        }
+
+        unparsedRegion = union(unparsedRegion, prefix, delta,
+                region, newLength);
+        if (!sameSyntax) {
+            //when only whitespace and comments changed,
+            //the parsed types are still the types of
+            //the tokens at the same indexes
+            parsedTypes = carryParsedTypes(result, first, 
+                    relexed.size(), resync);
+        }
+        parsedTokens = null;
+        tokens = new TokenList(result, 
+                sameSyntax ? tokens.syntax : new Object(),
+                Collections.<LexError>emptyList(), 
+                tokens.version, region, replacedTokens);
+        return true;
+    }
+
+    /**
+     * The parsed types of the given new tokens: the parsed
+     * types of the old tokens before and after the relexed
+     * tokens, and the types of the relexed tokens.
+     */
+    private int[] carryParsedTypes(List<CommonToken> result,
+            int first, int relexedCount, int resync) {
+        if (parsedTypes==null) {
+            return null;
+        }
+        int[] types = new int[result.size()];
+        System.arraycopy(parsedTypes, 0, types, 0, first);
+        int end = first+relexedCount;
+        for (int i=first; i<end; i++) {
+            types[i] = result.get(i).getType();
+        }
+        if (resync>=0) {
+            System.arraycopy(parsedTypes, resync, types, end,
+                    types.length-end);
+        }
+        return types;
+    }
+
+    /**
+     * The union of the given region of the new text and
+     * the given region of the old text, mapped to the new
+     * text.
+     */
+    private static IRegion union(IRegion oldRegion,
+            int prefix, int delta, IRegion newRegion,
+            int length) {
+        if (oldRegion==null) {
+            return newRegion;
+        }
+        int start = oldRegion.getOffset();
+        int end = start+oldRegion.getLength();
+        if (start>prefix) start = Math.max(start+delta, prefix);
+        if (end>prefix) end = Math.max(end+delta, prefix);
+        start = Math.min(start, newRegion.getOffset());
+        end = Math.min(length, Math.max(end,
+                newRegion.getOffset()+newRegion.getLength()));
+        return new Region(start, Math.max(end-start, 0));
+    }
+
+    /**
+     * Would the parser see the same tokens, in the same 
+     * order, with the same text?
+     */
+    private static boolean isSameTokens(List<CommonToken> oldTokens,
+            List<CommonToken> newTokens) {
+        if (oldTokens.size()!=newTokens.size()) {
+            return false;
+        }
+        for (int i=0; i<oldTokens.size(); i++) {
+            CommonToken old = oldTokens.get(i);
+            CommonToken token = newTokens.get(i);
+            if (old.getChannel()!=token.getChannel() ||
+                    old.getType()!=token.getType()) {
+                return false;
+            }
+            if (token.getChannel()!=Token.HIDDEN_CHANNEL &&
+                    !old.getText().equals(token.getText())) {
+                return false;
+            }
+            if (isColumnSensitive(token) &&
+                    old.getCharPositionInLine()!=
+                        token.getCharPositionInLine()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Does the value of the given token depend on its column?
+     * The indentation of the lines of a multiline string, or
+     * of a string template, is stripped according to the 
+     * column of its opening quote, so moving it changes the
+     * value of the string, and its warnings.
+     */
+    private static boolean isColumnSensitive(CommonToken token) {
+        switch (token.getType()) {
+        case CeylonLexer.STRING_START:
+            return true;
+        case CeylonLexer.STRING_LITERAL:
+        case CeylonLexer.ASTRING_LITERAL:
+        case CeylonLexer.VERBATIM_STRING:
+        case CeylonLexer.AVERBATIM_STRING:
+            return token.getText().indexOf('\n')>=0;
+        default:
+            return false;
+        }
+    }
+    
+    /**
+     * Sets the text of a new token, so that it doesn't keep
+     * a reference to the whole text it was lexed from, 
+     * which would otherwise be kept as long as the token is
+     * reused by the following versions of the text.
+     */
+    private static void detach(CommonToken token) {
+        token.setText(token.getText());
+        token.setInputStream(null);
+    }
+
+    /**
+     * A stream which the lexer starts reading in the middle
+     * of the text, at the start of a token.
+     */
+    private static final class RestartedStringStream
+            extends NewlineFixingStringStream {
+        RestartedStringStream(String text, int index,
+                int line, int charPositionInLine) {
+            super(text);
+            this.p = index;
+            this.line = line;
+            this.charPositionInLine = charPositionInLine;
+        }
+    }
+
+    /**
+     * The tokens of a version of the text, tagged with the
+     * syntax they share with the tokens of the versions 
+     * which differ from it only in whitespace and comments,
+     * with the lexical errors of the text and the region
+     * relexed since the previous version.
+     */
+    private static final class TokenList 
+            extends AbstractList<CommonToken> 
+            implements RandomAccess {
+        private final List<CommonToken> tokens;
+        private final Object syntax;
+        private final List<LexError> errors;
+        private final long version = versions.incrementAndGet();
+        private final long previousVersion;
+        private final IRegion relexedRegion;
+        private final List<CommonToken> replacedTokens;
+        TokenList(List<CommonToken> tokens, Object syntax,
+                List<LexError> errors, long previousVersion,
+                IRegion relexedRegion, 
+                List<CommonToken> replacedTokens) {
+            this.tokens = tokens;
+            this.syntax = syntax;
+            this.errors = errors;
+            this.previousVersion = previousVersion;
+            this.relexedRegion = relexedRegion;
+            this.replacedTokens = replacedTokens;
+        }
+        @Override
+        public CommonToken get(int index) {
+            return tokens.get(index);
+        }
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+    }
+
+    /**
+     * Feeds the tokens of a list to a token stream.
+     */
+    private static final class TokenListSource
+            implements TokenSource {
+        private final List<CommonToken> tokens;
+        private int index = 0;
+        TokenListSource(List<CommonToken> tokens) {
+            this.tokens = tokens;
+        }
+        @Override
+        public Token nextToken() {
+            Token token = tokens.get(index);
+            if (index<tokens.size()-1) {
+                index++;
+            }
+            return token;
+        }
+        @Override
+        public String getSourceName() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.redhat.ceylon.eclipse.code.parse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations, with buckets of exponentially
+ * growing widths: the first bucket counts the durations of
+ * less than 1 ms, each following bucket the durations of
+ * less than twice the bound of the previous bucket, and
+ * the last bucket the durations of more than 4 s.
+ * Recording a duration doesn't lock.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 14;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(getBucket(nanos));
+        total.addAndGet(nanos);
+        long currentMax;
+        do {
+            currentMax = max.get();
+        }
+        while (nanos > currentMax &&
+                !max.compareAndSet(currentMax, nanos));
+    }
+
+    /**
+     * Forget the recorded durations. A duration recorded
+     * concurrently may be partially forgotten.
+     */
+    public void reset() {
+        for (int i=0; i<BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int getBucket(long nanos) {
+        long millis = nanos / 1000000;
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKETS-1);
+    }
+
+    /**
+     * The number of buckets.
+     */
+    public static int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * The exclusive upper bound, in milliseconds, of the
+     * durations counted by the given bucket, or -1 for the
+     * last bucket.
+     */
+    public static long getUpperBound(int bucket) {
+        return bucket == BUCKETS-1 ? -1 : 1L << bucket;
+    }
+
+    /**
+     * The number of durations counted by each bucket.
+     */
+    public long[] getCounts() {
+        long[] result = new long[BUCKETS];
+        for (int i=0; i<BUCKETS; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * The sum of the recorded durations, in nanoseconds.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * The longest recorded duration, in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The mean of the recorded durations, in milliseconds.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotal() / 1000000.0 / count;
+    }
+
+    /**
+     * An upper bound of the given percentile of the recorded
+     * durations, in milliseconds: the upper bound of the
+     * bucket that contains it, or the longest duration if
+     * it is in the last bucket.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getCounts();
+        long count = 0;
+        for (long c: counts) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i=0; i<BUCKETS-1; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return getMax() / 1000000;
+    }
+
+}
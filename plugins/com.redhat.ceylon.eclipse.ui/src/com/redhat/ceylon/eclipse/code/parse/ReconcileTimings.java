@@ -0,0 +1,353 @@
+package com.redhat.ceylon.eclipse.code.parse;
+
+import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.SLOW_RECONCILE_THRESHOLD;
+import static com.redhat.ceylon.eclipse.util.JsonLinesLog.appendString;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage;
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+import com.redhat.ceylon.eclipse.util.EditorUtil;
+import com.redhat.ceylon.eclipse.util.JsonLinesLog;
+
+/**
+ * The latencies of the reconciles of the Ceylon editors, that
+ * is, of the runs of their {@link CeylonParserScheduler}s.
+ * There is a {@link LatencyHistogram} for the whole reconcile,
+ * one for each {@link Stage}, which measures the time the
+ * {@link CeylonParseController} takes to reach the stage
+ * after the listeners of the previous stage are notified,
+ * and one for each kind of {@link TreeLifecycleListener}.
+ *
+ * The reconciles slower than the threshold set in the
+ * preferences are kept, and appended, one JSON object per
+ * line, to a log file in the state location of the plugin.
+ */
+public class ReconcileTimings {
+
+    public interface Listener {
+        void reconcileRecorded();
+    }
+
+    private static final int SLOW_HISTORY_SIZE = 50;
+
+    private static final ReconcileTimings instance = new ReconcileTimings();
+
+    public static ReconcileTimings getInstance() {
+        return instance;
+    }
+
+    private final LatencyHistogram reconciles = new LatencyHistogram();
+    private final AtomicLong canceledReconciles = new AtomicLong();
+    private final Map<Stage, LatencyHistogram> stages =
+            new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final ConcurrentHashMap<String, LatencyHistogram> listeners =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final LinkedList<SlowReconcile> slowReconciles =
+            new LinkedList<SlowReconcile>();
+    private final List<Listener> timingListeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    private ReconcileTimings() {
+        for (Stage stage: Stage.values()) {
+            if (stage != Stage.NONE) {
+                stages.put(stage, new LatencyHistogram());
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        timingListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        timingListeners.remove(listener);
+    }
+
+    /**
+     * Start measuring a reconcile of the given file.
+     *
+     * @param fileName the name of the edited file
+     * @param size the length of the document
+     */
+    public Reconcile start(String fileName, int size) {
+        return new Reconcile(fileName, size);
+    }
+
+    /**
+     * The latencies of the whole reconciles which were not
+     * canceled.
+     */
+    public LatencyHistogram getReconcileHistogram() {
+        return reconciles;
+    }
+
+    public long getCanceledReconciles() {
+        return canceledReconciles.get();
+    }
+
+    /**
+     * The latencies of each stage, in the order of the
+     * stages.
+     */
+    public Map<Stage, LatencyHistogram> getStageHistograms() {
+        return Collections.unmodifiableMap(stages);
+    }
+
+    /**
+     * The latencies of each kind of listener, by name.
+     */
+    public Map<String, LatencyHistogram> getListenerHistograms() {
+        return new TreeMap<String, LatencyHistogram>(listeners);
+    }
+
+    /**
+     * The recent reconciles which were slower than the
+     * threshold, the most recent first.
+     */
+    public List<SlowReconcile> getSlowReconciles() {
+        synchronized (slowReconciles) {
+            return new ArrayList<SlowReconcile>(slowReconciles);
+        }
+    }
+
+    /**
+     * Forget the recorded latencies.
+     */
+    public void reset() {
+        reconciles.reset();
+        for (LatencyHistogram histogram: stages.values()) {
+            histogram.reset();
+        }
+        listeners.clear();
+        canceledReconciles.set(0);
+        synchronized (slowReconciles) {
+            slowReconciles.clear();
+        }
+        notifyListeners();
+    }
+
+    public static File getLogFile() {
+        return CeylonPlugin.getInstance().getStateLocation()
+                .append("reconcileTimings")
+                .append("slowReconciles.json")
+                .toFile();
+    }
+
+    private static String getListenerName(Object listener) {
+        Class<?> type = listener.getClass();
+        String name = type.getSimpleName();
+        if (name.isEmpty()) {
+            //an anonymous class
+            name = type.getName();
+            name = name.substring(name.lastIndexOf('.')+1);
+        }
+        return name;
+    }
+
+    private LatencyHistogram getListenerHistogram(String name) {
+        LatencyHistogram histogram = listeners.get(name);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = listeners.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    private void notifyListeners() {
+        for (Listener listener: timingListeners) {
+            listener.reconcileRecorded();
+        }
+    }
+
+    /**
+     * The measures of one reconcile, in progress. It is
+     * used by a single thread.
+     */
+    public final class Reconcile {
+
+        private final String fileName;
+        private final int size;
+        private final long startTime = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private long mark = start;
+        private final Map<String, Long> stageDurations =
+                new LinkedHashMap<String, Long>();
+        private final Map<String, Long> listenerDurations =
+                new LinkedHashMap<String, Long>();
+
+        private Reconcile(String fileName, int size) {
+            this.fileName = fileName;
+            this.size = size;
+        }
+
+        /**
+         * The parse controller reached the given stage, and
+         * is about to notify its listeners.
+         */
+        public void stageReached(Stage stage) {
+            long now = System.nanoTime();
+            long duration = now - mark;
+            LatencyHistogram histogram = stages.get(stage);
+            if (histogram != null) {
+                histogram.record(duration);
+            }
+            stageDurations.put(stage.name(), duration);
+            mark = now;
+        }
+
+        /**
+         * The given listener was notified, taking the given
+         * time.
+         */
+        public void listenerNotified(Object listener, long nanos) {
+            String name = getListenerName(listener);
+            getListenerHistogram(name).record(nanos);
+            Long previous = listenerDurations.get(name);
+            listenerDurations.put(name,
+                    previous == null ? nanos : previous + nanos);
+        }
+
+        /**
+         * The listeners of the last stage were notified.
+         */
+        public void listenersNotified() {
+            mark = System.nanoTime();
+        }
+
+        /**
+         * The reconcile is over.
+         */
+        public void end(boolean canceled) {
+            if (canceled) {
+                canceledReconciles.incrementAndGet();
+                return;
+            }
+            long duration = System.nanoTime() - start;
+            reconciles.record(duration);
+            int threshold = EditorUtil.getPreferences()
+                    .getInt(SLOW_RECONCILE_THRESHOLD);
+            if (threshold > 0 && duration >= threshold * 1000000L) {
+                SlowReconcile slow =
+                        new SlowReconcile(fileName, size, startTime,
+                                duration, stageDurations,
+                                listenerDurations);
+                synchronized (slowReconciles) {
+                    slowReconciles.addFirst(slow);
+                    if (slowReconciles.size() > SLOW_HISTORY_SIZE) {
+                        slowReconciles.removeLast();
+                    }
+                }
+                JsonLinesLog.append(getLogFile(), slow.toJson());
+            }
+            notifyListeners();
+        }
+    }
+
+    /**
+     * A reconcile slower than the threshold.
+     */
+    public static final class SlowReconcile {
+
+        private final String fileName;
+        private final int size;
+        private final long startTime;
+        private final long duration;
+        private final Map<String, Long> stageDurations;
+        private final Map<String, Long> listenerDurations;
+
+        SlowReconcile(String fileName, int size, long startTime,
+                long duration, Map<String, Long> stageDurations,
+                Map<String, Long> listenerDurations) {
+            this.fileName = fileName;
+            this.size = size;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.stageDurations = stageDurations;
+            this.listenerDurations = listenerDurations;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * The length of the document, in characters.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * The duration of the reconcile, in nanoseconds.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * The time taken to reach each stage, in nanoseconds.
+         */
+        public Map<String, Long> getStageDurations() {
+            return Collections.unmodifiableMap(stageDurations);
+        }
+
+        /**
+         * The time taken by each kind of listener, in
+         * nanoseconds.
+         */
+        public Map<String, Long> getListenerDurations() {
+            return Collections.unmodifiableMap(listenerDurations);
+        }
+
+        /**
+         * A JSON object, with the durations in microseconds.
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder();
+            appendString(json.append("{\"file\":"), fileName)
+                .append(",\"size\":").append(size)
+                .append(",\"start\":").append(startTime)
+                .append(",\"micros\":").append(duration / 1000)
+                .append(",\"stages\":");
+            appendJson(json, stageDurations);
+            json.append(",\"listeners\":");
+            appendJson(json, listenerDurations);
+            json.append('}');
+            return json.toString();
+        }
+
+        private static void appendJson(StringBuilder json,
+                Map<String, Long> durations) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Long> entry: durations.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendString(json, entry.getKey()).append(':')
+                    .append(entry.getValue() / 1000);
+            }
+            json.append('}');
+        }
+    }
+}
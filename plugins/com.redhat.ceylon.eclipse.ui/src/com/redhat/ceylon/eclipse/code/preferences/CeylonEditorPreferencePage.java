@@ -14,6 +14,7 @@ import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitial
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.PASTE_CORRECT_INDENTATION;
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.PASTE_ESCAPE_QUOTED;
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.PASTE_IMPORTS;
+import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.SLOW_RECONCILE_THRESHOLD;
 import static com.redhat.ceylon.eclipse.code.preferences.CeylonPreferenceInitializer.SUB_WORD_NAVIGATION;
 import static org.eclipse.jdt.ui.PreferenceConstants.EDITOR_FOLDING_ENABLED;
 import static org.eclipse.ui.dialogs.PreferencesUtil.createPreferenceDialogOn;
@@ -23,6 +24,7 @@ import org.eclipse.jface.layout.GridLayoutFactory;
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -70,6 +72,7 @@ public class CeylonEditorPreferencePage
     BooleanFieldEditor closeBackticks;
     BooleanFieldEditor closeQuotes;
     BoolFieldEditor enableFolding;
+    IntegerFieldEditor slowReconcileThreshold;
     
     public CeylonEditorPreferencePage() {
         super(GRID);
@@ -97,6 +100,7 @@ public class CeylonEditorPreferencePage
         closeParens.store();
         closeQuotes.store();
         enableFolding.store();
+        slowReconcileThreshold.store();
         return true;
     }
     
@@ -121,6 +125,7 @@ public class CeylonEditorPreferencePage
         closeParens.loadDefault();
         closeQuotes.loadDefault();
         enableFolding.store();
+        slowReconcileThreshold.loadDefault();
     }
     
     @Override
@@ -411,6 +416,12 @@ public class CeylonEditorPreferencePage
                 getFieldEditorParent(group));
         pasteEscapeQuoted.load();
         addField(pasteEscapeQuoted);
+        slowReconcileThreshold = new IntegerFieldEditor(SLOW_RECONCILE_THRESHOLD, 
+                "Log reconciles slower than (ms, 0 to disable):", 
+                getFieldEditorParent(group));
+        slowReconcileThreshold.setValidRange(0, 600000);
+        slowReconcileThreshold.load();
+        addField(slowReconcileThreshold);
     }
     
     protected Composite getFieldEditorParent(Composite group) {
@@ -1,6 +1,7 @@
 package com.redhat.ceylon.eclipse.code.search;
 
 import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
+import static com.redhat.ceylon.eclipse.util.SubtypeIndex.mayDeclareSubtypeOf;
 
 import java.util.Collections;
 import java.util.Set;
@@ -10,8 +11,11 @@ import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.ui.IEditorPart;
 
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Referenceable;
+import com.redhat.ceylon.model.typechecker.model.Scope;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.eclipse.util.FindReferencesVisitor;
@@ -37,6 +41,22 @@ public class FindRefinementsAction extends AbstractFindAction {
             return Collections.<Node>unmodifiableSet(nodes);
         }
 
+        @Override
+        boolean mayContainMatches(PhasedUnit pu,
+                Referenceable referencedDeclaration) {
+            if (!super.mayContainMatches(pu, referencedDeclaration)) {
+                return false;
+            }
+            //only the subtypes of the type declaring the
+            //member can refine it
+            Declaration declaration = (Declaration)
+                    new FindReferencesVisitor(referencedDeclaration)
+                            .getDeclaration();
+            Scope container = declaration.getContainer();
+            return !(container instanceof TypeDeclaration) ||
+                    mayDeclareSubtypeOf(pu, (TypeDeclaration) container);
+        }
+
         @Override
         int limitTo() {
             //TODO: is this really correct?
@@ -5,10 +5,23 @@ import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTyp
 import static com.redhat.ceylon.eclipse.util.JavaSearch.createSearchPattern;
 import static com.redhat.ceylon.eclipse.util.JavaSearch.getProjectsToSearch;
 import static com.redhat.ceylon.eclipse.util.JavaSearch.runSearch;
+import static com.redhat.ceylon.eclipse.util.ReferenceIndex.getIndexedName;
+import static com.redhat.ceylon.eclipse.util.ReferenceIndex.mayReferTo;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
@@ -46,6 +59,8 @@ import com.redhat.ceylon.eclipse.core.builder.CeylonNature;
 import com.redhat.ceylon.eclipse.core.model.JDTModule;
 import com.redhat.ceylon.eclipse.util.DocLinks;
 import com.redhat.ceylon.eclipse.util.EditorUtil;
+import com.redhat.ceylon.eclipse.util.ReferenceIndex;
+import com.redhat.ceylon.eclipse.util.SubtypeIndex;
 
 abstract class FindSearchQuery implements ISearchQuery {
     
@@ -53,7 +68,7 @@ abstract class FindSearchQuery implements ISearchQuery {
     //private final IProject project;
     private AbstractTextSearchResult result = 
             new CeylonSearchResult(this);
-    private int count = 0;
+    private final AtomicInteger count = new AtomicInteger();
     private IWorkbenchPage page;
     private String name;
     private IProject project;
@@ -98,16 +113,29 @@ abstract class FindSearchQuery implements ISearchQuery {
         Set<String> searchedArchives = new HashSet<String>();
         Package pack = getPackage();
         if (pack==null) return;
+        List<Tree.CompilationUnit> dirtyRootNodes = getDirtyRootNodes();
+        List<SearchTask> tasks = new ArrayList<SearchTask>();
         for (IProject project: getProjectsToSearch(this.project)) {
             if (CeylonNature.isEnabled(project)) {
                 TypeChecker typeChecker = 
                         getProjectTypeChecker(project);
                 List<PhasedUnit> phasedUnits = 
-                        typeChecker.getPhasedUnits().getPhasedUnits();
-                findInUnits(phasedUnits, monitor);
-                monitor.worked(1);
-                if (monitor.isCanceled()) {
-                    throw new OperationCanceledException();
+                        new ArrayList<PhasedUnit>(typeChecker
+                                .getPhasedUnits().getPhasedUnits());
+                //split the big projects so that their units 
+                //are searched in parallel too
+                int work = 1;
+                for (int i=0; i<phasedUnits.size(); i+=UNITS_PER_TASK) {
+                    List<PhasedUnit> batch = 
+                            phasedUnits.subList(i, 
+                                    Math.min(i+UNITS_PER_TASK, 
+                                            phasedUnits.size()));
+                    tasks.add(new SearchTask(batch, null, 
+                            dirtyRootNodes, work, monitor));
+                    work = 0;
+                }
+                if (work>0) {
+                    monitor.worked(work);
                 }
                 Modules modules = typeChecker.getContext().getModules();
                 for (Module m: modules.getListOfModules()) {
@@ -121,17 +149,140 @@ abstract class FindSearchQuery implements ISearchQuery {
                             if (searchedArchives.add(archivePath) &&
                                     searchedArchives.add(module.getSourceArchivePath()) && 
                                     m.getAllReachablePackages().contains(pack)) {
-                                findInUnits(module.getPhasedUnits(), monitor);
-                                monitor.worked(1);
-                                if (monitor.isCanceled()) {
-                                    throw new OperationCanceledException();
-                                }
+                                tasks.add(new SearchTask(null, module, 
+                                        dirtyRootNodes, 1, monitor));
                             }
                         }
                     }
                 }
             }
         }
+        runTasks(tasks, monitor);
+    }
+
+    /**
+     * The maximum number of units of a project searched by
+     * the same task.
+     */
+    private static final int UNITS_PER_TASK = 50;
+
+    private static ExecutorService executor = null;
+
+    /**
+     * The bounded pool of threads shared by all the searches.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(
+                    Math.max(1, Runtime.getRuntime().availableProcessors()),
+                    new ThreadFactory() {
+                        private final AtomicInteger threadCount = 
+                                new AtomicInteger();
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, 
+                                    "Ceylon search " + 
+                                            threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * Serializes the loading of the units of the source
+     * archives, which typechecks them.
+     */
+    private static final Object archiveLoadingLock = new Object();
+
+    /**
+     * Searches the units of a project, or of an archive
+     * module, in a thread of the pool. The matches are added 
+     * to the result as soon as they are found.
+     */
+    private final class SearchTask implements Callable<Integer> {
+        private final List<? extends PhasedUnit> units;
+        private final JDTModule module;
+        private final List<Tree.CompilationUnit> dirtyRootNodes;
+        private final int work;
+        private final IProgressMonitor monitor;
+        
+        SearchTask(List<? extends PhasedUnit> units, JDTModule module,
+                List<Tree.CompilationUnit> dirtyRootNodes, int work, 
+                IProgressMonitor monitor) {
+            this.units = units;
+            this.module = module;
+            this.dirtyRootNodes = dirtyRootNodes;
+            this.work = work;
+            this.monitor = monitor;
+        }
+        
+        @Override
+        public Integer call() throws Exception {
+            List<? extends PhasedUnit> units = this.units;
+            if (units==null) {
+                synchronized (archiveLoadingLock) {
+                    if (monitor.isCanceled()) {
+                        return 0;
+                    }
+                    units = module.getPhasedUnits();
+                }
+            }
+            findInUnits(units, dirtyRootNodes, monitor);
+            return work;
+        }
+    }
+
+    private void runTasks(List<SearchTask> tasks, 
+            IProgressMonitor monitor) {
+        CompletionService<Integer> completionService = 
+                new ExecutorCompletionService<Integer>(getExecutor());
+        List<Future<Integer>> futures = 
+                new ArrayList<Future<Integer>>(tasks.size());
+        for (SearchTask task: tasks) {
+            futures.add(completionService.submit(task));
+        }
+        try {
+            monitor.subTask("Searching source files");
+            for (int remaining = tasks.size(); remaining>0;) {
+                //poll, so that a cancellation is noticed even
+                //while a big unit is being searched
+                Future<Integer> future = 
+                        completionService.poll(100, 
+                                TimeUnit.MILLISECONDS);
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                if (future!=null) {
+                    remaining--;
+                    try {
+                        //SubMonitors are not thread-safe, so 
+                        //only report progress from this thread
+                        monitor.worked(future.get());
+                    }
+                    catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            throw new OperationCanceledException();
+        }
+        finally {
+            for (Future<Integer> future: futures) {
+                future.cancel(false);
+            }
+        }
     }
 
     private Package getPackage() {
@@ -202,7 +353,7 @@ abstract class FindSearchQuery implements ISearchQuery {
                             (IJavaElement) match.getElement();
                     if (enclosingElement!=null && 
                             match.getAccuracy()!=SearchMatch.A_INACCURATE) {
-                        count++;
+                        count.incrementAndGet();
                     }
                 }
             }
@@ -212,13 +363,21 @@ abstract class FindSearchQuery implements ISearchQuery {
     abstract int limitTo();
     
     private void findInUnits(Iterable<? extends PhasedUnit> units, 
+            List<Tree.CompilationUnit> dirtyRootNodes,
             IProgressMonitor monitor) {
         for (PhasedUnit pu: units) {
-            monitor.subTask("Searching source file " + 
-                    pu.getUnitFile().getPath());
-            CompilationUnit cu = getRootNode(pu);
+            if (monitor.isCanceled()) {
+                return;
+            }
+            CompilationUnit cu = 
+                    getDirtyRootNode(pu, dirtyRootNodes);
+            if (cu==null) {
+                if (!mayContainMatches(pu, referencedDeclaration)) {
+                    continue;
+                }
+                cu = pu.getCompilationUnit();
+            }
             Set<Node> nodes = getNodes(cu, referencedDeclaration);
-            //TODO: should really add these as we find them:
             for (Node node: nodes) {
                 if (node.getToken()==null) {
                     //a synthetic node inserted in the tree
@@ -244,28 +403,64 @@ abstract class FindSearchQuery implements ISearchQuery {
                             }
                         }
                     }
+                    //the result is thread-safe, and the
+                    //search view shows the match right away
                     result.addMatch(match);
-                    count++;
+                    count.incrementAndGet();
                 }
             }
-            if (monitor.isCanceled()) {
-                throw new OperationCanceledException();
+            if (cu==pu.getCompilationUnit()) {
+                //the units of the source archives are only
+                //typechecked when first searched
+                ReferenceIndex.indexIfNecessary(pu);
+                SubtypeIndex.indexIfNecessary(pu);
             }
         }
     }
 
-    Tree.CompilationUnit getRootNode(PhasedUnit pu) {
+    /**
+     * Returns the trees of the dirty editors. The editors
+     * are only looked up once for the whole search, before
+     * it's spread across several threads.
+     */
+    List<Tree.CompilationUnit> getDirtyRootNodes() {
+        List<Tree.CompilationUnit> rootNodes = 
+                new ArrayList<Tree.CompilationUnit>();
         for (IEditorPart editor: page.getDirtyEditors()) {
             if (editor instanceof CeylonEditor) {
                 CeylonParseController cpc = 
                         ((CeylonEditor) editor).getParseController();
-                if ( /*editor.isDirty() &&*/
-                        pu.getUnit().equals(cpc.getRootNode().getUnit()) ) {
-                    return cpc.getRootNode();
+                if (cpc.getRootNode()!=null) {
+                    rootNodes.add(cpc.getRootNode());
                 }
             }
         }
-        return pu.getCompilationUnit();
+        return rootNodes;
+    }
+
+    /**
+     * Returns the tree of the dirty editor for the given
+     * unit, or null if it's not open in a dirty editor.
+     */
+    private static Tree.CompilationUnit getDirtyRootNode(PhasedUnit pu,
+            List<Tree.CompilationUnit> dirtyRootNodes) {
+        for (Tree.CompilationUnit rootNode: dirtyRootNodes) {
+            if (pu.getUnit().equals(rootNode.getUnit())) {
+                return rootNode;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Determines if the given unit, as typechecked by the
+     * last build, may contain matches. By default, the units 
+     * that don't refer to any declaration with the name of 
+     * the searched declaration can't contain a match.
+     */
+    boolean mayContainMatches(PhasedUnit pu, 
+            Referenceable referencedDeclaration) {
+        return mayReferTo(pu, getIndexedName(referencedDeclaration));
     }
     
     protected abstract Set<Node> getNodes(Tree.CompilationUnit cu, 
@@ -280,7 +475,7 @@ abstract class FindSearchQuery implements ISearchQuery {
     
     @Override
     public String getLabel() {
-        return "Displaying " + count + " " + labelString() + 
+        return "Displaying " + count.get() + " " + labelString() + 
                 " '" + name + "'";
     }
     
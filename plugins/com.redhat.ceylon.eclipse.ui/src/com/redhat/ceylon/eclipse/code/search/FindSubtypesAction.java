@@ -1,6 +1,7 @@
 package com.redhat.ceylon.eclipse.code.search;
 
 import static com.redhat.ceylon.eclipse.ui.CeylonPlugin.PLUGIN_ID;
+import static com.redhat.ceylon.eclipse.util.SubtypeIndex.mayDeclareSubtypeOf;
 
 import java.util.Collections;
 import java.util.Set;
@@ -10,6 +11,7 @@ import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.ui.IEditorPart;
 
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.Referenceable;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
@@ -36,6 +38,14 @@ public class FindSubtypesAction extends AbstractFindAction {
             return Collections.<Node>unmodifiableSet(nodes);
         }
 
+        @Override
+        boolean mayContainMatches(PhasedUnit pu,
+                Referenceable referencedDeclaration) {
+            //indirect subtypes don't mention the supertype
+            return mayDeclareSubtypeOf(pu, 
+                    (TypeDeclaration) referencedDeclaration);
+        }
+
         @Override
         int limitTo() {
             return IJavaSearchConstants.IMPLEMENTORS;
@@ -9,6 +9,9 @@ import static com.redhat.ceylon.eclipse.ui.CeylonResources.CEYLON_REFS;
 import static com.redhat.ceylon.eclipse.ui.CeylonResources.FLAT_MODE;
 import static com.redhat.ceylon.eclipse.ui.CeylonResources.TREE_MODE;
 import static com.redhat.ceylon.eclipse.util.Nodes.getReferencedExplicitDeclaration;
+import static com.redhat.ceylon.eclipse.util.ReferenceIndex.getIndexedName;
+import static com.redhat.ceylon.eclipse.util.ReferenceIndex.mayReferTo;
+import static com.redhat.ceylon.eclipse.util.SubtypeIndex.mayDeclareSubtypeOf;
 import static java.util.Collections.emptySet;
 import static org.eclipse.jface.action.IAction.AS_CHECK_BOX;
 
@@ -769,6 +772,21 @@ public final class ReferencesPopup extends PopupDialog
         Map<Module,TreeNode> moduleNodes = new HashMap<Module,TreeNode>();
         List<TreeNode> allMatchesList = new ArrayList<TreeNode>();
         List<TreeNode> allUnitsList = new ArrayList<TreeNode>();
+        //indirect subtypes don't mention the supertype
+        String indexedName = showingRefinements && type ? 
+                null : getIndexedName(declaration);
+        //only the subtypes of a type can refine its members
+        TypeDeclaration subtypesOf = null;
+        if (showingRefinements && declaration instanceof Declaration) {
+            if (type) {
+                subtypesOf = (TypeDeclaration) declaration;
+            }
+            else if (((Declaration) declaration).getContainer() 
+                    instanceof TypeDeclaration) {
+                subtypesOf = (TypeDeclaration) 
+                        ((Declaration) declaration).getContainer();
+            }
+        }
         for (PhasedUnit pu: pc.getTypeChecker()
                 .getPhasedUnits()
                 .getPhasedUnits()) {
@@ -778,6 +796,12 @@ public final class ReferencesPopup extends PopupDialog
                 //search in the current dirty editor
                 cu = pc.getRootNode();
             }
+            else if (!mayReferTo(pu, indexedName) ||
+                    subtypesOf!=null && 
+                        !mayDeclareSubtypeOf(pu, subtypesOf)) {
+                //can't contain a match
+                continue;
+            }
             Unit u = cu.getUnit();
             TreeNode unitNode = new TreeNode(u);
             List<TreeNode> unitList = new ArrayList<TreeNode>();
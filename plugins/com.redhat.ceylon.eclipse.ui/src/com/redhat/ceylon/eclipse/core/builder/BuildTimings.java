@@ -0,0 +1,255 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.util.JsonLinesLog.appendString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderCacheStatistics;
+
+/**
+ * The measures of one build of a project, recorded by the
+ * {@link BuildTimingsHook}: the wall time of each phase of
+ * the build, the time spent typechecking each unit, the
+ * number of files involved, and the lookups of the model
+ * loader.
+ *
+ * A phase can occur several times during a build, in which
+ * case its durations are added.
+ */
+public class BuildTimings {
+
+    /**
+     * The time spent typechecking one unit.
+     */
+    public static final class UnitTiming {
+        private final String path;
+        private final long duration;
+
+        UnitTiming(String path, long duration) {
+            this.path = path;
+            this.duration = duration;
+        }
+
+        /**
+         * The path of the unit, relative to its source
+         * folder.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The time spent in the typechecking phases of the
+         * unit, in nanoseconds.
+         */
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    private final String projectName;
+    private final long startTime;
+    private final long startNanos;
+    private long duration = -1;
+    private boolean fullBuild;
+    private String currentPhase;
+    private long currentPhaseStart;
+    private final Map<String, Long> phaseDurations =
+            new LinkedHashMap<String, Long>();
+    private final ConcurrentHashMap<String, AtomicLong> unitDurations =
+            new ConcurrentHashMap<String, AtomicLong>();
+    private final Map<String, Integer> fileCounts =
+            new LinkedHashMap<String, Integer>();
+    private ModelLoaderCacheStatistics cacheStatistics;
+
+    BuildTimings(String projectName) {
+        this.projectName = projectName;
+        startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    synchronized void startPhase(String phase) {
+        long now = System.nanoTime();
+        endCurrentPhase(now);
+        currentPhase = phase;
+        currentPhaseStart = now;
+    }
+
+    synchronized void end(ModelLoaderCacheStatistics cacheStatistics) {
+        long now = System.nanoTime();
+        endCurrentPhase(now);
+        currentPhase = null;
+        duration = (now - startNanos) / 1000000;
+        this.cacheStatistics = cacheStatistics;
+    }
+
+    private void endCurrentPhase(long now) {
+        if (currentPhase != null) {
+            Long previous = phaseDurations.get(currentPhase);
+            long phaseDuration = now - currentPhaseStart;
+            phaseDurations.put(currentPhase,
+                    previous == null ? phaseDuration : previous + phaseDuration);
+        }
+    }
+
+    synchronized void setFullBuild() {
+        fullBuild = true;
+    }
+
+    synchronized void setFileCount(String kind, int count) {
+        fileCounts.put(kind, count);
+    }
+
+    /**
+     * Adds the given time to the time spent typechecking a
+     * unit. May be called concurrently by the threads of a
+     * parallel typecheck.
+     */
+    void addUnitDuration(String path, long duration) {
+        AtomicLong total = unitDurations.get(path);
+        if (total == null) {
+            AtomicLong newTotal = new AtomicLong();
+            total = unitDurations.putIfAbsent(path, newTotal);
+            if (total == null) {
+                total = newTotal;
+            }
+        }
+        total.addAndGet(duration);
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * The time the build started, in milliseconds since the
+     * epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * The wall time of the build, in milliseconds, or -1 if
+     * it is not finished.
+     */
+    public synchronized long getDuration() {
+        return duration;
+    }
+
+    public synchronized boolean isFullBuild() {
+        return fullBuild;
+    }
+
+    /**
+     * The wall time of each phase, in milliseconds, in the
+     * order the phases started.
+     */
+    public synchronized Map<String, Long> getPhaseDurations() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry: phaseDurations.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() / 1000000);
+        }
+        return result;
+    }
+
+    /**
+     * The number of files of each kind: changed, removed,
+     * typechecked...
+     */
+    public synchronized Map<String, Integer> getFileCounts() {
+        return new LinkedHashMap<String, Integer>(fileCounts);
+    }
+
+    /**
+     * The lookups of the model loader during the build, or
+     * null if there was no model loader.
+     */
+    public synchronized ModelLoaderCacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    public int getNumberOfTypecheckedUnits() {
+        return unitDurations.size();
+    }
+
+    /**
+     * The typechecked units, the slowest first.
+     */
+    public List<UnitTiming> getSlowestUnits(int max) {
+        List<UnitTiming> result = new ArrayList<UnitTiming>(unitDurations.size());
+        for (Map.Entry<String, AtomicLong> entry: unitDurations.entrySet()) {
+            result.add(new UnitTiming(entry.getKey(), entry.getValue().get()));
+        }
+        Collections.sort(result, new Comparator<UnitTiming>() {
+            @Override
+            public int compare(UnitTiming x, UnitTiming y) {
+                return Long.compare(y.getDuration(), x.getDuration());
+            }
+        });
+        return result.size() > max ?
+                new ArrayList<UnitTiming>(result.subList(0, max)) : result;
+    }
+
+    /**
+     * A JSON object describing the build, on a single line,
+     * with the given number of slowest units. The durations
+     * of the build and of its phases are in milliseconds,
+     * the durations of the units in microseconds.
+     */
+    public String toJson(int maxUnits) {
+        StringBuilder json = new StringBuilder("{");
+        appendString(json.append("\"project\":"), projectName);
+        json.append(",\"start\":").append(startTime)
+            .append(",\"duration\":").append(getDuration())
+            .append(",\"full\":").append(isFullBuild());
+        json.append(",\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry: getPhaseDurations().entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+        }
+        json.append("},\"files\":{");
+        first = true;
+        for (Map.Entry<String, Integer> entry: getFileCounts().entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+        }
+        json.append('}');
+        ModelLoaderCacheStatistics statistics = getCacheStatistics();
+        if (statistics != null) {
+            json.append(",\"modelLoader\":{\"newClassMirrorLookups\":")
+                .append(statistics.getNewClassMirrorLookups())
+                .append(",\"sourceDeclarationHits\":")
+                .append(statistics.getSourceDeclarationHits())
+                .append(",\"missingClassMirrorHits\":")
+                .append(statistics.getMissingClassMirrorHits())
+                .append(",\"javaModelSearches\":")
+                .append(statistics.getJavaModelSearches())
+                .append('}');
+        }
+        json.append(",\"typecheckedUnits\":").append(getNumberOfTypecheckedUnits());
+        json.append(",\"slowestUnits\":[");
+        first = true;
+        for (UnitTiming unit: getSlowestUnits(maxUnits)) {
+            if (!first) json.append(',');
+            first = false;
+            appendString(json.append("{\"path\":"), unit.getPath());
+            json.append(",\"micros\":")
+                .append(unit.getDuration() / 1000)
+                .append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.resources.IBuildConfiguration;
+import org.eclipse.core.resources.IBuildContext;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.IClasspathContainer;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.CeylonBuildHook;
+import com.redhat.ceylon.eclipse.core.model.JDTModelLoader;
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderCacheStatistics;
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+import com.redhat.ceylon.eclipse.util.JsonLinesLog;
+
+/**
+ * The build hook that measures every build: it records the
+ * {@link BuildTimings} of the builds in a ring buffer of
+ * the most recent ones, notifies the listeners, and appends
+ * them, one JSON object per line, to a log file per project
+ * in the state location of the plugin.
+ *
+ * The phases of a build are delimited by the callbacks of
+ * the builder: each phase lasts until the next callback.
+ */
+public class BuildTimingsHook extends CeylonBuildHook {
+
+    public interface Listener {
+        void buildRecorded(BuildTimings timings);
+    }
+
+    private static final int HISTORY_SIZE = 50;
+    private static final int LOGGED_UNITS = 20;
+
+    private static final BuildTimingsHook instance = new BuildTimingsHook();
+
+    public static BuildTimingsHook getInstance() {
+        return instance;
+    }
+
+    private final LinkedList<BuildTimings> history =
+            new LinkedList<BuildTimings>();
+    private final List<Listener> listeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    private volatile BuildTimings current;
+    private IProject currentProject;
+    private JDTModelLoader modelLoader;
+    private ModelLoaderCacheStatistics cacheStatisticsAtStart;
+
+    private BuildTimingsHook() {}
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The recorded builds, the most recent first.
+     */
+    public List<BuildTimings> getRecentBuilds() {
+        synchronized (history) {
+            return new ArrayList<BuildTimings>(history);
+        }
+    }
+
+    public static File getLogFile(IProject project) {
+        return CeylonPlugin.getInstance().getStateLocation()
+                .append("buildTimings")
+                .append(project.getName() + ".json")
+                .toFile();
+    }
+
+    @Override
+    protected void startBuild(int kind, @SuppressWarnings("rawtypes") Map args,
+            IProject project, IBuildConfiguration config,
+            IBuildContext context, IProgressMonitor monitor) {
+        currentProject = project;
+        modelLoader = CeylonBuilder.getProjectModelLoader(project);
+        cacheStatisticsAtStart = modelLoader == null ? null :
+            modelLoader.getCacheStatistics().snapshot();
+        current = new BuildTimings(project.getName());
+        startPhase("analyzing deltas");
+    }
+
+    private void startPhase(String phase) {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.startPhase(phase);
+        }
+    }
+
+    @Override
+    protected void resolvingClasspathContainer(
+            List<IClasspathContainer> cpContainers) {
+        startPhase("resolving classpath");
+    }
+
+    @Override
+    protected void doFullBuild() {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.setFullBuild();
+        }
+        startPhase("cleaning");
+    }
+
+    @Override
+    protected void parseCeylonModel() {
+        startPhase("parsing");
+    }
+
+    @Override
+    protected void doIncrementalBuild() {
+        startPhase("scanning changes");
+    }
+
+    @Override
+    protected void fullTypeCheckDuringIncrementalBuild() {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.setFullBuild();
+        }
+        startPhase("cleaning");
+    }
+
+    @Override
+    protected void typeCheckingSources() {
+        startPhase("typechecking");
+    }
+
+    @Override
+    protected void unitTypeChecked(PhasedUnit unit, long duration) {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.addUnitDuration(unit.getPathRelativeToSrcDir(), duration);
+        }
+    }
+
+    @Override
+    protected void collectingProblems() {
+        startPhase("collecting problems and dependencies");
+    }
+
+    @Override
+    protected void incrementalBuildSources(Set<IFile> changedSources,
+            List<IFile> filesToRemove, Collection<IFile> sourcesToCompile) {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.setFileCount("changed", changedSources.size());
+            timings.setFileCount("removed", filesToRemove.size());
+            timings.setFileCount("to typecheck", sourcesToCompile.size());
+        }
+        startPhase("clearing markers");
+    }
+
+    @Override
+    protected void incrementalBuildResult(List<PhasedUnit> builtPhasedUnits) {
+        BuildTimings timings = current;
+        if (timings != null) {
+            timings.setFileCount("typechecked", builtPhasedUnits.size());
+        }
+        startPhase("updating indexes");
+    }
+
+    @Override
+    protected void beforeGeneratingBinaries() {
+        startPhase("generating binaries");
+    }
+
+    @Override
+    protected void afterGeneratingBinaries() {
+        startPhase("saving state");
+    }
+
+    @Override
+    protected void endBuild() {
+        BuildTimings timings = current;
+        if (timings == null) {
+            return;
+        }
+        current = null;
+        JDTModelLoader loader = CeylonBuilder.getProjectModelLoader(currentProject);
+        ModelLoaderCacheStatistics cacheStatistics = null;
+        if (loader != null) {
+            //the model loader is recreated by a full build
+            cacheStatistics = loader.getCacheStatistics()
+                    .since(loader == modelLoader ? cacheStatisticsAtStart : null);
+        }
+        timings.end(cacheStatistics);
+        IProject project = currentProject;
+        currentProject = null;
+        modelLoader = null;
+        cacheStatisticsAtStart = null;
+
+        synchronized (history) {
+            history.addFirst(timings);
+            if (history.size() > HISTORY_SIZE) {
+                history.removeLast();
+            }
+        }
+        JsonLinesLog.append(getLogFile(project), 
+                timings.toJson(LOGGED_UNITS));
+        for (Listener listener: listeners) {
+            listener.buildRecorded(timings);
+        }
+    }
+}
@@ -17,6 +17,7 @@ import static org.eclipse.core.runtime.SubProgressMonitor.PREPEND_MAIN_LABEL_TO_
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -35,6 +36,14 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.tools.DiagnosticListener;
 import javax.tools.FileObject;
@@ -132,10 +141,10 @@ import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
-import com.redhat.ceylon.compiler.typechecker.context.TypecheckerUnit;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
 import com.redhat.ceylon.compiler.typechecker.tree.Message;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
 import com.redhat.ceylon.compiler.typechecker.tree.UnexpectedError;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
@@ -156,6 +165,7 @@ import com.redhat.ceylon.eclipse.core.model.JDTModuleSourceMapper;
 import com.redhat.ceylon.eclipse.core.model.JavaCompilationUnit;
 import com.redhat.ceylon.eclipse.core.model.JavaUnit;
 import com.redhat.ceylon.eclipse.core.model.ModuleDependencies;
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderLockStatistics;
 import com.redhat.ceylon.eclipse.core.model.ProjectSourceFile;
 import com.redhat.ceylon.eclipse.core.model.SourceFile;
 import com.redhat.ceylon.eclipse.core.model.mirror.JDTClass;
@@ -170,7 +180,10 @@ import com.redhat.ceylon.eclipse.ui.CeylonResources;
 import com.redhat.ceylon.eclipse.ui.ceylon.model.delta.CompilationUnitDelta;
 import com.redhat.ceylon.eclipse.util.CarUtils;
 import com.redhat.ceylon.eclipse.util.CeylonSourceParser;
+import com.redhat.ceylon.eclipse.util.DeclarationNameIndex;
 import com.redhat.ceylon.eclipse.util.EclipseLogger;
+import com.redhat.ceylon.eclipse.util.ReferenceIndex;
+import com.redhat.ceylon.eclipse.util.SubtypeIndex;
 import com.redhat.ceylon.model.cmr.ArtifactResult;
 import com.redhat.ceylon.model.loader.AbstractModelLoader;
 import com.redhat.ceylon.model.loader.mirror.ClassMirror;
@@ -265,17 +278,37 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
     }
     
+    /*
+     * Runs the given action with the produced type cache 
+     * enabled, while holding the lock of the Ceylon model
+     * of the project.
+     */
+    private static <T> T doWithCeylonModelLock(IProject project, 
+            final Callable<T> action) throws CoreException {
+        Lock lock = getModelLock(project);
+        lock.lock();
+        try {
+            return doWithCeylonModelCaching(action);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
     private static final class BuildFileManager extends CeyloncFileManager {
         private final IProject project;
         final boolean explodeModules;
         private Map<RegularFileObject, Set<String>> inputFilesToGenerate = null;
+        private final Set<File> staleExplodedClassFiles;
         
         private BuildFileManager(com.sun.tools.javac.util.Context context,
-                boolean register, Charset charset, IProject project, Map<RegularFileObject, Set<String>> inputFilesToGenerate) {
+                boolean register, Charset charset, IProject project, Map<RegularFileObject, Set<String>> inputFilesToGenerate,
+                Set<File> staleExplodedClassFiles) {
             super(context, register, charset);
             this.project = project;
             explodeModules = isExplodeModulesEnabled(project);
             this.inputFilesToGenerate = inputFilesToGenerate;
+            this.staleExplodedClassFiles = staleExplodedClassFiles;
         }
 
         public static RegularFileObject getSourceFile(FileObject fileObject) {
@@ -316,6 +349,9 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                     sibling instanceof CeylonFileObject) {
                 final File ceylonOutputDirectory = getCeylonClassesOutputDirectory(project);
                 final File classFile = fileName.getFile(ceylonOutputDirectory);
+                synchronized (staleExplodedClassFiles) {
+                    staleExplodedClassFiles.remove(classFile);
+                }
                 classFile.getParentFile().mkdirs();
                 return new ExplodingJavaFileObject(classFile, fileName,
                         javaFileObject);
@@ -383,6 +419,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                         IMarker marker = file.createMarker(markerId);
                         marker.setAttribute(IMarker.MESSAGE, message);
                         marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+                        IncrementalBuildIndex.get(project)
+                                .backendMarkerCreated(file, IMarker.SEVERITY_INFO);
                     }
                     catch (CoreException ce) {
                         ce.printStackTrace();
@@ -408,6 +446,35 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
     private final static Map<IProject, RepositoryManager> projectRepositoryManagers = new HashMap<IProject, RepositoryManager>();
     private final static Map<IProject, ModuleDependencies> projectModuleDependencies = new HashMap<IProject, ModuleDependencies>();
     private final static Set<ICeylonModelListener> modelListeners = new LinkedHashSet<ICeylonModelListener>();
+    private final static Map<IProject, Lock> modelLocks = new HashMap<IProject, Lock>();
+
+    /**
+     * Returns the lock that guards the Ceylon model of the
+     * given project. The builder holds it while it mutates 
+     * the model (parsing, typechecking, removing units) and
+     * while it generates the binaries, and the editors hold
+     * it while they typecheck their working copies, since 
+     * the typechecker infers types and loads declarations 
+     * lazily into the shared model. So the editor typechecks
+     * of a project are serialized with each other and with
+     * the builder.
+     * <p>
+     * The lock is always acquired after the scheduling rule
+     * of the project, so that a thread holding it never 
+     * waits for a rule held by a thread waiting for it. The
+     * lock of a project is never dropped, even when the 
+     * project is closed, since it may still be held.
+     */
+    public static Lock getModelLock(IProject project) {
+        synchronized (modelLocks) {
+            Lock lock = modelLocks.get(project);
+            if (lock == null) {
+                lock = new ReentrantLock();
+                modelLocks.put(project, lock);
+            }
+            return lock;
+        }
+    }
 
     public static void addModelListener(ICeylonModelListener listener) {
         modelListeners.add(listener);
@@ -572,7 +639,15 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         protected void incrementalBuildChangedSources(Set<IFile> changedSources) {}
         protected void incrementalBuildSources(Set<IFile> changedSources,
                 List<IFile> filesToRemove, Collection<IFile> sourcesToCompile) {}
+        protected void typeCheckingSources() {}
+        /**
+         * Called after each typechecking phase of a unit, with
+         * the time it took in nanoseconds. May be called by the
+         * threads of a parallel typecheck.
+         */
+        protected void unitTypeChecked(PhasedUnit unit, long duration) {}
         protected void incrementalBuildResult(List<PhasedUnit> builtPhasedUnits) {}
+        protected void collectingProblems() {}
         protected void beforeGeneratingBinaries() {}
         protected void afterGeneratingBinaries() {}
         protected void scheduleReentrantBuild() {}
@@ -596,6 +671,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
 
         private synchronized void resetContributedHooks() {
             contributedHooks.clear();
+            contributedHooks.add(BuildTimingsHook.getInstance());
             for (IConfigurationElement confElement : Platform.getExtensionRegistry().getConfigurationElementsFor(CeylonPlugin.PLUGIN_ID + ".ceylonBuildHook")) {
                 try {
                     Object extension = confElement.createExecutableExtension("class");
@@ -667,11 +743,26 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 hook.incrementalBuildSources(changedSources, filesToRemove, sourcesToCompile);
             }
         }
+        protected void typeCheckingSources() {
+            for (CeylonBuildHook hook : contributedHooks) {
+                hook.typeCheckingSources();
+            }
+        }
+        protected void unitTypeChecked(PhasedUnit unit, long duration) {
+            for (CeylonBuildHook hook : contributedHooks) {
+                hook.unitTypeChecked(unit, duration);
+            }
+        }
         protected void incrementalBuildResult(List<PhasedUnit> builtPhasedUnits) {
             for (CeylonBuildHook hook : contributedHooks) {
                 hook.incrementalBuildResult(builtPhasedUnits);
             }
         }
+        protected void collectingProblems() {
+            for (CeylonBuildHook hook : contributedHooks) {
+                hook.collectingProblems();
+            }
+        }
         protected void beforeGeneratingBinaries() {
             for (CeylonBuildHook hook : contributedHooks) {
                 hook.beforeGeneratingBinaries();
@@ -684,7 +775,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
         protected void scheduleReentrantBuild() {
             for (CeylonBuildHook hook : contributedHooks) {
-                hook.beforeGeneratingBinaries();
+                hook.scheduleReentrantBuild();
             }
         }
         protected void afterReentrantBuild() {
@@ -819,6 +910,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             }
             
             if (mustResolveClasspathContainer.value) {
+                JavaBackendSession.get(project).reset();
                 if (cpContainers != null) {
                     buildHook.resolvingClasspathContainer(cpContainers);
                     for (IClasspathContainer container: cpContainers) {
@@ -881,15 +973,21 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 }
 
                 monitor.subTask("Typechecking all source  files of project " + project.getName());
+                buildHook.typeCheckingSources();
                 modelStates.put(project, ModelState.TypeChecking);
-                builtPhasedUnits = doWithCeylonModelCaching(new Callable<List<PhasedUnit>>() {
+                builtPhasedUnits = doWithCeylonModelLock(project, new Callable<List<PhasedUnit>>() {
                     @Override
                     public List<PhasedUnit> call() throws Exception {
                         return fullTypeCheck(project, typeChecker, 
+                                Collections.<PhasedUnit>emptySet(),
                                 monitor.newChild(30, PREPEND_MAIN_LABEL_TO_SUBTASK ));
                     }
                 });
                 modelStates.put(project, ModelState.TypeChecked);
+                TypeCheckStateCache.get(project).clear();
+                TypeCheckStateCache.get(project).update(builtPhasedUnits);
+                IncrementalBuildIndex.get(project).clearTypecheckerProblems();
+                IncrementalBuildIndex.get(project).unitsTypechecked(builtPhasedUnits);
                 
                 filesForBinaryGeneration = getProjectFiles(project);
                 
@@ -915,7 +1013,14 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 }
                     
                 monitor.subTask("Cleaning removed files for project " + project.getName());
-                cleanRemovedFilesFromCeylonModel(filesToRemove, phasedUnits, project);
+                Lock modelLock = getModelLock(project);
+                modelLock.lock();
+                try {
+                    cleanRemovedFilesFromCeylonModel(filesToRemove, phasedUnits, project);
+                }
+                finally {
+                    modelLock.unlock();
+                }
                 cleanRemovedFilesFromOutputs(filesToRemove, project);
                 monitor.worked(1);
                 
@@ -929,26 +1034,61 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                         throw new OperationCanceledException();
                     }
 
+                    //the bodies of the files that didn't change since
+                    //they were typechecked in a previous session are
+                    //typechecked later: their markers are still valid
+                    final Set<PhasedUnit> deferredUnits = 
+                            new HashSet<PhasedUnit>(TypeCheckStateCache.get(project)
+                                    .findUpToDateUnits(typeChecker, phasedUnits.getPhasedUnits()));
+                    //the other units may refer to the toplevel 
+                    //declarations whose types are inferred, which 
+                    //are only known once their unit is analysed
+                    for (Iterator<PhasedUnit> it = deferredUnits.iterator(); it.hasNext();) {
+                        if (hasInferredToplevelTypes(it.next())) {
+                            it.remove();
+                        }
+                    }
+                    
                     monitor.subTask("Clearing existing markers of project (except backend errors)" + project.getName());
                     clearProjectMarkers(project, true, false);
-                    clearMarkersOn(project, false);
+                    if (deferredUnits.isEmpty()) {
+                        clearMarkersOn(project, false);
+                    }
+                    else {
+                        Set<IFile> filesToClear = new HashSet<IFile>(getProjectFiles(project));
+                        for (PhasedUnit deferredUnit: deferredUnits) {
+                            filesToClear.remove(getFile(deferredUnit));
+                        }
+                        clearMarkersOn(filesToClear, false);
+                    }
                     monitor.worked(1);
 
                     monitor.subTask("Initial typechecking all source files of project " + project.getName());
+                    buildHook.typeCheckingSources();
                     modelStates.put(project, ModelState.TypeChecking);
-                    builtPhasedUnits = doWithCeylonModelCaching(new Callable<List<PhasedUnit>>() {
+                    builtPhasedUnits = doWithCeylonModelLock(project, new Callable<List<PhasedUnit>>() {
                         @Override
                         public List<PhasedUnit> call() throws Exception {
-                            return fullTypeCheck(project, typeChecker, 
+                            return fullTypeCheck(project, typeChecker, deferredUnits,
                                     monitor.newChild(22, PREPEND_MAIN_LABEL_TO_SUBTASK ));
                         }
                     });
                     modelStates.put(project, ModelState.TypeChecked);
+                    TypeCheckStateCache.get(project).update(builtPhasedUnits);
+                    //the deferred units are indexed once their 
+                    //unresolved references are known, when their
+                    //bodies have been typechecked
+                    IncrementalBuildIndex.get(project).clearTypecheckerProblems();
+                    IncrementalBuildIndex.get(project).unitsTypechecked(builtPhasedUnits);
+                    if (!deferredUnits.isEmpty()) {
+                        scheduleDeferredTypeCheck(project, deferredUnits);
+                    }
 
                     if (monitor.isCanceled()) {
                         throw new OperationCanceledException();
                     }
                     
+                    buildHook.collectingProblems();
                     monitor.subTask("Collecting dependencies of project " + project.getName());
 //                  getConsoleStream().println(timedMessage("Collecting dependencies"));
                     collectDependencies(project, typeChecker, builtPhasedUnits);
@@ -985,7 +1125,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
 
                 monitor.subTask("Compiling " + filesToTypecheck.size() + " source files in project " + 
                         project.getName());
-                builtPhasedUnits = doWithCeylonModelCaching(new Callable<List<PhasedUnit>>() {
+                buildHook.typeCheckingSources();
+                builtPhasedUnits = doWithCeylonModelLock(project, new Callable<List<PhasedUnit>>() {
                     @Override
                     public List<PhasedUnit> call() throws Exception {
                         return incrementalBuild(project, filesToTypecheck, 
@@ -1007,11 +1148,14 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 }
 
                 buildHook.incrementalBuildResult(builtPhasedUnits);
+                TypeCheckStateCache.get(project).update(builtPhasedUnits);
+                IncrementalBuildIndex.get(project).unitsTypechecked(builtPhasedUnits);
 
                 filesForBinaryGeneration = filesToCompile;
             
             }
             
+            buildHook.collectingProblems();
             clearProjectMarkers(project, false, true);
 
             monitor.setWorkRemaining(50);
@@ -1039,21 +1183,32 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             
             final Collection<IFile> filesToProcess = filesForBinaryGeneration;
             final Collection<PhasedUnit> unitsTypecheckedIncrementally = mustDoFullBuild.value ? Collections.<PhasedUnit>emptyList() : builtPhasedUnits;
-            cleanChangedFilesFromExplodedDirectory(filesToProcess, project);
-            doWithCeylonModelCaching(new Callable<Boolean>() {
-                @Override
-                public Boolean call() throws CoreException {
-                    return generateBinaries(project, javaProject, unitsTypecheckedIncrementally,
-                            filesToProcess, typeChecker, 
-                            monitor.newChild(45, PREPEND_MAIN_LABEL_TO_SUBTASK));
-                }
-            });
+            final Set<File> staleExplodedClassFiles = 
+                    collectExplodedClassFiles(filesToProcess, project);
+            try {
+                //the backends transform the typechecked trees
+                //and run the model loader, so the editors must
+                //not typecheck in the meantime
+                doWithCeylonModelLock(project, new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws CoreException {
+                        return generateBinaries(project, javaProject, unitsTypecheckedIncrementally,
+                                filesToProcess, staleExplodedClassFiles, typeChecker, 
+                                monitor.newChild(45, PREPEND_MAIN_LABEL_TO_SUBTASK));
+                    }
+                });
+            }
+            finally {
+                deleteStaleExplodedClassFiles(staleExplodedClassFiles);
+            }
             buildHook.afterGeneratingBinaries();
           
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
 
+            TypeCheckStateCache.get(project).save(typeChecker);
+
             if (isExplodeModulesEnabled(project)) {
                 monitor.subTask("Rebuilding using exploded modules directory of " + project.getName());
                 sheduleIncrementalRebuild(args, project, monitor);
@@ -1063,6 +1218,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 warmupCompletionProcessor(project);
             }
             
+            reportModelLoaderLockStatistics(project, typeChecker);
+            
             return project.getReferencedProjects();
         }
         finally {
@@ -1289,6 +1446,9 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             List<PhasedUnit> builtPhasedUnits) throws CoreException {
         for (PhasedUnit pu : builtPhasedUnits) {
             new UnitDependencyVisitor(pu).visit(pu.getCompilationUnit());
+            ReferenceIndex.index(pu);
+            SubtypeIndex.index(pu);
+            DeclarationNameIndex.index(project, pu);
         }
     }
 
@@ -1329,16 +1489,27 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         Set<IFile> filesToAddInCompile = new HashSet<IFile>();
 
         if (!changedFiles.isEmpty()) {
+            boolean astAwareIncrementalBuild = areAstAwareIncrementalBuildsEnabled(project);
+            Set<IFile> filesWithUnchangedSignatures = astAwareIncrementalBuild ?
+                    searchForFilesWithUnchangedSignatures(project, changedFiles, monitor) :
+                    Collections.<IFile>emptySet();
+            
             Set<IFile> allTransitivelyDependingFiles = searchForDependantFiles(
-                    project, changedFiles, typeChecker, monitor,
-                    false);
+                    project, changedFiles, filesWithUnchangedSignatures, 
+                    typeChecker, monitor, false);
+            
+            if (!filesWithUnchangedSignatures.isEmpty() && 
+                    getVerbose(project) != null) {
+                reportUnchangedSignatures(project, changedFiles, 
+                        filesWithUnchangedSignatures, allTransitivelyDependingFiles, 
+                        typeChecker, monitor);
+            }
 
             Set<IFile> dependingFilesAccordingToStructureDelta;
-            boolean astAwareIncrementalBuild = areAstAwareIncrementalBuildsEnabled(project);
             if (astAwareIncrementalBuild) {
                 dependingFilesAccordingToStructureDelta = searchForDependantFiles(
-                        project, changedFiles, typeChecker, monitor,
-                        true);
+                        project, changedFiles, filesWithUnchangedSignatures, 
+                        typeChecker, monitor, true);
             } else {
                 dependingFilesAccordingToStructureDelta = allTransitivelyDependingFiles;
             }
@@ -1347,35 +1518,10 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 throw new OperationCanceledException();
             }
             
-            for (PhasedUnit phasedUnit : phasedUnits.getPhasedUnits()) {
-                TypecheckerUnit unit = phasedUnit.getUnit();
-                if (!unit.getUnresolvedReferences().isEmpty()) {
-                    IFile fileToAdd = ((IFileVirtualFile)(phasedUnit.getUnitFile())).getFile();
-                    if (fileToAdd.exists()) {
-                        filesToAddInTypecheck.add(fileToAdd);
-                        filesToAddInCompile.add(fileToAdd);
-                    }
-                }
-                Set<Declaration> duplicateDeclarations = unit.getDuplicateDeclarations();
-                if (!duplicateDeclarations.isEmpty()) {
-                    IFile fileToAdd = ((IFileVirtualFile)(phasedUnit.getUnitFile())).getFile();
-                    if (fileToAdd.exists()) {
-                        filesToAddInTypecheck.add(fileToAdd);
-                        filesToAddInCompile.add(fileToAdd);
-                    }
-                    for (Declaration duplicateDeclaration : duplicateDeclarations) {
-                        Unit duplicateUnit = duplicateDeclaration.getUnit();
-                        if ((duplicateUnit instanceof SourceFile) && 
-                            (duplicateUnit instanceof IResourceAware)) {
-                            IFile duplicateDeclFile = ((IResourceAware) duplicateUnit).getFileResource();
-                            if (duplicateDeclFile != null && duplicateDeclFile.exists()) {
-                                filesToAddInTypecheck.add(duplicateDeclFile);
-                                filesToAddInCompile.add(duplicateDeclFile);
-                            }
-                        }
-                    }
-                }
-            }
+            Set<IFile> filesWithTypecheckerProblems = IncrementalBuildIndex.get(project)
+                    .getFilesToRebuildForTypecheckerProblems();
+            filesToAddInTypecheck.addAll(filesWithTypecheckerProblems);
+            filesToAddInCompile.addAll(filesWithTypecheckerProblems);
             
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
@@ -1412,111 +1558,144 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             }
         }
         
-        for (IFile file : getProjectFiles(project)) {
-            try {
-                boolean backendErrorOrMissingClassFile = false;
-                for (IMarker marker : file.findMarkers(PROBLEM_MARKER_ID + ".backend", false, IResource.DEPTH_ZERO)) {
-                    Object attribute = marker.getAttribute(IMarker.SEVERITY);
-                    if (attribute instanceof Integer) {
-                        switch (((Integer)attribute).intValue()) {
-                        case IMarker.SEVERITY_ERROR:
-                            // For backend errors
-                        case IMarker.SEVERITY_INFO:
-                            // For missing class files
-                            backendErrorOrMissingClassFile = true;
-                        }
-                        if (backendErrorOrMissingClassFile) {
-                            filesToAddInTypecheck.add(file);
-                            filesToAddInCompile.add(file);
-                            break;
-                        }
+        Set<IFile> filesWithBackendErrors = IncrementalBuildIndex.get(project)
+                .getFilesToRebuildForBackendErrors();
+        filesToAddInTypecheck.addAll(filesWithBackendErrors);
+        filesToAddInCompile.addAll(filesWithBackendErrors);
+
+        filesToTypeCheck.addAll(filesToAddInTypecheck);
+        filesToCompile.addAll(filesToAddInCompile);
+    }
+
+    /*
+     * Returns the changed source files of the project that
+     * have dependents, and whose new content doesn't change
+     * the signatures of the declarations visible to other
+     * units: their dependents don't need to be typechecked
+     * or compiled again.
+     */
+    private Set<IFile> searchForFilesWithUnchangedSignatures(IProject project,
+            Collection<IFile> changedFiles, IProgressMonitor monitor) {
+        Set<IFile> filesWithUnchangedSignatures = new HashSet<IFile>();
+        for (IFile changedFile: changedFiles) {
+            if (monitor.isCanceled()) {
+                throw new OperationCanceledException();
+            }
+            //the model of referenced projects is already
+            //updated when they are built
+            if (changedFile.getProject() == project && 
+                    changedFile.exists() && 
+                    isCeylon(changedFile) &&
+                    CeylonBuilder.isInSourceFolder(changedFile)) {
+                IResourceAware unit = getUnit(changedFile);
+                if (unit instanceof ProjectSourceFile) {
+                    ProjectSourceFile projectSourceFile = (ProjectSourceFile) unit;
+                    if (!projectSourceFile.getDependentsOf().isEmpty() &&
+                            projectSourceFile.hasSameDeclarationSignaturesAsModel()) {
+                        filesWithUnchangedSignatures.add(changedFile);
                     }
                 }
-            } catch (CoreException e) {
-                e.printStackTrace();
-                filesToAddInTypecheck.add(file);
-                filesToAddInCompile.add(file);
             }
         }
+        return filesWithUnchangedSignatures;
+    }
 
-        filesToTypeCheck.addAll(filesToAddInTypecheck);
-        filesToCompile.addAll(filesToAddInCompile);
+    private void reportUnchangedSignatures(IProject project, 
+            Collection<IFile> changedFiles, Set<IFile> filesWithUnchangedSignatures, 
+            Set<IFile> dependingFiles, TypeChecker typeChecker, 
+            IProgressMonitor monitor) {
+        MessageConsoleStream console = getConsoleStream();
+        for (IFile file: filesWithUnchangedSignatures) {
+            console.println("Declaration signatures of " + 
+                    file.getProjectRelativePath() + 
+                    " unchanged: skipping its " + 
+                    getDependentsOf(file, typeChecker, project).size() + 
+                    " direct dependents");
+        }
+        Set<IFile> allDependingFiles = searchForDependantFiles(
+                project, changedFiles, Collections.<IFile>emptySet(), 
+                typeChecker, monitor, false);
+        console.println("Declaration signature checks saved the typechecking of " + 
+                (allDependingFiles.size() - dependingFiles.size()) + 
+                " source files in project " + project.getName());
     }
 
     private Set<IFile> searchForDependantFiles(IProject project,
-            Collection<IFile> changedFiles, TypeChecker typeChecker,
+            Collection<IFile> changedFiles, Set<IFile> filesWithUnchangedSignatures, 
+            TypeChecker typeChecker,
             IProgressMonitor monitor, boolean filterAccordingToStructureDelta) {
-        Set<IFile> changeDependents= new HashSet<IFile>();
-        Set<IFile> analyzedFiles= new HashSet<IFile>();
-        changeDependents.addAll(changedFiles);
+        Set<IFile> changeDependents= new HashSet<IFile>(changedFiles);
+        //each file is analyzed once, when it is first reached
+        LinkedList<IFile> filesToAnalyze = new LinkedList<IFile>(changeDependents);
       
-        boolean changed = false;
-        do {
-            Collection<IFile> additions= new HashSet<IFile>();
-            for (Iterator<IFile> iter=changeDependents.iterator(); iter.hasNext();) {
-                final IFile srcFile= iter.next();
-                if (analyzedFiles.contains(srcFile)) {
-                    continue;
+        while (!filesToAnalyze.isEmpty()) {
+            final IFile srcFile= filesToAnalyze.removeFirst();
+            IProject currentFileProject = srcFile.getProject();
+            TypeChecker currentFileTypeChecker = null;
+            if (currentFileProject == project) {
+                currentFileTypeChecker = typeChecker;
+            } 
+            else {
+                currentFileTypeChecker = getProjectTypeChecker(currentFileProject);
+            }
+            
+            if (! CeylonBuilder.isInSourceFolder(srcFile)) {
+                // Don't search dependencies inside resource folders.
+                continue;
+            }
+            
+            if (filesWithUnchangedSignatures.contains(srcFile)) {
+                // The changes don't affect the dependents.
+                continue;
+            }
+            
+            if (filterAccordingToStructureDelta) {
+                IResourceAware unit = getUnit(srcFile);
+                if (unit instanceof ProjectSourceFile) {
+                    ProjectSourceFile projectSourceFile = (ProjectSourceFile) unit;
+                    if (projectSourceFile.getDependentsOf().size() > 0) {
+                        CompilationUnitDelta delta = projectSourceFile.buildDeltaAgainstModel();
+                        if (delta != null 
+                                && delta.getChanges().getSize() == 0
+                                && delta.getChildrenDeltas().getSize() == 0) {
+                                continue;
+                            }
+                    }
                 }
-                analyzedFiles.add(srcFile);
-                IProject currentFileProject = srcFile.getProject();
-                TypeChecker currentFileTypeChecker = null;
-                if (currentFileProject == project) {
-                    currentFileTypeChecker = typeChecker;
-                } 
-                else {
-                    currentFileTypeChecker = getProjectTypeChecker(currentFileProject);
+            }
+            
+            Set<String> filesDependingOn = getDependentsOf(srcFile,
+                    currentFileTypeChecker, currentFileProject);
+   
+            for (String dependingFile: filesDependingOn) {
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
                 }
                 
-                if (! CeylonBuilder.isInSourceFolder(srcFile)) {
-                    // Don't search dependencies inside resource folders.
-                    continue;
+                //TODO: note that the following is slightly
+                //      fragile - it depends on the format 
+                //      of the path that we use to track
+                //      dependents!
+                IPath pathRelativeToProject = new Path(dependingFile);
+                        //.makeRelativeTo(project.getLocation());
+                IFile depFile= (IFile) project.findMember(pathRelativeToProject);
+                if (depFile == null) {
+                    depFile= (IFile) currentFileProject.findMember(dependingFile);
                 }
-                
-                if (filterAccordingToStructureDelta) {
-                    IResourceAware unit = getUnit(srcFile);
-                    if (unit instanceof ProjectSourceFile) {
-                        ProjectSourceFile projectSourceFile = (ProjectSourceFile) unit;
-                        if (projectSourceFile.getDependentsOf().size() > 0) {
-                            CompilationUnitDelta delta = projectSourceFile.buildDeltaAgainstModel();
-                            if (delta != null 
-                                    && delta.getChanges().getSize() == 0
-                                    && delta.getChildrenDeltas().getSize() == 0) {
-                                    continue;
-                                }
-                        }
+                if (depFile != null) {
+                    //only the direct dependents are searched
+                    //when filtering according to the structure
+                    if (changeDependents.add(depFile) && 
+                            !filterAccordingToStructureDelta) {
+                        filesToAnalyze.add(depFile);
                     }
                 }
-                
-                Set<String> filesDependingOn = getDependentsOf(srcFile,
-                        currentFileTypeChecker, currentFileProject);
-   
-                for (String dependingFile: filesDependingOn) {
-                    if (monitor.isCanceled()) {
-                        throw new OperationCanceledException();
-                    }
-                    
-                    //TODO: note that the following is slightly
-                    //      fragile - it depends on the format 
-                    //      of the path that we use to track
-                    //      dependents!
-                    IPath pathRelativeToProject = new Path(dependingFile);
-                            //.makeRelativeTo(project.getLocation());
-                    IFile depFile= (IFile) project.findMember(pathRelativeToProject);
-                    if (depFile == null) {
-                        depFile= (IFile) currentFileProject.findMember(dependingFile);
-                    }
-                    if (depFile != null) {
-                        additions.add(depFile);
-                    }
-                    else {
-                        System.err.println("could not resolve dependent unit: " + 
-                                    dependingFile);
-                    }
+                else {
+                    System.err.println("could not resolve dependent unit: " + 
+                                dependingFile);
                 }
             }
-            changed = changeDependents.addAll(additions);
-        } while (changed && !filterAccordingToStructureDelta);
+        }
         return changeDependents;
     }
 
@@ -1877,10 +2056,12 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         for (PhasedUnit phasedUnit : phasedUnitsToUpdate) {
             if (! phasedUnit.isFullyTyped()) {
                 monitor.subTask("typechecking " + phasedUnit.getUnit().getFilename());
+                long start = System.nanoTime();
                 phasedUnit.analyseTypes();
                 if (showWarnings(project)) {
                     phasedUnit.analyseUsage();
                 }
+                buildHook.unitTypeChecked(phasedUnit, System.nanoTime() - start);
                 monitor.worked(3);
             }
             if (monitor.isCanceled()) {
@@ -1889,7 +2070,9 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
 
         for (PhasedUnit phasedUnit : phasedUnitsToUpdate) {
+            long start = System.nanoTime();
             phasedUnit.analyseFlow();
+            buildHook.unitTypeChecked(phasedUnit, System.nanoTime() - start);
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
@@ -1933,7 +2116,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
     }
 
     private List<PhasedUnit> fullTypeCheck(IProject project, 
-            TypeChecker typeChecker, IProgressMonitor mon) 
+            TypeChecker typeChecker, Set<PhasedUnit> deferredUnits, 
+            IProgressMonitor mon) 
                     throws CoreException {
 
         List<PhasedUnits> phasedUnitsOfDependencies = typeChecker.getPhasedUnitsOfDependencies();
@@ -2016,8 +2200,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             if (! pu.isTypeDeclarationsScanned()) {
                 monitor.subTask("scanning types " + pu.getUnit().getFilename());
                 pu.scanTypeDeclarations();
-                monitor.worked(2);
             }
+            monitor.worked(2);
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
@@ -2032,30 +2216,41 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             }
         }
 
+        final boolean showWarnings = showWarnings(project);
         for (PhasedUnit pu : listOfUnits) {
-            if (! pu.isFullyTyped()) {
+            if (! pu.isFullyTyped() && ! deferredUnits.contains(pu)) {
                 monitor.subTask("typechecking " + pu.getUnit().getFilename());
+                long start = System.nanoTime();
                 pu.analyseTypes();
-                if (showWarnings(project)) {
+                if (showWarnings) {
                     pu.analyseUsage();
                 }
-                monitor.worked(3);
+                buildHook.unitTypeChecked(pu, System.nanoTime() - start);
             }
+            monitor.worked(3);
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
         }
         
         for (PhasedUnit pu: listOfUnits) {
-            pu.analyseFlow();
+            if (! deferredUnits.contains(pu)) {
+                long start = System.nanoTime();
+                pu.analyseFlow();
+                buildHook.unitTypeChecked(pu, System.nanoTime() - start);
+            }
             if (monitor.isCanceled()) {
                 throw new OperationCanceledException();
             }
         }
 
+        List<PhasedUnit> typecheckedUnits = new ArrayList<PhasedUnit>(listOfUnits.size());
         UnknownTypeCollector utc = new UnknownTypeCollector();
         for (PhasedUnit pu : listOfUnits) { 
-            pu.getCompilationUnit().visit(utc);
+            if (! deferredUnits.contains(pu)) {
+                pu.getCompilationUnit().visit(utc);
+                typecheckedUnits.add(pu);
+            }
         }
 
         if (monitor.isCanceled()) {
@@ -2064,12 +2259,175 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         
         monitor.done();
         
-        return typeChecker.getPhasedUnits().getPhasedUnits();
+        return typecheckedUnits;
+    }
+
+    /*
+     * Does the given unit declare a toplevel whose type is
+     * inferred? The other units of its package may refer to
+     * it, and its type is only known once the unit has been
+     * analysed, so the analysis of such a unit can't be 
+     * deferred.
+     */
+    private static boolean hasInferredToplevelTypes(PhasedUnit pu) {
+        for (Tree.Declaration declaration: 
+                pu.getCompilationUnit().getDeclarations()) {
+            if (declaration instanceof Tree.TypedDeclaration &&
+                    ((Tree.TypedDeclaration) declaration).getType() 
+                            instanceof Tree.LocalModifier) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final static Map<IProject, Collection<PhasedUnit>> deferredTypeChecks = 
+            new HashMap<IProject, Collection<PhasedUnit>>();
+
+    /*
+     * The delay before resuming a canceled typecheck of the
+     * unchanged source files.
+     */
+    private static final long DEFERRED_TYPECHECK_RESCHEDULE_DELAY = 10000;
+
+    /*
+     * Schedules the typechecking of the bodies of the given
+     * units, that was skipped during the initial typecheck of
+     * the project since they didn't change since the previous
+     * session.
+     */
+    private static void scheduleDeferredTypeCheck(final IProject project, 
+            Collection<PhasedUnit> units) {
+        synchronized (deferredTypeChecks) {
+            deferredTypeChecks.put(project, units);
+        }
+        Job job = new Job("Typechecking unchanged source files of project " + project.getName()) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    if (typeCheckDeferredUnits(project, monitor)) {
+                        return Status.OK_STATUS;
+                    }
+                }
+                catch (CoreException e) {
+                    return e.getStatus();
+                }
+                catch (RuntimeException e) {
+                    return new Status(IStatus.ERROR, PLUGIN_ID, 
+                            "Typechecking the unchanged source files of project " + 
+                                    project.getName() + " failed", e);
+                }
+                //the remaining units are typechecked later
+                if (project.isOpen()) {
+                    schedule(DEFERRED_TYPECHECK_RESCHEDULE_DELAY);
+                }
+                return Status.CANCEL_STATUS;
+            }
+        };
+        job.setRule(project);
+        job.schedule();
+    }
+
+    /*
+     * Typechecks the bodies of the deferred units of the 
+     * project, and returns false if it was canceled, in 
+     * which case the units which were not typechecked are
+     * deferred again.
+     */
+    private static boolean typeCheckDeferredUnits(final IProject project, 
+            final IProgressMonitor monitor) throws CoreException {
+        final Collection<PhasedUnit> units;
+        synchronized (deferredTypeChecks) {
+            units = deferredTypeChecks.remove(project);
+        }
+        final TypeChecker typeChecker = getProjectTypeChecker(project);
+        if (units == null || typeChecker == null) {
+            return true;
+        }
+        final boolean showWarnings = showWarnings(project);
+        final List<PhasedUnit> remainingUnits = new ArrayList<PhasedUnit>();
+        List<PhasedUnit> typecheckedUnits = doWithCeylonModelLock(project, 
+                new Callable<List<PhasedUnit>>() {
+            @Override
+            public List<PhasedUnit> call() throws Exception {
+                PhasedUnits phasedUnits = typeChecker.getPhasedUnits();
+                List<PhasedUnit> typecheckedUnits = new ArrayList<PhasedUnit>(units.size());
+                monitor.beginTask("Typechecking " + units.size() + 
+                        " unchanged source files of project " + project.getName(), 
+                        units.size());
+                UnknownTypeCollector utc = new UnknownTypeCollector();
+                for (PhasedUnit pu: units) {
+                    //skip the units replaced by a later build
+                    if (phasedUnits.getPhasedUnit(pu.getUnitFile()) == pu) {
+                        if (monitor.isCanceled()) {
+                            remainingUnits.add(pu);
+                            continue;
+                        }
+                        if (! pu.isFullyTyped()) {
+                            pu.analyseTypes();
+                            if (showWarnings) {
+                                pu.analyseUsage();
+                            }
+                        }
+                        pu.analyseFlow();
+                        pu.getCompilationUnit().visit(utc);
+                        new UnitDependencyVisitor(pu).visit(pu.getCompilationUnit());
+                        ReferenceIndex.index(pu);
+                        SubtypeIndex.index(pu);
+                        typecheckedUnits.add(pu);
+                    }
+                    monitor.worked(1);
+                }
+                return typecheckedUnits;
+            }
+        });
+        if (!remainingUnits.isEmpty()) {
+            synchronized (deferredTypeChecks) {
+                //the units deferred by a later build, if any,
+                //are typechecked along with the remaining ones
+                Collection<PhasedUnit> deferredUnits = 
+                        deferredTypeChecks.get(project);
+                if (deferredUnits != null) {
+                    remainingUnits.addAll(deferredUnits);
+                }
+                deferredTypeChecks.put(project, 
+                        new LinkedHashSet<PhasedUnit>(remainingUnits));
+            }
+        }
+        List<IFile> files = new ArrayList<IFile>(typecheckedUnits.size());
+        for (PhasedUnit pu: typecheckedUnits) {
+            files.add(getFile(pu));
+        }
+        clearMarkersOn(files, false);
+        addProblemAndTaskMarkers(typecheckedUnits, project);
+        IncrementalBuildIndex.get(project).unitsTypechecked(typecheckedUnits);
+        TypeCheckStateCache.get(project).save(typeChecker);
+        monitor.done();
+        return remainingUnits.isEmpty();
+    }
+
+    /*
+     * Logs how many times each entry point of the model
+     * loader acquired its lock during the build, and how long
+     * it waited for it (in verbose mode only).
+     */
+    private static void reportModelLoaderLockStatistics(IProject project,
+            TypeChecker typeChecker) {
+        JDTModelLoader modelLoader = getModelLoader(typeChecker);
+        if (modelLoader == null) {
+            return;
+        }
+        ModelLoaderLockStatistics statistics = modelLoader.getLockStatistics();
+        if (getVerbose(project) != null) {
+            getConsoleStream().println("Model loader lock of project " + 
+                    project.getName() + " during the build:\n" + statistics);
+        }
+        statistics.reset();
     }
 
     public static TypeChecker parseCeylonModel(final IProject project,
             final IProgressMonitor mon) throws CoreException {
-        return doWithCeylonModelCaching(new Callable<TypeChecker>() {
+        return doWithCeylonModelLock(project, new Callable<TypeChecker>() {
             @Override
             public TypeChecker call() throws CoreException {
                 SubMonitor monitor = SubMonitor.convert(mon,
@@ -2389,7 +2747,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
 
     private boolean generateBinaries(IProject project, IJavaProject javaProject,
             Collection<PhasedUnit> unitsTypecheckedIncrementally,
-            Collection<IFile> filesToCompile, TypeChecker typeChecker, 
+            Collection<IFile> filesToCompile, Set<File> staleExplodedClassFiles, 
+            TypeChecker typeChecker, 
             IProgressMonitor monitor) throws CoreException {
         List<String> options = new ArrayList<String>();
         List<File> js_srcdir = new ArrayList<File>();
@@ -2532,20 +2891,54 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
 
         PrintWriter printWriter = new PrintWriter(verbose==null ? System.out : getConsoleStream(), true);
         boolean success = true;
-        //Compile JS first
-        if ((forJavascriptBackend.size() + javaScriptResources.size() > 0) && compileToJs(project)) {
+        boolean generateJs = (forJavascriptBackend.size() + javaScriptResources.size() > 0) && compileToJs(project);
+        boolean generateJava = (forJavaBackend.size() + javaResources.size() > 0) && compileToJava(project);
+        JsCompiler jsc = null;
+        Future<Boolean> jsResult = null;
+        StringWriter jsOutput = null;
+        if (generateJs && generateJava) {
+            // The JS backend runs on a worker thread while the Java 
+            // backend runs on the build thread (see startJsBackend()).
+            // Its output is printed, and its errors are reported as 
+            // markers, on the build thread once it is done.
+            jsOutput = new StringWriter();
+            PrintWriter jsPrintWriter = new PrintWriter(jsOutput, true);
+            jsc = createJsCompiler(project, typeChecker, js_srcdir, js_rsrcdir, js_repos, 
+                    js_verbose, js_outRepo, jsPrintWriter, true);
+            jsResult = startJsBackend(jsc, forJavascriptBackend, javaScriptResources, 
+                    jsPrintWriter);
+        }
+        else if (generateJs) {
             success = compileJs(project, typeChecker, js_srcdir, js_rsrcdir, js_repos,
                     js_verbose, js_outRepo, printWriter, true,
                     forJavascriptBackend, javaScriptResources);
         }
-        if ((forJavaBackend.size() + javaResources.size() > 0) && compileToJava(project)) {
+        if (generateJava) {
             // For Java don't stop compiling when encountering errors
             options.add("-continue");
             // always add the java files, otherwise ceylon code won't see them 
             // and they won't end up in the archives (src/car)
-            success = success & compile(project, javaProject, options,
-            		unitsTypecheckedIncrementally,
-                    forJavaBackend, javaResources, typeChecker, printWriter, monitor);
+            try {
+                success = success & compile(project, javaProject, options,
+                		unitsTypecheckedIncrementally, staleExplodedClassFiles,
+                        forJavaBackend, javaResources, typeChecker, printWriter, monitor);
+            }
+            finally {
+                if (jsResult != null) {
+                    boolean jsSuccess;
+                    try {
+                        jsSuccess = waitForJsBackend(jsResult);
+                    }
+                    finally {
+                        printWriter.print(jsOutput.toString());
+                        printWriter.flush();
+                    }
+                    if (!jsSuccess) {
+                        reportJsErrors(project, jsc);
+                    }
+                    success = success & jsSuccess;
+                }
+            }
         }
         
         if (! compileToJs(project) &&
@@ -2588,11 +2981,118 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         return success;
     }
 
+    private static ExecutorService jsBackendExecutor;
+    
+    private static synchronized ExecutorService getJsBackendExecutor() {
+        if (jsBackendExecutor == null) {
+            jsBackendExecutor = Executors.newCachedThreadPool(
+                    new ThreadFactory() {
+                        private final AtomicInteger threadCount = 
+                                new AtomicInteger();
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, 
+                                    "Ceylon JS backend " + 
+                                            threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return jsBackendExecutor;
+    }
+    
+    /*
+     * Runs the given JS compiler on a worker thread, at the 
+     * same time as the Java backend runs on the build thread.
+     * 
+     * The worker never touches the workspace: the compiler is
+     * created on the build thread, it writes its output to its
+     * own writer and to the output repository, and the errors
+     * it collects are only reported as markers by the build 
+     * thread, after the join (see reportJsErrors()), so it 
+     * never waits for the workspace lock held by the build.
+     * 
+     * Both backends can read the typechecked model at the same
+     * time because:
+     * - the produced type cache is only enabled on the build 
+     *   thread, so the worker doesn't write the shared caches 
+     *   of the model,
+     * - the lazy loading of the binary declarations, which the
+     *   two backends may trigger, is serialized by the lock of
+     *   the model loader, which the build thread never holds 
+     *   while it waits for the worker, and
+     * - the Java backend only sets Java specific flags (boxing,
+     *   erasure, captured type parameters) on the declarations
+     *   and on the trees, which the JS backend doesn't read, 
+     *   while the JS backend keeps its state in its own objects.
+     * The model lock of the project, held by the build thread,
+     * keeps the editors from typechecking in the meantime.
+     */
+    private static Future<Boolean> startJsBackend(final JsCompiler jsc, 
+            final List<File> sources, final List<File> resources,
+            final PrintWriter printWriter) {
+        return getJsBackendExecutor().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return generateJs(jsc, sources, resources, printWriter);
+            }
+        });
+    }
+    
+    private static boolean waitForJsBackend(Future<Boolean> jsResult) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return jsResult.get();
+                }
+                catch (InterruptedException e) {
+                    //the worker must be done before the markers
+                    //are created and the model lock is released
+                    interrupted = true;
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private boolean compileJs(IProject project, TypeChecker typeChecker,
             List<File> js_srcdir, List<File> js_rsrcdir, List<String> js_repos, 
             String js_verbose, String js_outRepo, PrintWriter printWriter, 
             boolean generateSourceArchive, List<File> sources, List<File> resources) 
                     throws CoreException {
+        JsCompiler jsc = createJsCompiler(project, typeChecker, js_srcdir, js_rsrcdir, 
+                js_repos, js_verbose, js_outRepo, printWriter, generateSourceArchive);
+        if (generateJs(jsc, sources, resources, printWriter)) {
+            return true;
+        }
+        else {
+            reportJsErrors(project, jsc);
+            return false;
+        }
+    }
+
+    private JsCompiler createJsCompiler(IProject project, TypeChecker typeChecker,
+            List<File> js_srcdir, List<File> js_rsrcdir, List<String> js_repos, 
+            String js_verbose, String js_outRepo, PrintWriter printWriter, 
+            boolean generateSourceArchive) throws CoreException {
         
         Options jsopts = new Options()
                 .outWriter(printWriter)
@@ -2606,7 +3106,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 .generateSourceArchive(generateSourceArchive)
                 .encoding(project.getDefaultCharset())
                 .offline(CeylonProjectConfig.get(project).isOffline());
-        JsCompiler jsc = new JsCompiler(typeChecker, jsopts) {
+        return new JsCompiler(typeChecker, jsopts) {
 
             @Override
             protected boolean nonCeylonUnit(Unit u) {
@@ -2637,30 +3137,19 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 }
             };
         }.stopOnErrors(false);
+    }
+
+    /*
+     * Generates the JS binaries, leaving the errors in the
+     * compiler. Doesn't touch the workspace.
+     */
+    private static boolean generateJs(JsCompiler jsc, 
+            List<File> sources, List<File> resources, 
+            PrintWriter printWriter) {
         try {
         	jsc.setSourceFiles(sources);
             jsc.setResourceFiles(resources);
-            if (!jsc.generate()) {
-                CompileErrorReporter errorReporter = null;
-                //Report backend errors
-                for (Message e : jsc.getErrors()) {
-                    if (e instanceof UnexpectedError) {
-                        if (errorReporter == null) {
-                            errorReporter = new CompileErrorReporter(project);
-                        }
-                        errorReporter.report(new CeylonCompilationError(project, (UnexpectedError)e));
-                    }
-                }
-                if (errorReporter != null) {
-                    //System.out.println("Ceylon-JS compiler failed for " + project.getName());
-                    errorReporter.failed();
-                }
-                return false;
-            }
-            else {
-                //System.out.println("compile ok to js");
-                return true;
-            }
+            return jsc.generate();
         }
         catch (IOException ex) {
             ex.printStackTrace(printWriter);
@@ -2668,10 +3157,30 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
     }
 
+    /*
+     * Reports the backend errors of the given JS compiler as
+     * markers.
+     */
+    private static void reportJsErrors(IProject project, JsCompiler jsc) {
+        CompileErrorReporter errorReporter = null;
+        //Report backend errors
+        for (Message e : jsc.getErrors()) {
+            if (e instanceof UnexpectedError) {
+                if (errorReporter == null) {
+                    errorReporter = new CompileErrorReporter(project);
+                }
+                errorReporter.report(new CeylonCompilationError(project, (UnexpectedError)e));
+            }
+        }
+        if (errorReporter != null) {
+            errorReporter.failed();
+        }
+    }
+
     @SuppressWarnings("deprecation")
     private boolean compile(final IProject project, IJavaProject javaProject, 
             List<String> options, Collection<PhasedUnit> unitsTypecheckedIncrementally,
-            List<File> sources, List<File> resources,
+            Set<File> staleExplodedClassFiles, List<File> sources, List<File> resources,
             final TypeChecker typeChecker, PrintWriter printWriter,
             IProgressMonitor mon) 
                     throws VerifyError {
@@ -2694,9 +3203,11 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
                 " source files in project " + project.getName(), 
                 numberOfSourceFiles * 2);
 
+        long startTime = System.currentTimeMillis();
+        JavaBackendSession session = JavaBackendSession.get(project);
         com.redhat.ceylon.compiler.java.tools.CeyloncTool compiler;
         try {
-            compiler = new com.redhat.ceylon.compiler.java.tools.CeyloncTool();
+            compiler = session.getCompiler();
         } catch (VerifyError e) {
             System.err.println("ERROR: Cannot run tests! Did you maybe forget to configure the -Xbootclasspath/p: parameter?");
             throw e;
@@ -2710,9 +3221,16 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         CeylonLog.preRegister(context);
         
         final Map<RegularFileObject, Set<String>> inputFilesToGenerate = new HashMap<RegularFileObject, Set<String>>();
-        BuildFileManager fileManager = new BuildFileManager(context, true, null, project, inputFilesToGenerate);
+        BuildFileManager fileManager = new BuildFileManager(context, true, null, project, 
+                inputFilesToGenerate, staleExplodedClassFiles);
         
-        computeCompilerClasspath(project, javaProject, options);
+        String classpath = session.getClasspath();
+        if (classpath == null) {
+            classpath = computeCompilerClasspath(project, javaProject);
+            session.setClasspath(classpath);
+        }
+        options.add("-classpath");
+        options.add(classpath);
         
         List<File> allFiles = new ArrayList<>(sources.size()+ resources.size());
         allFiles.addAll(sources);
@@ -2794,11 +3312,16 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
         fileManager.addUngeneratedErrors();
         monitor.done();
+        String message = session.compiled(project, numberOfSourceFiles, 
+                System.currentTimeMillis() - startTime);
+        if (getVerbose(project) != null) {
+            getConsoleStream().println(message);
+        }
         return success;
     }
 
-    private void computeCompilerClasspath(IProject project,
-            IJavaProject javaProject, List<String> options) {
+    private String computeCompilerClasspath(IProject project,
+            IJavaProject javaProject) {
         
         List<String> classpathElements = new ArrayList<String>();
 
@@ -2840,7 +3363,6 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             ce.printStackTrace();
         }
         
-        options.add("-classpath");
         // add the compiletime required jars (those used by the language module implicitely)
         classpathElements.addAll(CeylonPlugin.getCompiletimeRequiredJars());
         String classpath = "";
@@ -2850,7 +3372,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             }
             classpath += cpElement;
         }
-        options.add(classpath);
+        return classpath;
     }
 
     private void setupJDTModelLoader(final IProject project,
@@ -3040,6 +3562,8 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
             }
             if (alsoDeleteBackendErrors) {
                 resource.deleteMarkers(PROBLEM_MARKER_ID + ".backend", true, DEPTH_INFINITE);
+                IncrementalBuildIndex.get(resource.getProject())
+                        .backendMarkersDeleted(resource);
                 for (IMarker javaMarker : resource.findMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER, false, IResource.DEPTH_INFINITE)) {
                     if (CeylonPlugin.PLUGIN_ID.equals(javaMarker.getAttribute(IMarker.SOURCE_ID))) {
                         javaMarker.delete();
@@ -3231,7 +3755,7 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
     // TODO think: doRefresh(file.getParent()); // N.B.: Assumes all
     // generated files go into parent folder
 
-    private static List<IFile> getProjectFiles(IProject project) {
+    static List<IFile> getProjectFiles(IProject project) {
         return projectFiles.get(project);
 }
 
@@ -3499,6 +4023,13 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         CeylonProjectConfig.remove(project);
         JavaProjectStateMirror.cleanup(project);
         projectModuleDependencies.remove(project);
+        synchronized (deferredTypeChecks) {
+            deferredTypeChecks.remove(project);
+        }
+        TypeCheckStateCache.remove(project);
+        IncrementalBuildIndex.remove(project);
+        JavaBackendSession.remove(project);
+        SubtypeIndex.removeObsoletePackages();
     }
     
     public static List<IFolder> getSourceFolders(IProject project) {
@@ -4063,69 +4594,98 @@ public class CeylonBuilder extends IncrementalProjectBuilder {
         }
     }
 
-    private void cleanChangedFilesFromExplodedDirectory(Collection<IFile> changedFiles, 
+    /*
+     * Returns the class files of the exploded directory that
+     * were generated from the given changed files. They are 
+     * only deleted after the compilation if the backend didn't 
+     * generate them again, so that the classes whose bytecode
+     * doesn't change are left untouched.
+     */
+    private Set<File> collectExplodedClassFiles(Collection<IFile> changedFiles, 
             IProject project) {
+        Set<File> classFiles = new HashSet<File>();
         if (changedFiles.size() == 0) {
-            return;
+            return classFiles;
         }
         
         if (! isExplodeModulesEnabled(project)) {
-            return;
+            return classFiles;
+        }
+        
+        TypeChecker typeChecker = typeCheckers.get(project);
+        if (typeChecker == null) {
+            return classFiles;
         }
         
+        final File modulesOutputDirectory = getCeylonModulesOutputDirectory(project);
+        final File ceylonOutputDirectory = getCeylonClassesOutputDirectory(project);
+        
+        //Group the changed files by module archive, so that the
+        //mapping of each archive is only read once
+        Map<File, Set<String>> relativePathsByModuleJar = 
+                new HashMap<File, Set<String>>();
         for (IFile file : changedFiles) {
             IFolder rootFolder = getRootFolder(file);
             if (rootFolder == null) {
-                return;
+                continue;
             }
 
             if (isResourceFile(file)) {
-                return;
+                continue;
             }
             
-            String relativeFilePath = file.getProjectRelativePath().makeRelativeTo(rootFolder.getProjectRelativePath()).toString();
             Package pkg = getPackage((IFolder)file.getParent());
             if (pkg == null) {
-                return;
+                continue;
             }
             Module module = pkg.getModule();
-            TypeChecker typeChecker = typeCheckers.get(project);
-            if (typeChecker == null) {
-                return;
-            }
-            
-            final File modulesOutputDirectory = getCeylonModulesOutputDirectory(project);
-            final File ceylonOutputDirectory = getCeylonClassesOutputDirectory(project);
             File moduleDir = getModulePath(modulesOutputDirectory, module);
-            
-            //Remove the classes belonging to the source file from the
-            //from the .exploded directory
             File moduleJar = new File(moduleDir, getModuleArchiveName(module));
+            Set<String> relativeFilePaths = relativePathsByModuleJar.get(moduleJar);
+            if (relativeFilePaths == null) {
+                relativeFilePaths = new HashSet<String>();
+                relativePathsByModuleJar.put(moduleJar, relativeFilePaths);
+            }
+            relativeFilePaths.add(file.getProjectRelativePath()
+                    .makeRelativeTo(rootFolder.getProjectRelativePath()).toString());
+        }
+        
+        for (Map.Entry<File, Set<String>> entry : relativePathsByModuleJar.entrySet()) {
+            File moduleJar = entry.getKey();
             if(moduleJar.exists()){
                 try {
-                    List<String> entriesToDelete = new ArrayList<String>();
                     ZipFile zipFile = new ZipFile(moduleJar);
                     
                     Properties mapping = CarUtils.retrieveMappingFile(zipFile);
 
                     for (String className : mapping.stringPropertyNames()) {
                         String sourceFile = mapping.getProperty(className);
-                        if (relativeFilePath.equals(sourceFile)) {
-                            entriesToDelete.add(className);
+                        if (entry.getValue().contains(sourceFile)) {
+                            classFiles.add(new File(ceylonOutputDirectory, 
+                                    className.replace('/', File.separatorChar)));
                         }
                     }
-
-                    for (String entryToDelete : entriesToDelete) {
-                        new File(ceylonOutputDirectory, 
-                                entryToDelete.replace('/', File.separatorChar))
-                                .delete();
-                    }
                 } catch (ZipException e) {
                     e.printStackTrace();
                 }
             }
         }
-    }    
+        return classFiles;
+    }
+    
+    /*
+     * Deletes the class files of the exploded directory that 
+     * the backend didn't generate again.
+     */
+    private static void deleteStaleExplodedClassFiles(Set<File> classFiles) {
+        synchronized (classFiles) {
+            for (File classFile : classFiles) {
+                classFile.delete();
+            }
+            classFiles.clear();
+        }
+    }
+    
     private static File getCeylonClassesOutputDirectory(IProject project) {
         return getCeylonClassesOutputFolder(project)
                 .getRawLocation().toFile();
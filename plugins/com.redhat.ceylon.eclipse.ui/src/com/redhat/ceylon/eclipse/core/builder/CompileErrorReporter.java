@@ -217,6 +217,11 @@ final class CompileErrorReporter implements
             marker.setAttribute(IMarker.PRIORITY, IMarker.PRIORITY_HIGH);
             int severity = kindToSeverity(diagnostic==null ? Diagnostic.Kind.ERROR : diagnostic.getKind());
             marker.setAttribute(IMarker.SEVERITY, severity);
+            if (resource instanceof IFile && 
+                    !markerId.equals(JAVA_MODEL_PROBLEM_MARKER)) {
+                IncrementalBuildIndex.get(project)
+                        .backendMarkerCreated((IFile) resource, severity);
+            }
         }
         catch (CoreException ce) {
             ce.printStackTrace();
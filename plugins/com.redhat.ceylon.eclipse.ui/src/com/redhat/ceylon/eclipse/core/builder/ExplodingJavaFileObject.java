@@ -1,6 +1,6 @@
 package com.redhat.ceylon.eclipse.core.builder;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -9,6 +9,8 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
@@ -16,6 +18,12 @@ import javax.tools.JavaFileObject;
 
 import com.sun.tools.javac.file.RelativePath.RelativeFile;
 
+/**
+ * Class file written both to the module archive and to the
+ * exploded classes directory. The class file of the exploded
+ * directory is left untouched when its content didn't change,
+ * so that the Java projects depending on it aren't rebuilt.
+ */
 final class ExplodingJavaFileObject implements
         JavaFileObject {
     private final File classFile;
@@ -34,7 +42,7 @@ final class ExplodingJavaFileObject implements
             throws IOException {
         return new OutputStream() {
             final OutputStream jarStream = javaFileObject.openOutputStream();
-            final OutputStream classFileStream = new BufferedOutputStream(new FileOutputStream(classFile));
+            final ByteArrayOutputStream classFileStream = new ByteArrayOutputStream();
             @Override
             public void write(int b) throws IOException {
                 jarStream.write(b);
@@ -53,17 +61,30 @@ final class ExplodingJavaFileObject implements
             }
             @Override
             public void close() throws IOException {
-                classFileStream.close();
-                jarStream.close();
+                try {
+                    writeClassFileIfChanged(classFileStream.toByteArray());
+                }
+                finally {
+                    jarStream.close();
+                }
             }
             @Override
             public void flush() throws IOException {
-                classFileStream.flush();
                 jarStream.flush();
             }
         };
     }
 
+    private void writeClassFileIfChanged(byte[] bytes) throws IOException {
+        if (classFile.isFile() && classFile.length() == bytes.length && 
+                Arrays.equals(Files.readAllBytes(classFile.toPath()), bytes)) {
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(classFile)) {
+            out.write(bytes);
+        }
+    }
+
     @Override
     public String toString() {
         return fileName.getPath();
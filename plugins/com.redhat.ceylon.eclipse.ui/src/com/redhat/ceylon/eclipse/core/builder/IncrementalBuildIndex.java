@@ -0,0 +1,203 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.PROBLEM_MARKER_ID;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getFile;
+import static org.eclipse.core.resources.IResource.DEPTH_INFINITE;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.context.TypecheckerUnit;
+import com.redhat.ceylon.eclipse.core.model.IResourceAware;
+import com.redhat.ceylon.eclipse.core.model.SourceFile;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * The files of a project that must be built again by every
+ * incremental build, whatever changed:
+ * <ul>
+ * <li>the files that have backend errors or missing class
+ *     files, and</li>
+ * <li>the files with unresolved references or duplicate
+ *     declarations.</li>
+ * </ul>
+ * Both sets are maintained as markers are created and
+ * deleted and as units are typechecked, so that planning an
+ * incremental build doesn't require to query the markers or
+ * the units of every file of the project.
+ */
+class IncrementalBuildIndex {
+
+    private static final Map<IProject, IncrementalBuildIndex> indexes =
+            new HashMap<IProject, IncrementalBuildIndex>();
+
+    static IncrementalBuildIndex get(IProject project) {
+        synchronized (indexes) {
+            IncrementalBuildIndex index = indexes.get(project);
+            if (index == null) {
+                index = new IncrementalBuildIndex(project);
+                indexes.put(project, index);
+            }
+            return index;
+        }
+    }
+
+    static void remove(IProject project) {
+        synchronized (indexes) {
+            indexes.remove(project);
+        }
+    }
+
+    private final IProject project;
+
+    /**
+     * Lazily initialized from the existing markers, since
+     * backend markers are persisted across sessions.
+     */
+    private Set<IFile> filesWithBackendErrors;
+
+    private final Set<IFile> filesWithTypecheckerProblems =
+            new HashSet<IFile>();
+
+    private IncrementalBuildIndex(IProject project) {
+        this.project = project;
+    }
+
+    private Set<IFile> getFilesWithBackendErrors() {
+        if (filesWithBackendErrors == null) {
+            filesWithBackendErrors = new HashSet<IFile>();
+            try {
+                for (IMarker marker: project.findMarkers(PROBLEM_MARKER_ID + ".backend",
+                        false, DEPTH_INFINITE)) {
+                    if (marker.getResource() instanceof IFile) {
+                        backendMarkerCreated((IFile) marker.getResource(),
+                                marker.getAttribute(IMarker.SEVERITY, -1));
+                    }
+                }
+            }
+            catch (CoreException e) {
+                e.printStackTrace();
+                // the next build will retry
+                filesWithBackendErrors = null;
+                return new HashSet<IFile>(CeylonBuilder.getProjectFiles(project));
+            }
+        }
+        return filesWithBackendErrors;
+    }
+
+    /**
+     * Records a backend marker of the given severity on the
+     * given file.
+     */
+    synchronized void backendMarkerCreated(IFile file, int severity) {
+        switch (severity) {
+        case IMarker.SEVERITY_ERROR:
+            // For backend errors
+        case IMarker.SEVERITY_INFO:
+            // For missing class files
+            getFilesWithBackendErrors().add(file);
+        }
+    }
+
+    /**
+     * Records the deletion of the backend markers of the
+     * given resource and of its members.
+     */
+    synchronized void backendMarkersDeleted(IResource resource) {
+        if (filesWithBackendErrors == null) {
+            return;
+        }
+        if (resource instanceof IFile) {
+            filesWithBackendErrors.remove(resource);
+        }
+        else {
+            IPath path = resource.getFullPath();
+            for (Iterator<IFile> it = filesWithBackendErrors.iterator(); it.hasNext();) {
+                if (path.isPrefixOf(it.next().getFullPath())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the files with typechecker problems that force
+     * a new typecheck, after the given units have been
+     * typechecked.
+     */
+    synchronized void unitsTypechecked(Collection<PhasedUnit> phasedUnits) {
+        for (PhasedUnit phasedUnit: phasedUnits) {
+            TypecheckerUnit unit = phasedUnit.getUnit();
+            IFile file = getFile(phasedUnit);
+            filesWithTypecheckerProblems.remove(file);
+            if (!unit.getUnresolvedReferences().isEmpty()) {
+                filesWithTypecheckerProblems.add(file);
+            }
+            Set<Declaration> duplicateDeclarations = unit.getDuplicateDeclarations();
+            if (!duplicateDeclarations.isEmpty()) {
+                filesWithTypecheckerProblems.add(file);
+                for (Declaration duplicateDeclaration : duplicateDeclarations) {
+                    Unit duplicateUnit = duplicateDeclaration.getUnit();
+                    if ((duplicateUnit instanceof SourceFile) &&
+                        (duplicateUnit instanceof IResourceAware)) {
+                        IFile duplicateDeclFile = ((IResourceAware) duplicateUnit).getFileResource();
+                        if (duplicateDeclFile != null) {
+                            filesWithTypecheckerProblems.add(duplicateDeclFile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets everything recorded about the typechecker
+     * problems, before a full typecheck.
+     */
+    synchronized void clearTypecheckerProblems() {
+        filesWithTypecheckerProblems.clear();
+    }
+
+    /**
+     * Returns the existing files that have backend errors
+     * or missing class files.
+     */
+    synchronized Set<IFile> getFilesToRebuildForBackendErrors() {
+        return existing(getFilesWithBackendErrors());
+    }
+
+    /**
+     * Returns the existing files that have unresolved
+     * references or duplicate declarations.
+     */
+    synchronized Set<IFile> getFilesToRebuildForTypecheckerProblems() {
+        return existing(filesWithTypecheckerProblems);
+    }
+
+    private static Set<IFile> existing(Set<IFile> files) {
+        Set<IFile> existingFiles = new HashSet<IFile>();
+        for (Iterator<IFile> it = files.iterator(); it.hasNext();) {
+            IFile file = it.next();
+            if (file.exists()) {
+                existingFiles.add(file);
+            }
+            else {
+                it.remove();
+            }
+        }
+        return existingFiles;
+    }
+}
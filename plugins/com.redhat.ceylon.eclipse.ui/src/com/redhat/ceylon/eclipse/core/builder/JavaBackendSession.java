@@ -0,0 +1,196 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.redhat.ceylon.compiler.java.tools.CeyloncTool;
+
+/**
+ * State of the Java backend of a project that is kept from
+ * one build to the next: the compiler tool and the classpath
+ * given to it, which is computed by walking the classpath
+ * containers of the project and of all the projects it
+ * references.
+ *
+ * The javac context, the file manager and the symbol tables
+ * can't be reused once a compilation task has run, so they
+ * are still created for each build. The declarations of the
+ * dependencies are anyway not loaded again when the backend
+ * reuses the model of the IDE.
+ *
+ * The session is reset each time the classpath of any Java
+ * project changes, or the description of any project, which
+ * holds its project references, changes, since the compiler
+ * classpath of a project includes the classpath of the
+ * projects it references.
+ */
+final class JavaBackendSession {
+
+    private static final Map<IProject, JavaBackendSession> sessions =
+            new HashMap<IProject, JavaBackendSession>();
+
+    private static final IElementChangedListener classpathListener =
+            new IElementChangedListener() {
+        @Override
+        public void elementChanged(ElementChangedEvent event) {
+            if (isClasspathChange(event.getDelta())) {
+                resetAll();
+            }
+        }
+    };
+
+    private static final IResourceChangeListener descriptionListener =
+            new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResourceDelta delta = event.getDelta();
+            if (delta != null && isDescriptionChange(delta)) {
+                resetAll();
+            }
+        }
+    };
+
+    private static boolean listening = false;
+
+    static JavaBackendSession get(IProject project) {
+        synchronized (sessions) {
+            if (!listening) {
+                JavaCore.addElementChangedListener(classpathListener,
+                        ElementChangedEvent.POST_CHANGE);
+                ResourcesPlugin.getWorkspace().addResourceChangeListener(
+                        descriptionListener, IResourceChangeEvent.POST_CHANGE);
+                listening = true;
+            }
+            JavaBackendSession session = sessions.get(project);
+            if (session == null) {
+                session = new JavaBackendSession();
+                sessions.put(project, session);
+            }
+            return session;
+        }
+    }
+
+    static void remove(IProject project) {
+        synchronized (sessions) {
+            sessions.remove(project);
+        }
+    }
+
+    static void resetAll() {
+        synchronized (sessions) {
+            for (JavaBackendSession session: sessions.values()) {
+                session.reset();
+            }
+        }
+    }
+
+    private static boolean isClasspathChange(IJavaElementDelta delta) {
+        int flags = delta.getFlags();
+        if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED |
+                IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0) {
+            return true;
+        }
+        if (delta.getElement().getElementType() == IJavaElement.JAVA_PROJECT &&
+                (delta.getKind() != IJavaElementDelta.CHANGED ||
+                (flags & (IJavaElementDelta.F_OPENED |
+                        IJavaElementDelta.F_CLOSED)) != 0)) {
+            //a project was added, removed, opened or closed
+            return true;
+        }
+        if (delta.getElement().getElementType() <= IJavaElement.JAVA_PROJECT) {
+            for (IJavaElementDelta child: delta.getAffectedChildren()) {
+                if (isClasspathChange(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDescriptionChange(IResourceDelta workspaceDelta) {
+        for (IResourceDelta delta: workspaceDelta.getAffectedChildren()) {
+            if (delta.getKind() != IResourceDelta.CHANGED ||
+                    (delta.getFlags() & (IResourceDelta.DESCRIPTION |
+                            IResourceDelta.OPEN)) != 0) {
+                //the references of a project changed, or a
+                //project was added, removed, opened or closed
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CeyloncTool compiler;
+    private String classpath;
+    private long coldDuration = -1;
+    private int coldNumberOfFiles;
+
+    private JavaBackendSession() {}
+
+    synchronized void reset() {
+        classpath = null;
+        coldDuration = -1;
+    }
+
+    /**
+     * The compiler tool, created by the first compilation.
+     */
+    synchronized CeyloncTool getCompiler() {
+        if (compiler == null) {
+            compiler = new CeyloncTool();
+        }
+        return compiler;
+    }
+
+    /**
+     * The classpath computed for the last compilation, or
+     * null if it must be computed again.
+     */
+    synchronized String getClasspath() {
+        return classpath;
+    }
+
+    synchronized void setClasspath(String classpath) {
+        this.classpath = classpath;
+    }
+
+    /**
+     * Records the duration of a compilation, and returns a
+     * description of it to be logged, comparing it with the
+     * first compilation since the session was reset.
+     */
+    synchronized String compiled(IProject project,
+            int numberOfFiles, long duration) {
+        StringBuilder message = new StringBuilder("Java backend compilation of ")
+                .append(numberOfFiles)
+                .append(" source files of project ")
+                .append(project.getName())
+                .append(" took ")
+                .append(duration)
+                .append(" ms");
+        if (coldDuration < 0) {
+            coldDuration = duration;
+            coldNumberOfFiles = numberOfFiles;
+            message.append(" (new session)");
+        }
+        else {
+            message.append(" (reused session, first compilation of ")
+                    .append(coldNumberOfFiles)
+                    .append(" source files took ")
+                    .append(coldDuration)
+                    .append(" ms)");
+        }
+        return message.toString();
+    }
+}
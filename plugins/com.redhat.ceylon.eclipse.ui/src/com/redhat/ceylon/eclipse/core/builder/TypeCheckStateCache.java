@@ -0,0 +1,475 @@
+package com.redhat.ceylon.eclipse.core.builder;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.eclipse.core.model.JDTModule;
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+import com.redhat.ceylon.model.typechecker.model.Module;
+
+/**
+ * On-disk record of the last typecheck of the source files
+ * of a project, kept in the state location of the plugin so
+ * that it survives restarts.
+ *
+ * For each source file, it stores the hash of the content
+ * that was last typechecked along with the files depending
+ * on it, and for the whole project a signature of the
+ * module dependencies, of the Java source files and of the
+ * modules of the referenced projects. A source file whose
+ * content didn't change since then, and which doesn't
+ * depend, even indirectly, on a file that changed, still
+ * has up-to-date problem markers, so the initial typecheck
+ * of the project can defer the analysis of its body.
+ *
+ * The state is written in the background after the builds
+ * which typechecked some units or changed the dependencies,
+ * so that builds don't wait for it. If the workbench exits
+ * before it is written, the next session just typechecks
+ * more units.
+ */
+class TypeCheckStateCache {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Map<IProject, TypeCheckStateCache> caches =
+            new HashMap<IProject, TypeCheckStateCache>();
+
+    static TypeCheckStateCache get(IProject project) {
+        synchronized (caches) {
+            TypeCheckStateCache cache = caches.get(project);
+            if (cache == null) {
+                cache = new TypeCheckStateCache(project);
+                caches.put(project, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Forgets the in-memory state of the given project. The
+     * state on disk is kept for the next time the project is
+     * opened.
+     */
+    static void remove(IProject project) {
+        synchronized (caches) {
+            caches.remove(project);
+        }
+    }
+
+    private static class Entry {
+        final String hash;
+        final Collection<String> dependents;
+        Entry(String hash, Collection<String> dependents) {
+            this.hash = hash;
+            this.dependents = dependents;
+        }
+    }
+
+    private final IProject project;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private String dependenciesSignature = null;
+    private boolean loaded = false;
+    /**
+     * Whether units were typechecked since the state was 
+     * last written.
+     */
+    private boolean dirty = false;
+    private TypeChecker typeCheckerToSave = null;
+    private Job saveJob = null;
+
+    private TypeCheckStateCache(IProject project) {
+        this.project = project;
+    }
+
+    private static File getCacheFile(IProject project) {
+        return CeylonPlugin.getInstance().getStateLocation()
+                .append("typecheckState")
+                .append(project.getName() + ".bin")
+                .toFile();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File cacheFile = getCacheFile(project);
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != FORMAT_VERSION) {
+                    return;
+                }
+                String signature = in.readUTF();
+                int numberOfEntries = in.readInt();
+                for (int i=0; i<numberOfEntries; i++) {
+                    String path = in.readUTF();
+                    String hash = in.readUTF();
+                    int numberOfDependents = in.readInt();
+                    List<String> dependents = new ArrayList<String>(numberOfDependents);
+                    for (int j=0; j<numberOfDependents; j++) {
+                        dependents.add(in.readUTF());
+                    }
+                    entries.put(path, new Entry(hash, dependents));
+                }
+                dependenciesSignature = signature;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            //a corrupted cache is just ignored
+            entries.clear();
+            dependenciesSignature = null;
+        }
+    }
+
+    /**
+     * Returns the units of the given list that were
+     * typechecked with the same content and the same module
+     * dependencies during a previous session, and whose
+     * dependencies in the project didn't change since, and
+     * restores the dependencies they had on the other units
+     * of the project.
+     */
+    List<PhasedUnit> findUpToDateUnits(TypeChecker typeChecker,
+            List<PhasedUnit> units) {
+        //computed without holding the lock, since it
+        //locks the caches of the referenced projects
+        String signature = computeDependenciesSignature(typeChecker);
+        synchronized (this) {
+            load();
+            if (entries.isEmpty() ||
+                    !signature.equals(dependenciesSignature)) {
+                return Collections.emptyList();
+            }
+            return findUpToDateUnits(units);
+        }
+    }
+
+    private List<PhasedUnit> findUpToDateUnits(List<PhasedUnit> units) {
+        Map<String, PhasedUnit> unitsByPath = new HashMap<String, PhasedUnit>();
+        for (PhasedUnit unit: units) {
+            unitsByPath.put(unit.getUnitFile().getPath(), unit);
+        }
+        LinkedList<String> changedPaths = new LinkedList<String>();
+        for (String path: entries.keySet()) {
+            if (!unitsByPath.containsKey(path)) {
+                //a removed file
+                changedPaths.add(path);
+            }
+        }
+        for (Map.Entry<String, PhasedUnit> unit: unitsByPath.entrySet()) {
+            Entry entry = entries.get(unit.getKey());
+            if (entry == null) {
+                //a new file might resolve references or
+                //clash with declarations of any other file
+                return Collections.emptyList();
+            }
+            if (!entry.hash.equals(computeHash(getFile(unit.getValue())))) {
+                changedPaths.add(unit.getKey());
+            }
+        }
+        // the files depending, even indirectly, on a changed
+        // file are not up to date either
+        Set<String> outdatedPaths = new HashSet<String>(changedPaths);
+        while (!changedPaths.isEmpty()) {
+            Entry entry = entries.get(changedPaths.removeFirst());
+            if (entry != null) {
+                for (String dependent: entry.dependents) {
+                    if (outdatedPaths.add(dependent)) {
+                        changedPaths.add(dependent);
+                    }
+                }
+            }
+        }
+        List<PhasedUnit> upToDateUnits = new ArrayList<PhasedUnit>();
+        for (PhasedUnit unit: units) {
+            if (!outdatedPaths.contains(unit.getUnitFile().getPath())) {
+                upToDateUnits.add(unit);
+            }
+        }
+        // the dependencies of the up-to-date units won't be
+        // collected before their bodies are typechecked
+        for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+            PhasedUnit unit = unitsByPath.get(entry.getKey());
+            if (unit != null) {
+                for (String dependent: entry.getValue().dependents) {
+                    if (!outdatedPaths.contains(dependent)) {
+                        unit.getUnit().getDependentsOf().add(dependent);
+                    }
+                }
+            }
+        }
+        return upToDateUnits;
+    }
+
+    /**
+     * Records the content of the given units as typechecked.
+     */
+    synchronized void update(Collection<PhasedUnit> typecheckedUnits) {
+        load();
+        if (!typecheckedUnits.isEmpty()) {
+            dirty = true;
+        }
+        for (PhasedUnit unit: typecheckedUnits) {
+            String hash = computeHash(getFile(unit));
+            if (hash != null) {
+                entries.put(unit.getUnitFile().getPath(),
+                        new Entry(hash, Collections.<String>emptyList()));
+            }
+        }
+    }
+
+    /**
+     * Forgets all the units typechecked so far, for example
+     * before a full build.
+     */
+    synchronized void clear() {
+        load();
+        entries.clear();
+        dirty = true;
+    }
+
+    /**
+     * Schedules the writing of the state of the current 
+     * units of the project to disk, if units were 
+     * typechecked or the dependencies changed since it was
+     * last written.
+     */
+    void save(TypeChecker typeChecker) {
+        Job job;
+        synchronized (this) {
+            typeCheckerToSave = typeChecker;
+            if (saveJob == null) {
+                saveJob = new Job("Saving the typecheck state of project " + 
+                        project.getName()) {
+                    @Override
+                    protected IStatus run(IProgressMonitor monitor) {
+                        saveNow();
+                        return Status.OK_STATUS;
+                    }
+                };
+                saveJob.setSystem(true);
+                saveJob.setPriority(Job.DECORATE);
+                //after the build, which holds the workspace rule
+                saveJob.setRule(project);
+            }
+            job = saveJob;
+        }
+        job.schedule();
+    }
+
+    /*
+     * Reads the units and their dependents while holding 
+     * the lock of the model, so that no build or editor 
+     * typecheck changes them meanwhile.
+     */
+    private void saveNow() {
+        TypeChecker typeChecker;
+        synchronized (this) {
+            typeChecker = typeCheckerToSave;
+            typeCheckerToSave = null;
+        }
+        if (typeChecker == null || !project.isAccessible()) {
+            return;
+        }
+        Lock modelLock = CeylonBuilder.getModelLock(project);
+        modelLock.lock();
+        try {
+            //computed without holding the lock of the cache,
+            //since it locks the caches of the referenced 
+            //projects
+            String signature = computeDependenciesSignature(typeChecker);
+            synchronized (this) {
+                load();
+                if (dirty || !signature.equals(dependenciesSignature)) {
+                    save(typeChecker, signature);
+                    dirty = false;
+                }
+            }
+        }
+        finally {
+            modelLock.unlock();
+        }
+    }
+
+    private void save(TypeChecker typeChecker, String signature) {
+        dependenciesSignature = signature;
+        Map<String, Entry> currentEntries = new HashMap<String, Entry>();
+        for (PhasedUnit unit: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            String path = unit.getUnitFile().getPath();
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                currentEntries.put(path, new Entry(entry.hash,
+                        new ArrayList<String>(unit.getUnit().getDependentsOf())));
+            }
+        }
+        entries.clear();
+        entries.putAll(currentEntries);
+
+        File cacheFile = getCacheFile(project);
+        cacheFile.getParentFile().mkdirs();
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(cacheFile)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(dependenciesSignature);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue().hash);
+                    out.writeInt(entry.getValue().dependents.size());
+                    for (String dependent: entry.getValue().dependents) {
+                        out.writeUTF(dependent);
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            cacheFile.delete();
+        }
+    }
+
+    /**
+     * A hash of the content of the typechecked source files
+     * of the project, which changes whenever one of them
+     * changes.
+     */
+    synchronized String getContentSignature() {
+        load();
+        List<String> paths = new ArrayList<String>(entries.keySet());
+        Collections.sort(paths);
+        StringBuilder signature = new StringBuilder();
+        for (String path: paths) {
+            signature.append(path).append('=')
+                .append(entries.get(path).hash).append(',');
+        }
+        return computeHash(signature.toString().getBytes());
+    }
+
+    /*
+     * The module dependencies are identified by their name
+     * and version, except the modules of the referenced
+     * projects, which may change without changing version,
+     * and are identified by the content of their project.
+     * The dependencies of the Ceylon files on the Java files
+     * of the project are not recorded, so any change to a
+     * Java file invalidates the whole cache.
+     */
+    private String computeDependenciesSignature(TypeChecker typeChecker) {
+        List<String> modules = new ArrayList<String>();
+        for (Module module: typeChecker.getContext().getModules().getListOfModules()) {
+            String key = module.getNameAsString() + '/' + module.getVersion();
+            if (module instanceof JDTModule) {
+                IProject originalProject = ((JDTModule) module).getOriginalProject();
+                if (originalProject != null) {
+                    key += '/' + get(originalProject).getContentSignature();
+                }
+            }
+            modules.add(key);
+        }
+        Collections.sort(modules);
+        List<String> javaFiles = new ArrayList<String>();
+        List<IFile> projectFiles = CeylonBuilder.getProjectFiles(project);
+        if (projectFiles != null) {
+            for (IFile file: projectFiles) {
+                if (CeylonBuilder.isJava(file)) {
+                    javaFiles.add(file.getProjectRelativePath() + "@" +
+                            file.getLocalTimeStamp());
+                }
+            }
+        }
+        Collections.sort(javaFiles);
+        StringBuilder signature = new StringBuilder()
+                .append(CeylonPlugin.getInstance().getBundle().getVersion());
+        for (String module: modules) {
+            signature.append(',').append(module);
+        }
+        for (String javaFile: javaFiles) {
+            signature.append(',').append(javaFile);
+        }
+        return computeHash(signature.toString().getBytes());
+    }
+
+    private static String computeHash(IFile file) {
+        try {
+            InputStream in = file.getContents(true);
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+                return toHex(digest.digest());
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (CoreException | IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static String computeHash(byte[] content) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(content));
+        }
+        catch (NoSuchAlgorithmException e) {
+            return "";
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length*2);
+        for (byte b: bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+               .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
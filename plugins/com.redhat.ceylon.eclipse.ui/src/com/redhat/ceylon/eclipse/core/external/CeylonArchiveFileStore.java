@@ -3,7 +3,7 @@ package com.redhat.ceylon.eclipse.core.external;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -47,34 +47,9 @@ public class CeylonArchiveFileStore extends FileStore {
     }
 
     private ZipEntry[] childEntries(IProgressMonitor monitor) throws CoreException {
-        HashMap entries = new HashMap();
-        ZipInputStream in = new ZipInputStream(rootStore.openInputStream(EFS.NONE, monitor));
-        String myName = path.toString();
-        try {
-            ZipEntry current;
-            while ((current = in.getNextEntry()) != null) {
-                final String currentPath = current.getName();
-                if (isParent(myName, currentPath))
-                    entries.put(currentPath, current);
-                else if (isAncestor(myName, currentPath)) {
-                    int myNameLength = myName.length() + 1;
-                    int nameEnd = currentPath.indexOf('/', myNameLength);
-                    String dirName = nameEnd == -1 ? currentPath : currentPath.substring(0, nameEnd + 1);
-                    if (!entries.containsKey(dirName))
-                        entries.put(dirName, new ZipEntry(dirName));
-                }
-            }
-        } catch (IOException e) {
-            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.couldNotRead, rootStore.toString()), e);
-        } finally {
-            try {
-                if (in != null)
-                    in.close();
-            } catch (IOException e) {
-                //ignore
-            }
-        }
-        return (ZipEntry[]) entries.values().toArray(new ZipEntry[entries.size()]);
+        Collection<ZipEntry> entries = CeylonArchiveIndex.get(rootStore, monitor)
+                .getChildren(path.toString());
+        return entries.toArray(new ZipEntry[entries.size()]);
     }
 
     public IFileInfo[] childInfos(int options, IProgressMonitor monitor) throws CoreException {
@@ -125,28 +100,14 @@ public class CeylonArchiveFileStore extends FileStore {
     }
 
     public IFileInfo fetchInfo(int options, IProgressMonitor monitor) throws CoreException {
-        ZipInputStream in = new ZipInputStream(rootStore.openInputStream(EFS.NONE, monitor));
-        try {
-            String myPath = path.toString();
-            ZipEntry current;
-            while ((current = in.getNextEntry()) != null) {
-                String currentPath = current.getName();
-                if (myPath.equals(currentPath))
-                    return convertZipEntryToFileInfo(current);
-                //directories don't always have their own entry, but it is implied by the existence of a child
-                if (isAncestor(myPath, currentPath))
-                    return createDirectoryInfo(getName());
-            }
-        } catch (IOException e) {
-            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.couldNotRead, rootStore.toString()), e);
-        } finally {
-            try {
-                if (in != null)
-                    in.close();
-            } catch (IOException e) {
-                //ignore
-            }
-        }
+        CeylonArchiveIndex index = CeylonArchiveIndex.get(rootStore, monitor);
+        String myPath = path.toString();
+        ZipEntry entry = index.getEntry(myPath);
+        if (entry != null && !entry.isDirectory())
+            return convertZipEntryToFileInfo(entry);
+        //directories don't always have their own entry, but it is implied by the existence of a child
+        if (index.isDirectory(myPath))
+            return createDirectoryInfo(getName());
         //does not exist
         return new FileInfo(getName());
     }
@@ -191,45 +152,25 @@ public class CeylonArchiveFileStore extends FileStore {
         return null;
     }
 
-    /**
-     * Returns whether ancestor is a parent of child.
-     * @param ancestor the potential ancestor
-     * @param child the potential child
-     * @return <code>true</code> or <code>false</code>
-     */
-    private boolean isAncestor(String ancestor, String child) {
-        //children will start with myName and have no child path
-        int ancestorLength = ancestor.length();
-        if (ancestorLength == 0)
-            return true;
-        return child.startsWith(ancestor) && child.length() > (ancestorLength + 1) && child.charAt(ancestorLength) == '/';
-    }
-
-    /**
-     * Returns whether parent is the immediate parent of child.
-     * @param parent the potential parent
-     * @param child the potential child
-     * @return <code>true</code> or <code>false</code>
-     */
-    private boolean isParent(String parent, String child) {
-        //children will start with myName and have no child path
-        int chop = parent.length() + 1;
-        if (parent.isEmpty()) {
-            chop = 0;
-        } else {
-            chop = parent.length() + 1;
-        }
-        return child.startsWith(parent) && child.length() > chop && child.substring(chop).indexOf('/') == -1;
-    }
-
     public InputStream openInputStream(int options, IProgressMonitor monitor) throws CoreException {
+        CeylonArchiveIndex index = CeylonArchiveIndex.get(rootStore, monitor);
+        ZipEntry entry = index.getEntry(path.toString());
+        if (entry == null)
+            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.fileNotFound, toString()), null);
+        if (entry.isDirectory())
+            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.notAFile, toString()), null);
+        if (index.hasRandomAccess()) {
+            try {
+                return index.openInputStream(entry);
+            } catch (IOException e) {
+                Policy.error(EFS.ERROR_READ, NLS.bind(Messages.couldNotRead, rootStore.toString()), e);
+            }
+        }
+        //the archive is not a local file : scan it up to the entry
         ZipInputStream in = new ZipInputStream(rootStore.openInputStream(EFS.NONE, monitor));
         try {
-            ZipEntry entry = findEntry(path.toString(), in);
-            if (entry == null)
+            if (findEntry(path.toString(), in) == null)
                 Policy.error(EFS.ERROR_READ, NLS.bind(Messages.fileNotFound, toString()), null);
-            if (entry.isDirectory())
-                Policy.error(EFS.ERROR_READ, NLS.bind(Messages.notAFile, toString()), null);
             return in;
         } catch (IOException e) {
             try {
@@ -0,0 +1,535 @@
+package com.redhat.ceylon.eclipse.core.external;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.internal.filesystem.Messages;
+import org.eclipse.core.internal.filesystem.Policy;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Index of the entries of an archive, built once from its
+ * central directory and shared by all the {@link
+ * CeylonArchiveFileStore}s of the archive.
+ *
+ * An index is kept as long as the timestamp and the length
+ * of the archive file don't change, and gives access to the
+ * entries by path, to the children of a directory, and to
+ * the content of the entries without scanning the archive.
+ *
+ * The index only holds the entries, not an open handle to
+ * the archive, which would lock the file on Windows, and
+ * prevent the builder from rewriting the source archives
+ * of the output repository. It also records the offset of
+ * the local header of each entry, read from the central 
+ * directory, so that a stream on the content of an entry
+ * only opens the archive and seeks to the entry, instead
+ * of reading the whole central directory again as a new
+ * {@link ZipFile} would. ZIP64 archives, whose central 
+ * directory isn't read, fall back to a {@link ZipFile}
+ * per stream.
+ *
+ * An archive is indexed outside of the lock of the cache of
+ * indexes, so that indexing a large archive doesn't block 
+ * the lookups in the other archives. The threads asking 
+ * for the index of an archive while it is being built wait
+ * for it.
+ */
+class CeylonArchiveIndex {
+
+    private static final int MAX_INDEXES = 20;
+
+    private static final Map<URI, PendingIndex> indexes =
+            new LinkedHashMap<URI, PendingIndex>(MAX_INDEXES, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<URI, PendingIndex> eldest) {
+                    return size() > MAX_INDEXES;
+                }
+            };
+
+    /**
+     * The index of a version of an archive, which is built 
+     * by the first thread asking for it.
+     */
+    private static final class PendingIndex {
+        final long lastModified;
+        final long length;
+        final FutureTask<CeylonArchiveIndex> task;
+        PendingIndex(final IFileStore rootStore, 
+                final IFileInfo archiveInfo, 
+                final IProgressMonitor monitor) {
+            lastModified = archiveInfo.getLastModified();
+            length = archiveInfo.getLength();
+            task = new FutureTask<CeylonArchiveIndex>(
+                    new Callable<CeylonArchiveIndex>() {
+                @Override
+                public CeylonArchiveIndex call() throws CoreException {
+                    return new CeylonArchiveIndex(rootStore, 
+                            archiveInfo, monitor);
+                }
+            });
+        }
+        boolean isUpToDate(IFileInfo archiveInfo) {
+            return archiveInfo.exists()
+                    && archiveInfo.getLastModified() == lastModified
+                    && archiveInfo.getLength() == length;
+        }
+    }
+
+    /**
+     * Returns an up-to-date index of the archive represented
+     * by the given file store, building it if necessary.
+     */
+    static CeylonArchiveIndex get(IFileStore rootStore,
+            IProgressMonitor monitor) throws CoreException {
+        IFileInfo archiveInfo = rootStore.fetchInfo(EFS.NONE, monitor);
+        URI archiveURI = rootStore.toURI();
+        PendingIndex pending;
+        boolean build = false;
+        synchronized (indexes) {
+            pending = indexes.get(archiveURI);
+            if (pending == null || !pending.isUpToDate(archiveInfo)) {
+                pending = new PendingIndex(rootStore, archiveInfo, monitor);
+                indexes.put(archiveURI, pending);
+                build = true;
+            }
+        }
+        if (build) {
+            pending.task.run();
+        }
+        try {
+            return pending.task.get();
+        }
+        catch (ExecutionException e) {
+            //forget the failed index, so that the next lookup
+            //tries again
+            synchronized (indexes) {
+                if (indexes.get(archiveURI) == pending) {
+                    indexes.remove(archiveURI);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof CoreException) {
+                throw (CoreException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.couldNotRead,
+                    rootStore.toString()), e);
+            return null;
+        }
+    }
+
+    /**
+     * The entries by path, without the trailing separator of
+     * directories.
+     */
+    private final Map<String, ZipEntry> entries =
+            new HashMap<String, ZipEntry>();
+
+    /**
+     * The children of each directory, by simple name.
+     * Directories that don't have their own entry in the
+     * archive are implied by their descendants.
+     */
+    private final Map<String, Map<String, ZipEntry>> children =
+            new HashMap<String, Map<String, ZipEntry>>();
+
+    /**
+     * The archive, for random access, or null if the archive
+     * is not a local file.
+     */
+    private final File localFile;
+
+    /**
+     * The offsets of the local headers of the entries, by
+     * entry name, or null if the central directory of the
+     * archive could not be read.
+     */
+    private final Map<String, Long> localHeaderOffsets;
+
+    private CeylonArchiveIndex(IFileStore rootStore,
+            IFileInfo archiveInfo, IProgressMonitor monitor)
+                    throws CoreException {
+        localFile = rootStore.toLocalFile(EFS.NONE, monitor);
+        Map<String, Long> offsets = null;
+        try {
+            if (localFile != null) {
+                ZipFile zipFile = new ZipFile(localFile);
+                try {
+                    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                    while (zipEntries.hasMoreElements()) {
+                        add(zipEntries.nextElement());
+                    }
+                }
+                finally {
+                    zipFile.close();
+                }
+                offsets = readLocalHeaderOffsets(localFile);
+            }
+            else {
+                ZipInputStream in = new ZipInputStream(
+                        rootStore.openInputStream(EFS.NONE, monitor));
+                try {
+                    ZipEntry current;
+                    while ((current = in.getNextEntry()) != null) {
+                        add(current);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+        catch (IOException e) {
+            Policy.error(EFS.ERROR_READ, NLS.bind(Messages.couldNotRead,
+                    rootStore.toString()), e);
+        }
+        localHeaderOffsets = offsets;
+    }
+
+    private static String parentOf(String path) {
+        int lastSeparator = path.lastIndexOf('/');
+        return lastSeparator < 0 ? "" : path.substring(0, lastSeparator);
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private Map<String, ZipEntry> childrenOf(String directory) {
+        Map<String, ZipEntry> directoryChildren = children.get(directory);
+        if (directoryChildren == null) {
+            directoryChildren = new HashMap<String, ZipEntry>();
+            children.put(directory, directoryChildren);
+        }
+        return directoryChildren;
+    }
+
+    private void add(ZipEntry entry) {
+        String path = entry.getName();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.isEmpty()) {
+            return;
+        }
+        entries.put(path, entry);
+        if (entry.isDirectory()) {
+            childrenOf(path);
+        }
+
+        String parent = parentOf(path);
+        childrenOf(parent).put(nameOf(path), entry);
+
+        // register the implied ancestor directories
+        while (!parent.isEmpty()) {
+            String grandParent = parentOf(parent);
+            Map<String, ZipEntry> siblings = childrenOf(grandParent);
+            String parentName = nameOf(parent);
+            if (siblings.containsKey(parentName)) {
+                break;
+            }
+            siblings.put(parentName, new ZipEntry(parent + '/'));
+            parent = grandParent;
+        }
+    }
+
+    /**
+     * Returns the entry with the given path (without trailing
+     * separator), or null if there is none.
+     */
+    ZipEntry getEntry(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Returns whether the given path is a directory, either
+     * explicitly or implied by its descendants.
+     */
+    boolean isDirectory(String path) {
+        return children.containsKey(path);
+    }
+
+    /**
+     * Returns the entries of the direct children of the given
+     * directory.
+     */
+    Collection<ZipEntry> getChildren(String directory) {
+        Map<String, ZipEntry> directoryChildren = children.get(directory);
+        if (directoryChildren == null) {
+            return Collections.emptyList();
+        }
+        return directoryChildren.values();
+    }
+
+    /**
+     * Returns whether the content of entries can be accessed
+     * directly, without scanning the archive.
+     */
+    boolean hasRandomAccess() {
+        return localFile != null;
+    }
+
+    /**
+     * Opens the content of the given entry. The archive stays
+     * open until the stream is closed.
+     */
+    InputStream openInputStream(ZipEntry entry)
+            throws IOException {
+        Long offset = localHeaderOffsets == null ? null :
+                localHeaderOffsets.get(entry.getName());
+        if (offset == null) {
+            return openZipFileInputStream(entry);
+        }
+        RandomAccessFile file = new RandomAccessFile(localFile, "r");
+        InputStream in = null;
+        try {
+            file.seek(offset);
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            file.readFully(header);
+            if (readInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header of entry: " + 
+                        entry.getName());
+            }
+            file.seek(offset + LOCAL_HEADER_SIZE +
+                    readShort(header, 26) + readShort(header, 28));
+            switch (entry.getMethod()) {
+            case ZipEntry.STORED:
+                in = new EntryInputStream(file, entry.getSize(), false);
+                break;
+            case ZipEntry.DEFLATED:
+                //the inflater may need a dummy byte after the
+                //compressed data when there is no zlib header
+                final Inflater inflater = new Inflater(true);
+                in = new InflaterInputStream(
+                        new EntryInputStream(file, 
+                                entry.getCompressedSize(), true), 
+                        inflater) {
+                    private boolean closed = false;
+                    @Override
+                    public void close() throws IOException {
+                        if (!closed) {
+                            closed = true;
+                            try {
+                                super.close();
+                            }
+                            finally {
+                                inflater.end();
+                            }
+                        }
+                    }
+                };
+                break;
+            default:
+                throw new ZipException("Unsupported compression method of entry: " + 
+                        entry.getName());
+            }
+            return in;
+        }
+        finally {
+            if (in == null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Opens the content of the given entry through a new
+     * {@link ZipFile}, which reads the central directory of
+     * the archive again.
+     */
+    private InputStream openZipFileInputStream(ZipEntry entry)
+            throws IOException {
+        final ZipFile zipFile = new ZipFile(localFile);
+        InputStream in = null;
+        try {
+            ZipEntry current = zipFile.getEntry(entry.getName());
+            if (current != null) {
+                in = zipFile.getInputStream(current);
+            }
+        }
+        finally {
+            if (in == null) {
+                zipFile.close();
+            }
+        }
+        if (in == null) {
+            throw new IOException("Entry not found: " + entry.getName());
+        }
+        return new FilterInputStream(in) {
+            private boolean closed = false;
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        zipFile.close();
+                    }
+                }
+            }
+        };
+    }
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Reads the offsets of the local headers of the entries
+     * from the central directory of the given archive, or
+     * returns null if it is a ZIP64 archive, or if the 
+     * central directory can't be found.
+     */
+    private static Map<String, Long> readLocalHeaderOffsets(File archive) 
+            throws IOException {
+        RandomAccessFile file = new RandomAccessFile(archive, "r");
+        try {
+            long fileLength = file.length();
+            int tailLength = (int) Math.min(fileLength, 
+                    END_SIZE + MAX_COMMENT_SIZE);
+            byte[] tail = new byte[tailLength];
+            file.seek(fileLength - tailLength);
+            file.readFully(tail);
+            int end = tailLength - END_SIZE;
+            while (end >= 0 && readInt(tail, end) != END_SIGNATURE) {
+                end--;
+            }
+            if (end < 0) {
+                return null;
+            }
+            int count = readShort(tail, end + 10);
+            long directorySize = readInt(tail, end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = readInt(tail, end + 16) & 0xFFFFFFFFL;
+            if (count == 0xFFFF || directorySize == 0xFFFFFFFFL ||
+                    directoryOffset == 0xFFFFFFFFL ||
+                    directoryOffset + directorySize > fileLength) {
+                //ZIP64
+                return null;
+            }
+            byte[] directory = new byte[(int) directorySize];
+            file.seek(directoryOffset);
+            file.readFully(directory);
+            Map<String, Long> offsets = new HashMap<String, Long>(count * 2);
+            int position = 0;
+            while (position + CENTRAL_HEADER_SIZE <= directory.length &&
+                    readInt(directory, position) == CENTRAL_HEADER_SIGNATURE) {
+                int nameLength = readShort(directory, position + 28);
+                int extraLength = readShort(directory, position + 30);
+                int commentLength = readShort(directory, position + 32);
+                long offset = readInt(directory, position + 42) & 0xFFFFFFFFL;
+                //ZipFile decodes the names as UTF-8 too
+                String name = new String(directory, 
+                        position + CENTRAL_HEADER_SIZE, nameLength, UTF8);
+                offsets.put(name, offset);
+                position += CENTRAL_HEADER_SIZE + 
+                        nameLength + extraLength + commentLength;
+            }
+            return offsets;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | 
+                (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | 
+                readShort(bytes, offset + 2) << 16;
+    }
+
+    /**
+     * The data of an entry, read from the archive, which is
+     * closed with the stream.
+     */
+    private static final class EntryInputStream extends InputStream {
+        private final RandomAccessFile file;
+        private long remaining;
+        private boolean dummyByte;
+        EntryInputStream(RandomAccessFile file, long length, 
+                boolean dummyByte) {
+            this.file = file;
+            this.remaining = length;
+            this.dummyByte = dummyByte;
+        }
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (dummyByte) {
+                    dummyByte = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int read = file.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
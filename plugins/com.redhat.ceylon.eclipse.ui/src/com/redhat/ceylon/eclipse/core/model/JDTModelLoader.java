@@ -26,23 +26,28 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.eclipse.core.internal.utils.Cache;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.IClasspathContainer;
 import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
@@ -110,6 +115,7 @@ import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
 import com.redhat.ceylon.eclipse.core.builder.CeylonProjectConfig;
 import com.redhat.ceylon.eclipse.core.classpath.CeylonClasspathUtil;
 import com.redhat.ceylon.eclipse.core.classpath.CeylonProjectModulesContainer;
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderLockStatistics.EntryPoint;
 import com.redhat.ceylon.eclipse.core.model.mirror.JDTClass;
 import com.redhat.ceylon.eclipse.core.model.mirror.JDTMethod;
 import com.redhat.ceylon.eclipse.core.model.mirror.SourceClass;
@@ -153,10 +159,36 @@ public class JDTModelLoader extends AbstractModelLoader {
 
     private ProblemReporter problemReporter;
     private LookupEnvironment lookupEnvironment;
-    private MissingTypeBinding missingTypeBinding;
+    private volatile MissingTypeBinding missingTypeBinding;
     private final Object lookupEnvironmentMutex = new Object();
     private boolean mustResetLookupEnvironment = false;
-    private Set<Module> modulesInClassPath = new HashSet<Module>();
+    private Set<Module> modulesInClassPath = 
+            Collections.newSetFromMap(new ConcurrentHashMap<Module, Boolean>());
+    private final ModelLoaderLockStatistics lockStatistics = 
+            new ModelLoaderLockStatistics();
+    private final ModelLoaderCacheStatistics cacheStatistics = 
+            new ModelLoaderCacheStatistics();
+    
+    private static final int MISSING_CLASS_MIRRORS_CACHE_SIZE = 10000;
+    
+    /**
+     * The names for which {@link #buildClassMirror} found no
+     * Java type, so that the lookups of absent classes, which
+     * are frequent when typechecking Java interop code, don't
+     * try all the package / class splits of the name again.
+     * Cleared each time the name environment or the lookup
+     * environment is recreated, and each time JDT reports a
+     * change to the project or to a project or a library of
+     * its classpath (see {@link #classpathChangeListener}).
+     */
+    @SuppressWarnings("serial")
+    private final Map<String, Boolean> missingClassMirrors = 
+            Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MISSING_CLASS_MIRRORS_CACHE_SIZE;
+                }
+            });
     private AnnotationLoader annotationLoader;
     private JDTModuleSourceMapper moduleSourceMapper;
     
@@ -178,7 +210,14 @@ public class JDTModelLoader extends AbstractModelLoader {
         this.timer = new Timer(false);
         internalCreate();
         if (javaProject != null) {
-            modelLoaders.put(javaProject.getProject(), new WeakReference<JDTModelLoader>(this));
+            synchronized (modelLoaders) {
+                modelLoaders.put(javaProject.getProject(), new WeakReference<JDTModelLoader>(this));
+                if (!classpathChangeListenerAdded) {
+                    JavaCore.addElementChangedListener(classpathChangeListener, 
+                            ElementChangedEvent.POST_CHANGE);
+                    classpathChangeListenerAdded = true;
+                }
+            }
         }
         annotationLoader = new AnnotationLoader(this, typeFactory);
     }
@@ -200,6 +239,7 @@ public class JDTModelLoader extends AbstractModelLoader {
         }
         try {
             ModelLoaderTypeRequestor requestor = new ModelLoaderTypeRequestor();
+            missingClassMirrors.clear();
             lookupEnvironment = new LookupEnvironment(requestor, compilerOptions, problemReporter, createSearchableEnvironment());
             requestor.initialize(lookupEnvironment);
             lookupEnvironment.mayTolerateMissingType = true;
@@ -233,7 +273,15 @@ public class JDTModelLoader extends AbstractModelLoader {
     
     // TODO : remove when the bug in the AbstractModelLoader is corrected
     @Override
-    public synchronized LazyPackage findOrCreatePackage(Module module, String pkgName) {
+    public LazyPackage findOrCreatePackage(Module module, String pkgName) {
+        long beforeLock = lockStatistics.beforeLock(this);
+        synchronized (this) {
+            lockStatistics.acquired(EntryPoint.FIND_OR_CREATE_PACKAGE, beforeLock);
+            return findOrCreatePackageInternal(module, pkgName);
+        }
+    }
+
+    private LazyPackage findOrCreatePackageInternal(Module module, String pkgName) {
         LazyPackage pkg = super.findOrCreatePackage(module, pkgName);
 
         if (pkg.getModule() != null 
@@ -283,7 +331,9 @@ public class JDTModelLoader extends AbstractModelLoader {
 
     @Override
     public boolean loadPackage(Module module, String packageName, boolean loadDeclarations) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.LOAD_PACKAGE, beforeLock);
             packageName = Util.quoteJavaKeywords(packageName);
             if(loadDeclarations && !loadedPackages.add(cacheKeyByModule(module, packageName))){
                 return true;
@@ -385,8 +435,11 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
 
     public void refreshNameEnvironment() {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.REFRESH_NAME_ENVIRONMENT, beforeLock);
             try {
+                missingClassMirrors.clear();
                 lookupEnvironment.nameEnvironment = createSearchableEnvironment();
             } catch (JavaModelException e) {
                 // TODO Auto-generated catch block
@@ -749,10 +802,22 @@ public class JDTModelLoader extends AbstractModelLoader {
     
     @Override
     public ClassMirror lookupNewClassMirror(Module module, String name) {
+        cacheStatistics.newClassMirrorLookup();
+        // the source declarations don't need the lock
+        String topLevelPartiallyQuotedName = getToplevelQualifiedName(name);
+        SourceDeclarationHolder sourceDeclaration = 
+                sourceDeclarations.get(topLevelPartiallyQuotedName);
+        if (sourceDeclaration != null) {  
+            cacheStatistics.sourceDeclarationHit();
+            return new SourceClass(sourceDeclaration);
+        }
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized(getLock()){
-            String topLevelPartiallyQuotedName = getToplevelQualifiedName(name);
-            if (sourceDeclarations.containsKey(topLevelPartiallyQuotedName)) {  
-                return new SourceClass(sourceDeclarations.get(topLevelPartiallyQuotedName));
+            lockStatistics.acquired(EntryPoint.LOOKUP_NEW_CLASS_MIRROR, beforeLock);
+            sourceDeclaration = sourceDeclarations.get(topLevelPartiallyQuotedName);
+            if (sourceDeclaration != null) {  
+                cacheStatistics.sourceDeclarationHit();
+                return new SourceClass(sourceDeclaration);
             }
             
             ClassMirror classMirror = buildClassMirror(JVMModuleUtil.quoteJavaKeywords(name));
@@ -783,9 +848,7 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
 
     public MissingTypeBinding getMissingTypeBinding() {
-        synchronized (getLock()) {
-            return missingTypeBinding;
-        }
+        return missingTypeBinding;
     }
     
     public static interface ActionOnResolvedType {
@@ -795,6 +858,57 @@ public class JDTModelLoader extends AbstractModelLoader {
     private static WeakHashMap<IProject, WeakReference<JDTModelLoader>> modelLoaders = new WeakHashMap<>();
     private static Cache archivesRootsToModelLoaderCache = new Cache(20);
     
+    private static boolean classpathChangeListenerAdded = false;
+    
+    /**
+     * Clears the missing class mirrors of the model loaders
+     * whose project, or a project or a library of whose 
+     * classpath, is affected by a JDT delta, since a type may 
+     * have been added to a required project or to a jar 
+     * without the lookup environment being reset.
+     */
+    private static final IElementChangedListener classpathChangeListener = 
+            new IElementChangedListener() {
+        @Override
+        public void elementChanged(ElementChangedEvent event) {
+            List<IJavaElement> changedElements = new ArrayList<>();
+            for (IJavaElementDelta projectDelta : event.getDelta().getAffectedChildren()) {
+                changedElements.add(projectDelta.getElement());
+                for (IJavaElementDelta rootDelta : projectDelta.getAffectedChildren()) {
+                    changedElements.add(rootDelta.getElement());
+                }
+            }
+            if (changedElements.isEmpty()) {
+                return;
+            }
+            List<JDTModelLoader> loaders = new ArrayList<>();
+            synchronized (modelLoaders) {
+                for (WeakReference<JDTModelLoader> loaderRef : modelLoaders.values()) {
+                    JDTModelLoader loader = loaderRef.get();
+                    if (loader != null) {
+                        loaders.add(loader);
+                    }
+                }
+            }
+            for (JDTModelLoader loader : loaders) {
+                loader.clearMissingClassMirrorsIfAffected(changedElements);
+            }
+        }
+    };
+    
+    private void clearMissingClassMirrorsIfAffected(List<IJavaElement> changedElements) {
+        if (javaProject == null || missingClassMirrors.isEmpty()) {
+            return;
+        }
+        for (IJavaElement element : changedElements) {
+            if (javaProject.equals(element.getJavaProject()) ||
+                    javaProject.isOnClasspath(element)) {
+                missingClassMirrors.clear();
+                return;
+            }
+        }
+    }
+    
     public static JDTModelLoader getModelLoader(IProject project) {
         JDTModelLoader modelLoader = null;
         WeakReference<JDTModelLoader> modelLoaderRef = modelLoaders.get(project);
@@ -1029,7 +1143,14 @@ public class JDTModelLoader extends AbstractModelLoader {
         }
         
         try {
+            // resets the lookup environment, and the missing 
+            // class mirrors, if some Java types have changed
             LookupEnvironment theLookupEnvironment = getLookupEnvironment();
+            if (missingClassMirrors.containsKey(name)) {
+                cacheStatistics.missingClassMirrorHit();
+                return null;
+            }
+            cacheStatistics.javaModelSearch();
             char[][] uncertainCompoundName = CharOperation.splitOn('.', name.toCharArray());
             int numberOfParts = uncertainCompoundName.length;
             char[][] compoundName = null;
@@ -1055,6 +1176,7 @@ public class JDTModelLoader extends AbstractModelLoader {
             }
 
             if (type == null) {
+                missingClassMirrors.put(name, Boolean.TRUE);
                 return null;
             }
 
@@ -1127,10 +1249,20 @@ public class JDTModelLoader extends AbstractModelLoader {
     @Override
     public Declaration convertToDeclaration(Module module, String typeName,
             DeclarationType declarationType) {
+        // the source declarations that are already resolved
+        // don't need the lock
+        String fqn = getToplevelQualifiedName(typeName);
+        SourceDeclarationHolder sourceDeclaration = sourceDeclarations.get(fqn);
+        if (sourceDeclaration != null && 
+                sourceDeclaration.getResolvedModelDeclaration() != null) {
+            return sourceDeclaration.getResolvedModelDeclaration();
+        }
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
-            String fqn = getToplevelQualifiedName(typeName);
-            if (sourceDeclarations.containsKey(fqn)) {
-                return sourceDeclarations.get(fqn).getModelDeclaration();
+            lockStatistics.acquired(EntryPoint.CONVERT_TO_DECLARATION, beforeLock);
+            sourceDeclaration = sourceDeclarations.get(fqn);
+            if (sourceDeclaration != null) {
+                return sourceDeclaration.getModelDeclaration();
             }
             try {
                 return super.convertToDeclaration(module, typeName, declarationType);
@@ -1309,7 +1441,15 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
     
     @Override
-    public synchronized void removeDeclarations(List<Declaration> declarations) {
+    public void removeDeclarations(List<Declaration> declarations) {
+        long beforeLock = lockStatistics.beforeLock(this);
+        synchronized (this) {
+            lockStatistics.acquired(EntryPoint.REMOVE_DECLARATIONS, beforeLock);
+            removeDeclarationsInternal(declarations);
+        }
+    }
+
+    private void removeDeclarationsInternal(List<Declaration> declarations) {
         List<Declaration> allDeclarations = new ArrayList<Declaration>(declarations.size());
         Set<Package> changedPackages = new HashSet<Package>();
         
@@ -1349,15 +1489,20 @@ public class JDTModelLoader extends AbstractModelLoader {
         }
     }
     
-    private final Map<String, SourceDeclarationHolder> sourceDeclarations = new TreeMap<String, SourceDeclarationHolder>();
+    /**
+     * Read without the lock by the lookups, so that the
+     * declarations coming from source don't wait for the
+     * loading of binary classes. Only modified with the lock.
+     */
+    private final Map<String, SourceDeclarationHolder> sourceDeclarations = new ConcurrentSkipListMap<String, SourceDeclarationHolder>();
     
-    public synchronized Set<String> getSourceDeclarations() {
+    public Set<String> getSourceDeclarations() {
         Set<String> declarations  = new HashSet<String>();
         declarations.addAll(sourceDeclarations.keySet());
         return declarations;
     }
     
-    public synchronized SourceDeclarationHolder getSourceDeclaration(String declarationName) {
+    public SourceDeclarationHolder getSourceDeclaration(String declarationName) {
         return sourceDeclarations.get(declarationName);
     }
 
@@ -1392,13 +1537,17 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
     
     public void setupSourceFileObjects(List<?> treeHolders) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.SETUP_SOURCE_FILE_OBJECTS, beforeLock);
             addSourcePhasedUnits(treeHolders, true);
         }
     }
 
     public void addSourcePhasedUnits(List<?> treeHolders, final boolean isSourceToCompile) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.ADD_SOURCE_PHASED_UNITS, beforeLock);
             for (Object treeHolder : treeHolders) {
                 if (treeHolder instanceof PhasedUnit) {
                     final PhasedUnit unit = (PhasedUnit) treeHolder;
@@ -1436,7 +1585,9 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
     
     public void clearCachesOnPackage(String packageName) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.CLEAR_CACHES_ON_PACKAGE, beforeLock);
             List<String> keysToRemove = new ArrayList<String>(classMirrorCache.size());
             for (Entry<String, ClassMirror> element : classMirrorCache.entrySet()) {
                 if (element.getValue() == null) {
@@ -1459,7 +1610,9 @@ public class JDTModelLoader extends AbstractModelLoader {
     }
 
     public void clearClassMirrorCacheForClass(JDTModule module, String classNameToRemove) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized (getLock()) {
+            lockStatistics.acquired(EntryPoint.CLEAR_CLASS_MIRROR_CACHE, beforeLock);
             classMirrorCache.remove(cacheKeyByModule(module, classNameToRemove));        
             mustResetLookupEnvironment = true;
         }
@@ -1498,6 +1651,22 @@ public class JDTModelLoader extends AbstractModelLoader {
         return super.makeLazyInterface(classMirror);
     }
     
+    /**
+     * The counters of the acquisitions of the lock of this
+     * model loader.
+     */
+    public ModelLoaderLockStatistics getLockStatistics() {
+        return lockStatistics;
+    }
+    
+    /**
+     * The counters of the class mirror lookups of this model
+     * loader.
+     */
+    public ModelLoaderCacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
     public TypeFactory getTypeFactory() {
         return (TypeFactory) typeFactory;
     }
@@ -1514,7 +1683,9 @@ public class JDTModelLoader extends AbstractModelLoader {
 
     @Override
     public LazyPackage findOrCreateModulelessPackage(String pkgName) {
+        long beforeLock = lockStatistics.beforeLock(getLock());
         synchronized(getLock()){
+            lockStatistics.acquired(EntryPoint.FIND_OR_CREATE_MODULELESS_PACKAGE, beforeLock);
             return (LazyPackage) findPackage(pkgName);
         }
     }
@@ -70,6 +70,7 @@ import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
 import com.redhat.ceylon.eclipse.core.classpath.CeylonLanguageModuleContainer;
 import com.redhat.ceylon.eclipse.core.classpath.CeylonProjectModulesContainer;
 import com.redhat.ceylon.eclipse.core.model.JDTModuleSourceMapper.ExternalModulePhasedUnits;
+import com.redhat.ceylon.eclipse.core.model.ModelLoaderLockStatistics.EntryPoint;
 import com.redhat.ceylon.eclipse.core.model.ModuleDependencies.TraversalAction;
 import com.redhat.ceylon.eclipse.core.typechecker.CrossProjectPhasedUnit;
 import com.redhat.ceylon.eclipse.core.typechecker.ExternalPhasedUnit;
@@ -431,7 +432,11 @@ public class JDTModule extends LazyModule {
     
     @Override
     public List<Package> getAllVisiblePackages() {
-        synchronized (getModelLoader()) {
+        JDTModelLoader modelLoader = getModelLoader();
+        ModelLoaderLockStatistics lockStatistics = modelLoader.getLockStatistics();
+        long beforeLock = lockStatistics.beforeLock(modelLoader);
+        synchronized (modelLoader) {
+            lockStatistics.acquired(EntryPoint.GET_ALL_PACKAGES, beforeLock);
             // force-load every package from the module if we can
             loadAllPackages(new HashSet<String>());
 
@@ -442,7 +447,11 @@ public class JDTModule extends LazyModule {
 
     @Override
     public List<Package> getAllReachablePackages() {
-        synchronized (getModelLoader()) {
+        JDTModelLoader modelLoader = getModelLoader();
+        ModelLoaderLockStatistics lockStatistics = modelLoader.getLockStatistics();
+        long beforeLock = lockStatistics.beforeLock(modelLoader);
+        synchronized (modelLoader) {
+            lockStatistics.acquired(EntryPoint.GET_ALL_PACKAGES, beforeLock);
             // force-load every package from the module if we can
             loadAllPackages(new HashSet<String>());
 
@@ -507,7 +516,10 @@ public class JDTModule extends LazyModule {
         }
         JDTModelLoader modelLoader = getModelLoader();
         if (modelLoader != null) {
+            ModelLoaderLockStatistics lockStatistics = modelLoader.getLockStatistics();
+            long beforeLock = lockStatistics.beforeLock(modelLoader);
             synchronized(modelLoader){
+                lockStatistics.acquired(EntryPoint.LOAD_PACKAGE_LIST, beforeLock);
                 String name = getNameAsString();
                 for(String pkg : jarPackages){
                     if(name.equals("ceylon.language") && ! pkg.startsWith("ceylon.language")) {
@@ -0,0 +1,122 @@
+package com.redhat.ceylon.eclipse.core.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the class mirror lookups that reach a
+ * {@link JDTModelLoader}, that is, the lookups that missed
+ * the class mirror cache of the model loader, and of how
+ * they were answered: from the source declarations, from
+ * the cache of missing class mirrors, or by searching the
+ * Java model.
+ *
+ * The counters only ever grow, so that several clients
+ * can measure an interval by taking a {@link #snapshot()}
+ * at its start and {@link #since subtracting} it at its
+ * end.
+ */
+public class ModelLoaderCacheStatistics {
+
+    private final AtomicLong newClassMirrorLookups = new AtomicLong();
+    private final AtomicLong sourceDeclarationHits = new AtomicLong();
+    private final AtomicLong missingClassMirrorHits = new AtomicLong();
+    private final AtomicLong javaModelSearches = new AtomicLong();
+
+    void newClassMirrorLookup() {
+        newClassMirrorLookups.incrementAndGet();
+    }
+
+    void sourceDeclarationHit() {
+        sourceDeclarationHits.incrementAndGet();
+    }
+
+    void missingClassMirrorHit() {
+        missingClassMirrorHits.incrementAndGet();
+    }
+
+    void javaModelSearch() {
+        javaModelSearches.incrementAndGet();
+    }
+
+    /**
+     * The lookups of class mirrors that were not in the
+     * class mirror cache of the model loader.
+     */
+    public long getNewClassMirrorLookups() {
+        return newClassMirrorLookups.get();
+    }
+
+    /**
+     * The lookups answered by a declaration of a source
+     * file of the project.
+     */
+    public long getSourceDeclarationHits() {
+        return sourceDeclarationHits.get();
+    }
+
+    /**
+     * The lookups of Java types answered by the cache of
+     * names known to be missing.
+     */
+    public long getMissingClassMirrorHits() {
+        return missingClassMirrorHits.get();
+    }
+
+    /**
+     * The lookups of Java types that had to search the
+     * Java model.
+     */
+    public long getJavaModelSearches() {
+        return javaModelSearches.get();
+    }
+
+    /**
+     * The proportion of the new class mirror lookups that
+     * didn't need to search the Java model, or -1 if there
+     * was no lookup.
+     */
+    public double getHitRate() {
+        long lookups = getSourceDeclarationHits() +
+                getMissingClassMirrorHits() +
+                getJavaModelSearches();
+        if (lookups == 0) {
+            return -1;
+        }
+        return (double) (lookups - getJavaModelSearches()) / lookups;
+    }
+
+    /**
+     * A copy of the current values of the counters.
+     */
+    public ModelLoaderCacheStatistics snapshot() {
+        ModelLoaderCacheStatistics snapshot = new ModelLoaderCacheStatistics();
+        snapshot.newClassMirrorLookups.set(getNewClassMirrorLookups());
+        snapshot.sourceDeclarationHits.set(getSourceDeclarationHits());
+        snapshot.missingClassMirrorHits.set(getMissingClassMirrorHits());
+        snapshot.javaModelSearches.set(getJavaModelSearches());
+        return snapshot;
+    }
+
+    /**
+     * The lookups counted since the given snapshot was
+     * taken, or all of them if it is null.
+     */
+    public ModelLoaderCacheStatistics since(ModelLoaderCacheStatistics snapshot) {
+        ModelLoaderCacheStatistics difference = snapshot();
+        if (snapshot != null) {
+            difference.newClassMirrorLookups.addAndGet(-snapshot.getNewClassMirrorLookups());
+            difference.sourceDeclarationHits.addAndGet(-snapshot.getSourceDeclarationHits());
+            difference.missingClassMirrorHits.addAndGet(-snapshot.getMissingClassMirrorHits());
+            difference.javaModelSearches.addAndGet(-snapshot.getJavaModelSearches());
+        }
+        return difference;
+    }
+
+    @Override
+    public String toString() {
+        return getNewClassMirrorLookups() + " new class mirror lookups, " +
+                getSourceDeclarationHits() + " source declarations, " +
+                getMissingClassMirrorHits() + " known missing, " +
+                getJavaModelSearches() + " Java model searches";
+    }
+}
@@ -0,0 +1,105 @@
+package com.redhat.ceylon.eclipse.core.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the acquisitions of the lock of a
+ * {@link JDTModelLoader}, per entry point, used to measure
+ * how much the hovers, the completion, the warmup job and
+ * the builder wait for each other.
+ *
+ * An acquisition is counted as contended when the thread had
+ * to wait for more than {@link #CONTENTION_THRESHOLD_NANOS}
+ * before entering the monitor. Reentrant acquisitions are
+ * not counted.
+ */
+public class ModelLoaderLockStatistics {
+
+    public enum EntryPoint {
+        LOAD_PACKAGE,
+        LOOKUP_NEW_CLASS_MIRROR,
+        CONVERT_TO_DECLARATION,
+        FIND_OR_CREATE_PACKAGE,
+        FIND_OR_CREATE_MODULELESS_PACKAGE,
+        SETUP_SOURCE_FILE_OBJECTS,
+        ADD_SOURCE_PHASED_UNITS,
+        REMOVE_DECLARATIONS,
+        CLEAR_CACHES_ON_PACKAGE,
+        CLEAR_CLASS_MIRROR_CACHE,
+        REFRESH_NAME_ENVIRONMENT,
+        LOAD_PACKAGE_LIST,
+        GET_ALL_PACKAGES
+    }
+
+    public static final long CONTENTION_THRESHOLD_NANOS = 100000;
+
+    private static final int SIZE = EntryPoint.values().length;
+
+    private final AtomicLongArray acquisitions = new AtomicLongArray(SIZE);
+    private final AtomicLongArray contentions = new AtomicLongArray(SIZE);
+    private final AtomicLongArray waitNanos = new AtomicLongArray(SIZE);
+
+    /**
+     * To be called right before entering the monitor of the
+     * given lock, and passed to {@link #acquired} right after.
+     */
+    public long beforeLock(Object lock) {
+        return Thread.holdsLock(lock) ? -1 : System.nanoTime();
+    }
+
+    /**
+     * Records an acquisition of the lock by the given entry
+     * point.
+     */
+    public void acquired(EntryPoint entryPoint, long beforeLock) {
+        if (beforeLock < 0) {
+            return;
+        }
+        long waited = System.nanoTime() - beforeLock;
+        int i = entryPoint.ordinal();
+        acquisitions.incrementAndGet(i);
+        waitNanos.addAndGet(i, waited);
+        if (waited > CONTENTION_THRESHOLD_NANOS) {
+            contentions.incrementAndGet(i);
+        }
+    }
+
+    public long getAcquisitions(EntryPoint entryPoint) {
+        return acquisitions.get(entryPoint.ordinal());
+    }
+
+    public long getContentions(EntryPoint entryPoint) {
+        return contentions.get(entryPoint.ordinal());
+    }
+
+    public long getWaitNanos(EntryPoint entryPoint) {
+        return waitNanos.get(entryPoint.ordinal());
+    }
+
+    public void reset() {
+        for (int i=0; i<SIZE; i++) {
+            acquisitions.set(i, 0);
+            contentions.set(i, 0);
+            waitNanos.set(i, 0);
+        }
+    }
+
+    /**
+     * One line per entry point that acquired the lock:
+     * acquisitions, contended acquisitions and total wait.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (EntryPoint entryPoint: EntryPoint.values()) {
+            long count = getAcquisitions(entryPoint);
+            if (count > 0) {
+                sb.append(entryPoint.name().toLowerCase())
+                  .append(": ").append(count).append(" acquisitions, ")
+                  .append(getContentions(entryPoint)).append(" contended, ")
+                  .append(getWaitNanos(entryPoint) / 1000000).append(" ms waiting\n");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -4,6 +4,7 @@ import org.antlr.runtime.CommonTokenStream;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 
 import com.redhat.ceylon.compiler.java.loader.UnknownTypeCollector;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
@@ -12,6 +13,7 @@ import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
+import com.redhat.ceylon.eclipse.core.typechecker.DeclarationSignatures;
 import com.redhat.ceylon.eclipse.core.typechecker.ProjectPhasedUnit;
 import com.redhat.ceylon.eclipse.core.vfs.ResourceVirtualFile;
 import com.redhat.ceylon.eclipse.ui.ceylon.model.delta.CompilationUnitDelta;
@@ -47,66 +49,103 @@ public class ProjectSourceFile extends SourceFile implements IResourceAware {
         return getPhasedUnit().getSourceFolderResource();
     }
     
-    public CompilationUnitDelta buildDeltaAgainstModel() {
-        try {
-            final ProjectPhasedUnit modelPhaseUnit = getPhasedUnit();
-            if (modelPhaseUnit != null) {
-                final ResourceVirtualFile virtualSrcFile = ResourceVirtualFile.createResourceVirtualFile(modelPhaseUnit.getSourceFileResource());
-                final ResourceVirtualFile virtualSrcDir = ResourceVirtualFile.createResourceVirtualFile(modelPhaseUnit.getSourceFolderResource());
-                final TypeChecker currentTypechecker = modelPhaseUnit.getTypeChecker();
-                final ModuleManager currentModuleManager = currentTypechecker.getPhasedUnits().getModuleManager();
-                final ModuleSourceMapper currentModuleSourceMapper = currentTypechecker.getPhasedUnits().getModuleSourceMapper();
-                Package singleSourceUnitPackage = new SingleSourceUnitPackage(getPackage(), virtualSrcFile.getPath());
-                PhasedUnit lastPhasedUnit = new CeylonSourceParser<PhasedUnit>() {
-                    
-                    @Override
-                    protected String getCharset() {
-                        try {
-                            return modelPhaseUnit.getProjectResource().getDefaultCharset();
-                        }
-                        catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                    
-                    @SuppressWarnings("unchecked")
+    private String lastTypecheckedHash;
+    private long lastTypecheckedStamp = IResource.NULL_STAMP;
+
+    /*
+     * Typechecks the current content of the source file
+     * against the model, without modifying the model.
+     * Returns null if the content has errors.
+     */
+    private PhasedUnit typecheckCurrentContent() {
+        final ProjectPhasedUnit modelPhaseUnit = getPhasedUnit();
+        if (modelPhaseUnit == null) {
+            return null;
+        }
+        final ResourceVirtualFile virtualSrcFile = ResourceVirtualFile.createResourceVirtualFile(modelPhaseUnit.getSourceFileResource());
+        final ResourceVirtualFile virtualSrcDir = ResourceVirtualFile.createResourceVirtualFile(modelPhaseUnit.getSourceFolderResource());
+        final TypeChecker currentTypechecker = modelPhaseUnit.getTypeChecker();
+        final ModuleManager currentModuleManager = currentTypechecker.getPhasedUnits().getModuleManager();
+        final ModuleSourceMapper currentModuleSourceMapper = currentTypechecker.getPhasedUnits().getModuleSourceMapper();
+        Package singleSourceUnitPackage = new SingleSourceUnitPackage(getPackage(), virtualSrcFile.getPath());
+        PhasedUnit lastPhasedUnit = new CeylonSourceParser<PhasedUnit>() {
+            
+            @Override
+            protected String getCharset() {
+                try {
+                    return modelPhaseUnit.getProjectResource().getDefaultCharset();
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            
+            @SuppressWarnings("unchecked")
+            @Override
+            protected PhasedUnit createPhasedUnit(CompilationUnit cu, Package pkg, CommonTokenStream tokenStream) {
+                return new PhasedUnit(virtualSrcFile, 
+                        virtualSrcDir, cu, pkg, 
+                        currentModuleManager, 
+                        currentModuleSourceMapper,
+                        currentTypechecker.getContext(),
+                        tokenStream.getTokens()) {
                     @Override
-                    protected PhasedUnit createPhasedUnit(CompilationUnit cu, Package pkg, CommonTokenStream tokenStream) {
-                        return new PhasedUnit(virtualSrcFile, 
-                                virtualSrcDir, cu, pkg, 
-                                currentModuleManager, 
-                                currentModuleSourceMapper,
-                                currentTypechecker.getContext(),
-                                tokenStream.getTokens()) {
-                            @Override
-                            protected boolean reuseExistingDescriptorModels() {
-                                return true;
-                            }
-                        };
+                    protected boolean reuseExistingDescriptorModels() {
+                        return true;
                     }
-                }.parseFileToPhasedUnit(
-                        currentModuleManager, 
-                        currentTypechecker, 
-                        virtualSrcFile, 
-                        virtualSrcDir, 
-                        singleSourceUnitPackage);
+                };
+            }
+        }.parseFileToPhasedUnit(
+                currentModuleManager, 
+                currentTypechecker, 
+                virtualSrcFile, 
+                virtualSrcDir, 
+                singleSourceUnitPackage);
 
-                if (lastPhasedUnit != null) {
-                    lastPhasedUnit.validateTree();
-                    lastPhasedUnit.visitSrcModulePhase();
-                    lastPhasedUnit.visitRemainingModulePhase();
-                    lastPhasedUnit.scanDeclarations();
-                    lastPhasedUnit.scanTypeDeclarations();
-                    lastPhasedUnit.validateRefinement();
-                    lastPhasedUnit.analyseTypes();
-                    lastPhasedUnit.analyseFlow();
-                    UnknownTypeCollector utc = new UnknownTypeCollector();
-                    lastPhasedUnit.getCompilationUnit().visit(utc);
+        if (lastPhasedUnit != null) {
+            lastPhasedUnit.validateTree();
+            lastPhasedUnit.visitSrcModulePhase();
+            lastPhasedUnit.visitRemainingModulePhase();
+            lastPhasedUnit.scanDeclarations();
+            lastPhasedUnit.scanTypeDeclarations();
+            lastPhasedUnit.validateRefinement();
+            lastPhasedUnit.analyseTypes();
+            lastPhasedUnit.analyseFlow();
+            UnknownTypeCollector utc = new UnknownTypeCollector();
+            lastPhasedUnit.getCompilationUnit().visit(utc);
 
-                    if (lastPhasedUnit.getCompilationUnit().getErrors().isEmpty()) {
-                        return deltaBuilderFactory.buildDeltas(modelPhaseUnit, lastPhasedUnit);
-                    }
-                }
+            if (!lastPhasedUnit.getCompilationUnit().getErrors().isEmpty()) {
+                lastPhasedUnit = null;
+            }
+        }
+        return lastPhasedUnit;
+    }
+
+    /*
+     * Returns the hash of the declaration signatures of the
+     * current content of the source file, typechecking it
+     * only if it changed since the last call. Only the hash
+     * is kept, not the typechecked unit.
+     */
+    private synchronized String currentDeclarationSignaturesHash() {
+        ProjectPhasedUnit modelPhaseUnit = getPhasedUnit();
+        if (modelPhaseUnit == null) {
+            return null;
+        }
+        long stamp = modelPhaseUnit.getSourceFileResource().getModificationStamp();
+        if (stamp != IResource.NULL_STAMP && stamp == lastTypecheckedStamp) {
+            return lastTypecheckedHash;
+        }
+        lastTypecheckedHash = DeclarationSignatures.hash(typecheckCurrentContent());
+        lastTypecheckedStamp = stamp;
+        return lastTypecheckedHash;
+    }
+    
+    public CompilationUnitDelta buildDeltaAgainstModel() {
+        try {
+            PhasedUnit lastPhasedUnit = typecheckCurrentContent();
+            if (lastPhasedUnit != null) {
+                return deltaBuilderFactory.buildDeltas(getPhasedUnit(), lastPhasedUnit);
             }
         } catch(Exception e) {
         } catch(ceylon.language.AssertionError e) {
@@ -115,4 +154,22 @@ public class ProjectSourceFile extends SourceFile implements IResourceAware {
         
         return null;
     }
+
+    /**
+     * Returns true if the current content of the source file
+     * has the same declaration signatures as the unit in the
+     * model, so that the units depending on it are not
+     * affected by the changes.
+     */
+    public boolean hasSameDeclarationSignaturesAsModel() {
+        try {
+            String modelHash = getPhasedUnit().getDeclarationSignaturesHash();
+            return modelHash != null && 
+                    modelHash.equals(currentDeclarationSignaturesHash());
+        } catch(Exception e) {
+        } catch(ceylon.language.AssertionError e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
 }
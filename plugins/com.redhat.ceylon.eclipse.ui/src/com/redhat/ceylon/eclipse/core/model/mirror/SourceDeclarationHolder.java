@@ -9,7 +9,7 @@ public class SourceDeclarationHolder {
     
     private PhasedUnit phasedUnit;
     private Tree.Declaration astDeclaration;
-    private Declaration modelDeclaration = null;
+    private volatile Declaration modelDeclaration = null;
     private boolean isSourceToCompile = true;
 
     public SourceDeclarationHolder(PhasedUnit phasedUnit, Tree.Declaration astDeclaration, boolean isSourceToCompile) {
@@ -26,6 +26,15 @@ public class SourceDeclarationHolder {
         return astDeclaration;
     }
 
+    /**
+     * Returns the model declaration if it was already
+     * resolved, without scanning the declarations of the
+     * phased unit, or null.
+     */
+    public Declaration getResolvedModelDeclaration() {
+        return modelDeclaration;
+    }
+
     public Declaration getModelDeclaration() {
         if (modelDeclaration != null) {
             return modelDeclaration;
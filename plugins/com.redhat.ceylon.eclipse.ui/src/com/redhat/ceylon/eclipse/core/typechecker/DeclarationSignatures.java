@@ -0,0 +1,245 @@
+package com.redhat.ceylon.eclipse.core.typechecker;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.model.typechecker.model.Annotation;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Functional;
+import com.redhat.ceylon.model.typechecker.model.Generic;
+import com.redhat.ceylon.model.typechecker.model.Method;
+import com.redhat.ceylon.model.typechecker.model.MethodOrValue;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.ParameterList;
+import com.redhat.ceylon.model.typechecker.model.ProducedType;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+
+/**
+ * Computes a hash of the signatures of the declarations of
+ * a typechecked unit that are visible from other units: the
+ * toplevel declarations, and recursively their shared
+ * members, with their annotations and their arguments, their
+ * type parameters and their constraints and defaults, their
+ * types, supertypes, enumerated and self types, and their
+ * parameters, including those of the functional parameters.
+ * The invocation of an annotation constructor is part of its
+ * signature, since the backend inlines it at every use site
+ * of the annotation.
+ *
+ * Two versions of a unit with the same hash can only differ
+ * in the implementation of their declarations (for example
+ * inside a function body), so the units depending on them
+ * don't need to be typechecked or compiled again.
+ */
+public class DeclarationSignatures {
+
+    /**
+     * Returns the hash of the signatures of the given unit,
+     * or null if it is not fully typechecked.
+     */
+    public static String hash(PhasedUnit phasedUnit) {
+        if (phasedUnit == null || !phasedUnit.isFullyTyped()) {
+            return null;
+        }
+        final List<String> signatures = new ArrayList<String>();
+        for (Declaration d: phasedUnit.getUnit().getDeclarations()) {
+            if (d.isToplevel()) {
+                appendSignatures(d, signatures);
+            }
+        }
+        final List<CommonToken> tokens = phasedUnit.getTokens();
+        phasedUnit.getCompilationUnit().visit(new Visitor() {
+            @Override
+            public void visit(Tree.AnyMethod that) {
+                Method m = that.getDeclarationModel();
+                if (m != null && m.isAnnotation()) {
+                    signatures.add(annotationConstructorSignature(that, tokens));
+                }
+                super.visit(that);
+            }
+        });
+        //the order of the declarations doesn't matter
+        Collections.sort(signatures);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String signature: signatures) {
+                digest.update(signature.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b: digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                   .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private static void appendSignatures(Declaration d, List<String> signatures) {
+        StringBuilder signature = new StringBuilder();
+        signature.append(d.getClass().getSimpleName())
+                .append(' ')
+                .append(d.getQualifiedNameString());
+        if (d.isShared()) signature.append(" shared");
+        if (d.isFormal()) signature.append(" formal");
+        if (d.isDefault()) signature.append(" default");
+        if (d.isActual()) signature.append(" actual");
+        for (Annotation annotation: d.getAnnotations()) {
+            appendAnnotation(annotation, signature);
+        }
+        if (d instanceof Generic) {
+            signature.append(" <");
+            for (TypeParameter tp: ((Generic) d).getTypeParameters()) {
+                signature.append(tp.getName());
+                if (tp.isCovariant()) signature.append(" out");
+                if (tp.isContravariant()) signature.append(" in");
+                if (tp.isDefaulted()) {
+                    appendType(" =", tp.getDefaultTypeArgument(), signature);
+                }
+                appendTypes(" satisfies", tp.getSatisfiedTypes(), signature);
+                appendTypes(" of", tp.getCaseTypes(), signature);
+                signature.append(',');
+            }
+            signature.append('>');
+        }
+        if (d instanceof TypedDeclaration) {
+            TypedDeclaration td = (TypedDeclaration) d;
+            appendType(" :", td.getType(), signature);
+            if (td.isVariable()) signature.append(" variable");
+        }
+        if (d instanceof Functional) {
+            appendParameterLists((Functional) d, signature);
+        }
+        if (d instanceof TypeDeclaration) {
+            TypeDeclaration td = (TypeDeclaration) d;
+            appendType(" extends", td.getExtendedType(), signature);
+            appendTypes(" satisfies", td.getSatisfiedTypes(), signature);
+            appendTypes(" of", td.getCaseTypes(), signature);
+            appendType(" self", td.getSelfType(), signature);
+        }
+        signatures.add(signature.toString());
+        for (Declaration member: d.getMembers()) {
+            if (member.isShared()) {
+                appendSignatures(member, signatures);
+            }
+        }
+    }
+
+    /*
+     * The annotation constructor is invoked at the use sites
+     * of its annotations, so the whole text of its definition
+     * (the constructor called and its argument values) is part
+     * of its signature. Only the whitespace and the comments
+     * are ignored.
+     */
+    private static String annotationConstructorSignature(Tree.AnyMethod that,
+            List<CommonToken> tokens) {
+        StringBuilder signature = new StringBuilder("annotation constructor ");
+        signature.append(that.getDeclarationModel().getQualifiedNameString());
+        Integer start = that.getStartIndex();
+        Integer stop = that.getStopIndex();
+        if (tokens == null || start == null || stop == null) {
+            //can't tell what changed, so never match
+            signature.append(' ').append(System.identityHashCode(that));
+            return signature.toString();
+        }
+        for (CommonToken token: tokens) {
+            if (token.getStartIndex() > stop) {
+                break;
+            }
+            if (token.getStartIndex() >= start &&
+                    token.getChannel() != Token.HIDDEN_CHANNEL) {
+                signature.append(' ').append(token.getText());
+            }
+        }
+        return signature.toString();
+    }
+
+    private static void appendAnnotation(Annotation annotation,
+            StringBuilder signature) {
+        signature.append(" @").append(annotation.getName());
+        List<String> positionalArguments = annotation.getPositionalArguments();
+        Map<String, String> namedArguments = annotation.getNamedArguments();
+        if (positionalArguments != null && !positionalArguments.isEmpty()) {
+            signature.append('(');
+            for (String argument: positionalArguments) {
+                signature.append(argument).append(',');
+            }
+            signature.append(')');
+        }
+        if (namedArguments != null && !namedArguments.isEmpty()) {
+            signature.append('{');
+            //the order of the named arguments doesn't matter
+            for (Map.Entry<String, String> argument: 
+                    new TreeMap<String, String>(namedArguments).entrySet()) {
+                signature.append(argument.getKey()).append('=')
+                        .append(argument.getValue()).append(';');
+            }
+            signature.append('}');
+        }
+    }
+
+    /*
+     * The parameters of the parameters of functional type are
+     * part of the signature, since only their return type is
+     * the type of their model.
+     */
+    private static void appendParameterLists(Functional f, 
+            StringBuilder signature) {
+        List<ParameterList> parameterLists = f.getParameterLists();
+        if (parameterLists != null) {
+            for (ParameterList pl: parameterLists) {
+                signature.append(" (");
+                for (Parameter p: pl.getParameters()) {
+                    signature.append(p.getName());
+                    MethodOrValue model = p.getModel();
+                    if (model != null) {
+                        appendType(" :", model.getType(), signature);
+                        if (model instanceof Functional) {
+                            appendParameterLists((Functional) model, signature);
+                        }
+                    }
+                    if (p.isDefaulted()) signature.append(" =");
+                    if (p.isSequenced()) signature.append(" *");
+                    signature.append(',');
+                }
+                signature.append(')');
+            }
+        }
+    }
+
+    private static void appendTypes(String prefix, List<ProducedType> types,
+            StringBuilder signature) {
+        if (types != null) {
+            for (ProducedType type: types) {
+                appendType(prefix, type, signature);
+            }
+        }
+    }
+
+    private static void appendType(String prefix, ProducedType type,
+            StringBuilder signature) {
+        if (type != null) {
+            signature.append(prefix)
+                    .append(' ')
+                    .append(type.getProducedTypeQualifiedName());
+        }
+    }
+}
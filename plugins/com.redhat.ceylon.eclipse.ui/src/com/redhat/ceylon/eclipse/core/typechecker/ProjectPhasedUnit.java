@@ -27,6 +27,7 @@ import com.redhat.ceylon.model.typechecker.util.ModuleManager;
 public class ProjectPhasedUnit extends IdePhasedUnit {
     private IFolder sourceFolderResource;
     private WeakHashMap<EditedPhasedUnit, String> workingCopies = new WeakHashMap<EditedPhasedUnit, String>();
+    private String declarationSignaturesHash;
     
     public ProjectPhasedUnit(ResourceVirtualFile unitFile, ResourceVirtualFile srcDir,
             CompilationUnit cu, Package p, ModuleManager moduleManager,
@@ -55,6 +56,20 @@ public class ProjectPhasedUnit extends IdePhasedUnit {
         return sourceFolderResource.getProject();
     }
 
+    /**
+     * Returns the hash of the signatures of the declarations
+     * of this unit visible from other units, or null if this
+     * unit is not fully typechecked yet.
+     * 
+     * @see DeclarationSignatures
+     */
+    public synchronized String getDeclarationSignaturesHash() {
+        if (declarationSignaturesHash == null) {
+            declarationSignaturesHash = DeclarationSignatures.hash(this);
+        }
+        return declarationSignaturesHash;
+    }
+
     @Override
     protected TypecheckerUnit newUnit() {
         return new ProjectSourceFile(this);
@@ -0,0 +1,85 @@
+package com.redhat.ceylon.eclipse.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * A toolbar action of a view which asks for a file and
+ * writes CSV to it, such as the export of the build and
+ * the reconcile timings.
+ */
+public abstract class CsvExportAction extends Action {
+
+    private final IWorkbenchPart part;
+    private final String fileName;
+    private final String title;
+
+    /**
+     * @param part the view
+     * @param toolTip the tooltip of the action
+     * @param fileName the file name proposed by the dialog
+     * @param title the title of the error dialog
+     */
+    protected CsvExportAction(IWorkbenchPart part, String toolTip,
+            String fileName, String title) {
+        super("Export as CSV...");
+        this.part = part;
+        this.fileName = fileName;
+        this.title = title;
+        setToolTipText(toolTip);
+        setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+                .getImageDescriptor(ISharedImages.IMG_ETOOL_SAVE_EDIT));
+    }
+
+    /**
+     * Writes the exported lines, including the header.
+     */
+    protected abstract void writeCsv(Writer writer) throws IOException;
+
+    @Override
+    public void run() {
+        Shell shell = part.getSite().getShell();
+        FileDialog dialog = new FileDialog(shell, SWT.SAVE);
+        dialog.setFilterExtensions(new String[] { "*.csv" });
+        dialog.setFileName(fileName);
+        dialog.setOverwrite(true);
+        String path = dialog.open();
+        if (path == null) {
+            return;
+        }
+        try {
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(path), "UTF-8");
+            try {
+                writeCsv(writer);
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (IOException e) {
+            MessageDialog.openError(shell, title, e.getMessage());
+        }
+    }
+
+    /**
+     * The given value as a CSV field, quoted if needed.
+     */
+    public static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
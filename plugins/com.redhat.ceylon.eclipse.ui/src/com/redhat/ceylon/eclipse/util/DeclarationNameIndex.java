@@ -0,0 +1,405 @@
+package com.redhat.ceylon.eclipse.util;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.model.ICeylonModelListener;
+import com.redhat.ceylon.eclipse.core.model.JDTModule;
+import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Package;
+
+/**
+ * Index of the names of the declarations shown by the open
+ * declaration dialog.
+ *
+ * The declarations are found by the lowercase prefix of
+ * their name, and by the camel humps of their name, that is,
+ * by their lowercase initial followed by any of the upper
+ * case letters of the rest of their name:
+ * <ul>
+ * <li>the units of the projects are indexed by the builder
+ *     each time they are typechecked, and the units that the
+ *     builder didn't index (for example after a restart) the
+ *     first time they are asked for,</li>
+ * <li>the modules of the archives are indexed the first time
+ *     they are asked for, and kept as long as the module is
+ *     part of the model, and their members are only indexed
+ *     the first time they are asked for, and</li>
+ * <li>the indexes that no longer belong to the model of any
+ *     project are dropped each time a model is parsed.</li>
+ * </ul>
+ * The units of a project are recorded by the path of their
+ * file, so that a unit replaced by a new typecheck of its
+ * file is dropped along with its declarations.
+ */
+public class DeclarationNameIndex implements ICeylonModelListener {
+
+    private static DeclarationNameIndex instance;
+
+    private static synchronized DeclarationNameIndex getInstance() {
+        if (instance == null) {
+            instance = new DeclarationNameIndex();
+            CeylonBuilder.addModelListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Declarations by lowercase name and by camel humps.
+     */
+    private static final class Names {
+        private final TreeMap<String, List<Declaration>> byName =
+                new TreeMap<String, List<Declaration>>();
+        private final Map<String, List<Declaration>> byHump =
+                new HashMap<String, List<Declaration>>();
+
+        void add(Declaration dec) {
+            String name = dec.getName();
+            add(byName, key(name), dec);
+            for (String hump: humps(name)) {
+                add(byHump, hump, dec);
+            }
+        }
+
+        void remove(Declaration dec) {
+            String name = dec.getName();
+            remove(byName, key(name), dec);
+            for (String hump: humps(name)) {
+                remove(byHump, hump, dec);
+            }
+        }
+
+        private static void add(Map<String, List<Declaration>> map,
+                String key, Declaration dec) {
+            List<Declaration> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<Declaration>(1);
+                map.put(key, list);
+            }
+            list.add(dec);
+        }
+
+        private static void remove(Map<String, List<Declaration>> map,
+                String key, Declaration dec) {
+            List<Declaration> list = map.get(key);
+            if (list != null) {
+                for (Iterator<Declaration> it = list.iterator(); it.hasNext();) {
+                    if (it.next() == dec) {
+                        it.remove();
+                        break;
+                    }
+                }
+                if (list.isEmpty()) {
+                    map.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Adds the declarations that may match the given
+         * pattern of the dialog to the given list.
+         */
+        void addCandidates(String pattern, List<Declaration> result) {
+            if (!isSimpleName(pattern)) {
+                for (List<Declaration> list: byName.values()) {
+                    result.addAll(list);
+                }
+                return;
+            }
+            String prefix = key(pattern);
+            Set<Declaration> found = null;
+            String hump = hump(pattern);
+            if (hump != null) {
+                List<Declaration> list = byHump.get(hump);
+                if (list != null) {
+                    found = Collections.newSetFromMap(
+                            new IdentityHashMap<Declaration, Boolean>());
+                    found.addAll(list);
+                    result.addAll(list);
+                }
+            }
+            for (Map.Entry<String, List<Declaration>> entry:
+                    byName.tailMap(prefix).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                for (Declaration dec: entry.getValue()) {
+                    if (found == null || !found.contains(dec)) {
+                        result.add(dec);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static String initial(String name) {
+        return key(name.substring(0, name.offsetByCodePoints(0, 1)));
+    }
+
+    /**
+     * The camel humps of the given name: its lowercase initial
+     * followed by each of the distinct upper case letters of
+     * the rest of the name.
+     */
+    private static Set<String> humps(String name) {
+        if (name == null || name.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String initial = initial(name);
+        Set<String> humps = new HashSet<String>();
+        for (int i = name.offsetByCodePoints(0, 1); i < name.length();) {
+            int cp = name.codePointAt(i);
+            if (Character.isUpperCase(cp)) {
+                humps.add(initial + new String(Character.toChars(cp)));
+            }
+            i += Character.charCount(cp);
+        }
+        return humps;
+    }
+
+    /**
+     * The camel hump that a name must have to match the given
+     * pattern without matching it as a prefix: a camel case
+     * match skips to the upper case letters of the name, so
+     * the first upper case letter after the initial of the
+     * pattern must be one of them. Null if the pattern has no
+     * upper case letter after its initial, and then only
+     * matches the names it is a prefix of.
+     */
+    private static String hump(String pattern) {
+        for (int i = pattern.offsetByCodePoints(0, 1); i < pattern.length();) {
+            int cp = pattern.codePointAt(i);
+            if (Character.isUpperCase(cp)) {
+                return initial(pattern) + new String(Character.toChars(cp));
+            }
+            i += Character.charCount(cp);
+        }
+        return null;
+    }
+
+    private static boolean isSimpleName(String pattern) {
+        return pattern != null &&
+                !pattern.isEmpty() &&
+                pattern.indexOf('.')<0 &&
+                pattern.indexOf('*')<0 &&
+                pattern.indexOf('?')<0;
+    }
+
+    private static final class UnitEntry {
+        final PhasedUnit unit;
+        final List<Declaration> declarations =
+                new ArrayList<Declaration>();
+        UnitEntry(PhasedUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    private static final class SourceIndex {
+        final Map<String, UnitEntry> units =
+                new HashMap<String, UnitEntry>();
+        final Names names = new Names();
+
+        void index(PhasedUnit unit) {
+            String path = unit.getUnitFile().getPath();
+            remove(units.get(path));
+            UnitEntry entry = new UnitEntry(unit);
+            for (Declaration dec: unit.getDeclarations()) {
+                if (dec.getName()!=null) {
+                    entry.declarations.add(dec);
+                    names.add(dec);
+                }
+            }
+            units.put(path, entry);
+        }
+
+        void remove(UnitEntry entry) {
+            if (entry != null) {
+                for (Declaration dec: entry.declarations) {
+                    names.remove(dec);
+                }
+            }
+        }
+    }
+
+    private static final class ModuleIndex {
+        final JDTModule module;
+        Names toplevels;
+        List<Declaration> toplevelList;
+        Names members;
+        ModuleIndex(JDTModule module) {
+            this.module = module;
+        }
+    }
+
+    private final Map<IProject, SourceIndex> sourceIndexes =
+            new HashMap<IProject, SourceIndex>();
+    private final Map<String, ModuleIndex> moduleIndexes =
+            new HashMap<String, ModuleIndex>();
+
+    private DeclarationNameIndex() {}
+
+    private SourceIndex getSourceIndex(IProject project) {
+        SourceIndex index = sourceIndexes.get(project);
+        if (index == null) {
+            index = new SourceIndex();
+            sourceIndexes.put(project, index);
+        }
+        return index;
+    }
+
+    /**
+     * Indexes the declarations of the given unit of the
+     * given project, replacing the previous unit of the same
+     * file.
+     */
+    public static void index(IProject project, PhasedUnit phasedUnit) {
+        DeclarationNameIndex index = getInstance();
+        synchronized (index) {
+            index.getSourceIndex(project).index(phasedUnit);
+        }
+    }
+
+    /**
+     * Returns the declarations of the given units of the
+     * given project that may match the given pattern of the
+     * dialog. Only the units that are not indexed yet, or
+     * that were replaced since they were indexed, are
+     * indexed again.
+     */
+    public static List<Declaration> getSourceDeclarations(
+            IProject project, List<? extends PhasedUnit> units,
+            String pattern) {
+        DeclarationNameIndex index = getInstance();
+        synchronized (index) {
+            SourceIndex sourceIndex = index.getSourceIndex(project);
+            Set<String> currentPaths = new HashSet<String>();
+            for (PhasedUnit unit: units) {
+                String path = unit.getUnitFile().getPath();
+                currentPaths.add(path);
+                UnitEntry entry = sourceIndex.units.get(path);
+                if (entry == null || entry.unit != unit) {
+                    sourceIndex.index(unit);
+                }
+            }
+            for (Iterator<Map.Entry<String, UnitEntry>> it =
+                    sourceIndex.units.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, UnitEntry> entry = it.next();
+                if (!currentPaths.contains(entry.getKey())) {
+                    sourceIndex.remove(entry.getValue());
+                    it.remove();
+                }
+            }
+            List<Declaration> result = new ArrayList<Declaration>();
+            sourceIndex.names.addCandidates(pattern, result);
+            return result;
+        }
+    }
+
+    /**
+     * Returns the declarations of the packages of the given
+     * module that may match the given pattern of the dialog,
+     * along with their members (recursively) if requested.
+     */
+    public static List<Declaration> getModuleDeclarations(
+            String moduleIdentifier, JDTModule module,
+            String pattern, boolean includeMembers) {
+        DeclarationNameIndex index = getInstance();
+        synchronized (index) {
+            ModuleIndex moduleIndex = index.moduleIndexes.get(moduleIdentifier);
+            if (moduleIndex == null || moduleIndex.module != module) {
+                moduleIndex = new ModuleIndex(module);
+                moduleIndex.toplevels = new Names();
+                moduleIndex.toplevelList = new ArrayList<Declaration>();
+                for (Package pack: new ArrayList<Package>(module.getPackages())) {
+                    for (Declaration dec: pack.getMembers()) {
+                        if (dec.getName()!=null) {
+                            moduleIndex.toplevels.add(dec);
+                            moduleIndex.toplevelList.add(dec);
+                        }
+                    }
+                }
+                index.moduleIndexes.put(moduleIdentifier, moduleIndex);
+            }
+            List<Declaration> result = new ArrayList<Declaration>();
+            moduleIndex.toplevels.addCandidates(pattern, result);
+            if (includeMembers) {
+                if (moduleIndex.members == null) {
+                    Names members = new Names();
+                    for (Declaration dec: moduleIndex.toplevelList) {
+                        addMembers(dec, members);
+                    }
+                    moduleIndex.members = members;
+                }
+                moduleIndex.members.addCandidates(pattern, result);
+            }
+            return result;
+        }
+    }
+
+    private static void addMembers(Declaration dec, Names members) {
+        if (dec instanceof ClassOrInterface) {
+            try {
+                for (Declaration member:
+                        new ArrayList<Declaration>(dec.getMembers())) {
+                    if (member.getName()!=null) {
+                        members.add(member);
+                        addMembers(member, members);
+                    }
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Drops the indexes that belong to the previous model
+     * of the project.
+     */
+    @Override
+    public synchronized void modelParsed(IProject project) {
+        sourceIndexes.remove(project);
+        Set<Module> currentModules =
+                Collections.newSetFromMap(
+                        new IdentityHashMap<Module, Boolean>());
+        for (IProject p: getProjects()) {
+            TypeChecker typeChecker = getProjectTypeChecker(p);
+            if (typeChecker!=null) {
+                currentModules.addAll(typeChecker.getContext()
+                        .getModules().getListOfModules());
+            }
+        }
+        for (Iterator<ModuleIndex> it =
+                moduleIndexes.values().iterator(); it.hasNext();) {
+            if (!currentModules.contains(it.next().module)) {
+                it.remove();
+            }
+        }
+        Set<IProject> currentProjects = new HashSet<IProject>(getProjects());
+        sourceIndexes.keySet().retainAll(currentProjects);
+    }
+}
@@ -117,7 +117,17 @@ public class Highlights  {
     }
     
     public static TextAttribute getColoring(CommonToken token) {
-        switch (token.getType()) {
+        return getColoring(token, token.getType());
+    }
+    
+    /**
+     * The coloring of the given token, if it has the given
+     * type, which may have been assigned by the parser to 
+     * a copy of the token.
+     */
+    public static TextAttribute getColoring(CommonToken token, 
+            int type) {
+        switch (type) {
             case CeylonParser.PIDENTIFIER:
                 return packageAttribute;
             case CeylonParser.AIDENTIFIER:
@@ -0,0 +1,80 @@
+package com.redhat.ceylon.eclipse.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+
+/**
+ * A log file of JSON objects, one per line, such as the
+ * build timings and the slow reconciles. When the file
+ * grows over 1 MB, it is renamed with the <code>.old</code>
+ * suffix, replacing the previous one, and a new file is
+ * started.
+ */
+public class JsonLinesLog {
+
+    private static final long MAX_LOG_SIZE = 1024 * 1024;
+
+    private JsonLinesLog() {}
+
+    /**
+     * Appends the given JSON object, on a single line, to
+     * the given log file.
+     */
+    public static void append(File logFile, String json) {
+        logFile.getParentFile().mkdirs();
+        if (logFile.length() > MAX_LOG_SIZE) {
+            File oldLogFile = new File(logFile.getPath() + ".old");
+            oldLogFile.delete();
+            logFile.renameTo(oldLogFile);
+        }
+        try {
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(logFile, true), "UTF-8");
+            try {
+                writer.write(json);
+                writer.write('\n');
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (IOException e) {
+            CeylonPlugin.getInstance().getLog().log(
+                    new Status(IStatus.WARNING, CeylonPlugin.PLUGIN_ID,
+                            "could not write to " + logFile, e));
+        }
+    }
+
+    /**
+     * Appends the given string as a JSON string literal.
+     */
+    public static StringBuilder appendString(StringBuilder json,
+            String string) {
+        json.append('"');
+        for (int i=0; i<string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                json.append('\\').append(c);
+                break;
+            default:
+                if (c < ' ') {
+                    json.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    json.append(c);
+                }
+            }
+        }
+        return json.append('"');
+    }
+}
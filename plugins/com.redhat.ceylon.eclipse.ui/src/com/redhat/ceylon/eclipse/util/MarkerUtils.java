@@ -3,7 +3,6 @@ package com.redhat.ceylon.eclipse.util;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.part.FileEditorInput;
 
@@ -18,32 +17,8 @@ public class MarkerUtils {
      * @param depth TODO
      */
     public static int getMaxProblemMarkerSeverity(IResource res, int depth) {
-        if (res == null || !res.isAccessible())
-            return 0;
-    
-        boolean hasWarnings= false; // if resource has errors, will return error image immediately
-        IMarker[] markers= null;
-    
-        try {
-            markers= res.findMarkers(IMarker.PROBLEM, true, depth);
-        } 
-        catch (CoreException e) {
-            e.printStackTrace();
-        }
-        if (markers == null)
-            return 0; // don't know - say no errors/warnings/infos
-    
-        for(int i= 0; i < markers.length; i++) {
-            IMarker m= markers[i];
-            int priority= m.getAttribute(IMarker.SEVERITY, -1);
-    
-            if (priority == IMarker.SEVERITY_WARNING) {
-            hasWarnings= true;
-            } else if (priority == IMarker.SEVERITY_ERROR) {
-            return IMarker.SEVERITY_ERROR;
-            }
-        }
-        return hasWarnings ? IMarker.SEVERITY_WARNING : 0;
+        return ProblemSeverityCache.getInstance()
+                .getMaxProblemSeverity(res, depth);
     }
 
     public static IFileEditorInput getInput(IMarker marker) {
@@ -0,0 +1,187 @@
+package com.redhat.ceylon.eclipse.util;
+
+import static org.eclipse.core.resources.ResourcesPlugin.getWorkspace;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * The maximum severity of the problem markers of resources
+ * and of their subtrees, as shown by the decorations of the
+ * labels of projects, folders and files.
+ *
+ * Each severity is computed from the markers the first time
+ * it is asked for, and is then kept until a resource change
+ * adds, removes or changes a marker of the resource or of
+ * one of its descendants, or adds or removes the resource.
+ */
+public class ProblemSeverityCache implements IResourceChangeListener {
+
+    private static ProblemSeverityCache instance;
+
+    public static synchronized ProblemSeverityCache getInstance() {
+        if (instance == null) {
+            instance = new ProblemSeverityCache();
+            getWorkspace().addResourceChangeListener(instance,
+                    IResourceChangeEvent.POST_CHANGE);
+        }
+        return instance;
+    }
+
+    /**
+     * The severities of markers on the resource itself, on
+     * the resource and its direct children, and on the whole
+     * subtree, by resource.
+     */
+    private final Map<IResource, Integer> ownSeverities =
+            new HashMap<IResource, Integer>();
+    private final Map<IResource, Integer> childrenSeverities =
+            new HashMap<IResource, Integer>();
+    private final Map<IResource, Integer> subtreeSeverities =
+            new HashMap<IResource, Integer>();
+    /**
+     * Incremented by each invalidation, so that a severity
+     * computed from markers that changed in the meantime
+     * isn't kept.
+     */
+    private long version = 0;
+
+    private ProblemSeverityCache() {}
+
+    /**
+     * Returns the maximum problem marker severity for the
+     * given resource and, depending on the depth, for its
+     * children or all its descendants: either
+     * IMarker.SEVERITY_ERROR, IMarker.SEVERITY_WARNING, or
+     * 0 if there are no errors or warnings.
+     */
+    public int getMaxProblemSeverity(IResource resource, int depth) {
+        if (resource == null || !resource.isAccessible()) {
+            return 0;
+        }
+        Map<IResource, Integer> severities = getSeverities(depth);
+        long computedVersion;
+        synchronized (this) {
+            Integer severity = severities.get(resource);
+            if (severity != null) {
+                return severity;
+            }
+            computedVersion = version;
+        }
+        int severity = computeMaxProblemSeverity(resource, depth);
+        synchronized (this) {
+            if (version == computedVersion) {
+                severities.put(resource, severity);
+            }
+        }
+        return severity;
+    }
+
+    private Map<IResource, Integer> getSeverities(int depth) {
+        switch (depth) {
+        case IResource.DEPTH_ZERO:
+            return ownSeverities;
+        case IResource.DEPTH_ONE:
+            return childrenSeverities;
+        default:
+            return subtreeSeverities;
+        }
+    }
+
+    private static int computeMaxProblemSeverity(IResource resource,
+            int depth) {
+        boolean hasWarnings = false;
+        try {
+            for (IMarker marker:
+                    resource.findMarkers(IMarker.PROBLEM, true, depth)) {
+                int severity = marker.getAttribute(IMarker.SEVERITY, -1);
+                if (severity == IMarker.SEVERITY_ERROR) {
+                    return IMarker.SEVERITY_ERROR;
+                }
+                else if (severity == IMarker.SEVERITY_WARNING) {
+                    hasWarnings = true;
+                }
+            }
+        }
+        catch (CoreException e) {
+            e.printStackTrace();
+        }
+        return hasWarnings ? IMarker.SEVERITY_WARNING : 0;
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null) {
+            return;
+        }
+        synchronized (this) {
+            if (ownSeverities.isEmpty() &&
+                    childrenSeverities.isEmpty() &&
+                    subtreeSeverities.isEmpty()) {
+                //a severity may be being computed
+                version++;
+                return;
+            }
+        }
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta delta)
+                        throws CoreException {
+                    int kind = delta.getKind();
+                    if (kind == IResourceDelta.ADDED ||
+                            kind == IResourceDelta.REMOVED ||
+                            hasProblemMarkerChanges(delta)) {
+                        invalidate(delta.getResource());
+                    }
+                    return true;
+                }
+            });
+        }
+        catch (CoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean hasProblemMarkerChanges(IResourceDelta delta) {
+        if ((delta.getFlags() & IResourceDelta.MARKERS) == 0) {
+            return false;
+        }
+        for (IMarkerDelta markerDelta: delta.getMarkerDeltas()) {
+            if (markerDelta.isSubtypeOf(IMarker.PROBLEM)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the severities that depend on the markers of
+     * the given resource: its own, and the ones of its parent
+     * and of all its ancestors.
+     */
+    private synchronized void invalidate(IResource resource) {
+        version++;
+        ownSeverities.remove(resource);
+        childrenSeverities.remove(resource);
+        subtreeSeverities.remove(resource);
+        IResource parent = resource.getParent();
+        if (parent != null) {
+            childrenSeverities.remove(parent);
+        }
+        for (IResource ancestor = parent; ancestor != null;
+                ancestor = ancestor.getParent()) {
+            subtreeSeverities.remove(ancestor);
+        }
+    }
+}
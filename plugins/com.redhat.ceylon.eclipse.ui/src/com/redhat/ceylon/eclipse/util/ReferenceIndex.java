@@ -0,0 +1,223 @@
+package com.redhat.ceylon.eclipse.util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
+import com.redhat.ceylon.model.typechecker.model.Constructor;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Generic;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.ProducedType;
+import com.redhat.ceylon.model.typechecker.model.Referenceable;
+import com.redhat.ceylon.model.typechecker.model.Setter;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+
+/**
+ * Index of the names of the declarations that each
+ * typechecked unit refers to, or declares, used to skip the
+ * units that can't contain any match when searching for the
+ * references, refinements or assignments of a declaration.
+ *
+ * The units of the projects are indexed by the builder each
+ * time they are typechecked, and the units of the source
+ * archives the first time they are searched. A unit that
+ * isn't indexed yet must always be searched.
+ *
+ * Since all these searches match declarations having the
+ * same name as the searched declaration, the simple name is
+ * enough to select the candidate units, and the visitors
+ * still decide what is an actual match.
+ */
+public class ReferenceIndex {
+
+    private static final Map<PhasedUnit, Set<String>> namesByUnit =
+            new WeakHashMap<PhasedUnit, Set<String>>();
+
+    /**
+     * Indexes the names referred to by the given unit, if
+     * it is fully typechecked.
+     */
+    public static void index(PhasedUnit phasedUnit) {
+        if (phasedUnit.isFullyTyped()) {
+            ReferencedNamesVisitor visitor = new ReferencedNamesVisitor();
+            phasedUnit.getCompilationUnit().visit(visitor);
+            synchronized (namesByUnit) {
+                namesByUnit.put(phasedUnit, visitor.names);
+            }
+        }
+    }
+
+    /**
+     * Indexes the given unit if it isn't indexed yet.
+     */
+    public static void indexIfNecessary(PhasedUnit phasedUnit) {
+        synchronized (namesByUnit) {
+            if (namesByUnit.containsKey(phasedUnit)) {
+                return;
+            }
+        }
+        index(phasedUnit);
+    }
+
+    /**
+     * Returns the name that a unit must refer to, or declare,
+     * to contain references to the given declaration, or null
+     * if the index can't tell.
+     */
+    public static String getIndexedName(Referenceable declaration) {
+        if (!(declaration instanceof Declaration)) {
+            //packages and modules are found by their path
+            return null;
+        }
+        Declaration dec = (Declaration) declaration;
+        if (dec instanceof Setter) {
+            dec = ((Setter) dec).getGetter();
+        }
+        if (dec instanceof Constructor && dec.getName()==null) {
+            //default constructor
+            ClassOrInterface classOrInterface =
+                    ((Constructor) dec).getExtendedTypeDeclaration();
+            if (classOrInterface!=null) {
+                dec = classOrInterface;
+            }
+        }
+        return dec==null ? null : dec.getName();
+    }
+
+    /**
+     * Determines if the given unit may refer to a declaration
+     * with the given name, that is, if it isn't indexed, or
+     * if the name is one of its indexed names.
+     */
+    public static boolean mayReferTo(PhasedUnit phasedUnit, String name) {
+        if (name==null) {
+            return true;
+        }
+        synchronized (namesByUnit) {
+            Set<String> names = namesByUnit.get(phasedUnit);
+            return names==null || names.contains(name);
+        }
+    }
+
+    private static final class ReferencedNamesVisitor extends Visitor {
+
+        final Set<String> names = new HashSet<String>();
+
+        private void add(Declaration dec) {
+            if (dec!=null && dec.getName()!=null) {
+                names.add(dec.getName());
+            }
+        }
+
+        private void add(Parameter parameter) {
+            if (parameter!=null) {
+                names.add(parameter.getName());
+            }
+        }
+
+        private void addTypeParameters(Declaration dec) {
+            if (dec instanceof Generic) {
+                for (TypeParameter tp: ((Generic) dec).getTypeParameters()) {
+                    add(tp);
+                }
+            }
+        }
+
+        @Override
+        public void visit(Tree.Identifier that) {
+            names.add(that.getText());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.Declaration that) {
+            add(that.getDeclarationModel());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.SpecifierStatement that) {
+            add(that.getDeclaration());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.MemberOrTypeExpression that) {
+            add(that.getDeclaration());
+            addTypeParameters(that.getDeclaration());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.MemberLiteral that) {
+            add(that.getDeclaration());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.SimpleType that) {
+            ProducedType type = that.getTypeModel();
+            if (type!=null) {
+                add(type.getDeclaration());
+            }
+            add(that.getDeclarationModel());
+            addTypeParameters(that.getDeclarationModel());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.NamedArgument that) {
+            add(that.getParameter());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.PositionalArgument that) {
+            add(that.getParameter());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.SequencedArgument that) {
+            add(that.getParameter());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.InitializerParameter that) {
+            add(that.getParameterModel());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.ImportMemberOrType that) {
+            add(that.getDeclarationModel());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.Return that) {
+            add(that.getDeclaration());
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.DocLink that) {
+            add(that.getBase());
+            List<Declaration> qualified = that.getQualified();
+            if (qualified!=null) {
+                for (Declaration dec: qualified) {
+                    add(dec);
+                }
+            }
+            super.visit(that);
+        }
+    }
+}
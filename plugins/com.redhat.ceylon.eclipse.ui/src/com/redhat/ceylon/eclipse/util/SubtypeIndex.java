@@ -0,0 +1,435 @@
+package com.redhat.ceylon.eclipse.util;
+
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjectTypeChecker;
+import static com.redhat.ceylon.eclipse.core.builder.CeylonBuilder.getProjects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.model.ICeylonModelListener;
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+import com.redhat.ceylon.model.typechecker.model.ClassOrInterface;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Package;
+import com.redhat.ceylon.model.typechecker.model.Scope;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * Index of the direct subtypes of the types of each package,
+ * shared by the hierarchy view and the searches for subtypes
+ * and refinements.
+ *
+ * For each unit, it records the types declared by the unit
+ * along with their direct supertypes, and for each package,
+ * the direct subtypes of every type that are declared in the
+ * package:
+ * <ul>
+ * <li>the units of the projects are indexed by the builder
+ *     each time they are typechecked,</li>
+ * <li>the units of the binary modules are indexed the first
+ *     time their package is asked for, and again when classes
+ *     are lazily loaded into them, and</li>
+ * <li>the packages that no longer belong to the model of any
+ *     project are dropped each time a model is parsed, and
+ *     when a project is closed or deleted.</li>
+ * </ul>
+ * The units of a package are recorded by file name, so that
+ * a unit replaced by a new typecheck of its file is dropped.
+ * The subtypes of a package are only merged again when one of
+ * its units changed.
+ */
+public class SubtypeIndex implements ICeylonModelListener {
+
+    private static SubtypeIndex instance;
+
+    private static synchronized SubtypeIndex getInstance() {
+        if (instance == null) {
+            instance = new SubtypeIndex();
+            CeylonBuilder.addModelListener(instance);
+        }
+        return instance;
+    }
+
+    private static final class UnitEntry {
+        /**
+         * The indexed unit, replaced when the file is parsed
+         * again.
+         */
+        final Unit unit;
+        /**
+         * The types of the declarations of the unit, used to
+         * build the hierarchy, or null if not computed yet.
+         */
+        List<TypeDeclaration> declaredTypes;
+        /**
+         * The number of declarations of the unit when the
+         * declared types were computed, since the classes of
+         * binary units are loaded lazily.
+         */
+        int declarationCount;
+        /**
+         * The types declared anywhere in the tree of the unit,
+         * or that contain a declaration of the tree, or null
+         * if the unit wasn't typechecked by the builder.
+         */
+        List<TypeDeclaration> typesInTree;
+        UnitEntry(Unit unit) {
+            this.unit = unit;
+        }
+    }
+
+    private static final class PackageEntry {
+        final Map<String, UnitEntry> units =
+                new HashMap<String, UnitEntry>();
+        /**
+         * The direct subtypes, declared in the package, of
+         * each type, or null if they must be merged again.
+         */
+        Map<TypeDeclaration, List<TypeDeclaration>> subtypes;
+    }
+
+    private final Map<Package, PackageEntry> packages =
+            new IdentityHashMap<Package, PackageEntry>();
+
+    private SubtypeIndex() {}
+
+    private PackageEntry getPackageEntry(Package pack) {
+        PackageEntry entry = packages.get(pack);
+        if (entry == null) {
+            entry = new PackageEntry();
+            packages.put(pack, entry);
+        }
+        return entry;
+    }
+
+    private static UnitEntry getUnitEntry(PackageEntry packageEntry, 
+            Unit unit) {
+        UnitEntry entry = packageEntry.units.get(unit.getFilename());
+        if (entry == null || entry.unit != unit) {
+            entry = new UnitEntry(unit);
+            packageEntry.units.put(unit.getFilename(), entry);
+            packageEntry.subtypes = null;
+        }
+        return entry;
+    }
+
+    /**
+     * The entry of the given unit, or null if the unit is not
+     * indexed.
+     */
+    private UnitEntry findUnitEntry(Package pack, Unit unit) {
+        PackageEntry entry = packages.get(pack);
+        if (entry != null) {
+            UnitEntry unitEntry = entry.units.get(unit.getFilename());
+            if (unitEntry != null && unitEntry.unit == unit) {
+                return unitEntry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indexes the types declared by the given unit, if it is
+     * fully typechecked.
+     */
+    public static void index(PhasedUnit phasedUnit) {
+        if (phasedUnit.isFullyTyped()) {
+            TypesInTreeVisitor visitor = new TypesInTreeVisitor();
+            phasedUnit.getCompilationUnit().visit(visitor);
+            List<TypeDeclaration> declaredTypes =
+                    getDeclaredTypes(phasedUnit.getUnit());
+            SubtypeIndex index = getInstance();
+            synchronized (index) {
+                PackageEntry packageEntry = 
+                        index.getPackageEntry(phasedUnit.getPackage());
+                UnitEntry entry = 
+                        getUnitEntry(packageEntry, phasedUnit.getUnit());
+                entry.typesInTree = visitor.types;
+                entry.declaredTypes = declaredTypes;
+                entry.declarationCount =
+                        phasedUnit.getUnit().getDeclarations().size();
+                packageEntry.subtypes = null;
+            }
+        }
+    }
+
+    /**
+     * Indexes the given unit if it isn't indexed yet.
+     */
+    public static void indexIfNecessary(PhasedUnit phasedUnit) {
+        SubtypeIndex index = getInstance();
+        synchronized (index) {
+            UnitEntry unitEntry = index.findUnitEntry(
+                    phasedUnit.getPackage(), phasedUnit.getUnit());
+            if (unitEntry != null && unitEntry.typesInTree != null) {
+                return;
+            }
+        }
+        index(phasedUnit);
+    }
+
+    /**
+     * Determines if the given unit may declare a subtype of
+     * the given type, or a type that contains a refinement of
+     * one of its members, that is, if it isn't indexed, or if
+     * one of the types of its tree inherits the given type.
+     */
+    public static boolean mayDeclareSubtypeOf(PhasedUnit phasedUnit,
+            TypeDeclaration type) {
+        List<TypeDeclaration> types;
+        SubtypeIndex index = getInstance();
+        synchronized (index) {
+            UnitEntry unitEntry = index.findUnitEntry(
+                    phasedUnit.getPackage(), phasedUnit.getUnit());
+            types = unitEntry == null ? null : unitEntry.typesInTree;
+        }
+        if (types == null) {
+            return true;
+        }
+        for (TypeDeclaration td: types) {
+            if (td.inherits(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the direct subtypes, declared in the given package,
+     * of every type to the given map.
+     */
+    public static void addDirectSubtypes(Package pack,
+            Map<TypeDeclaration, List<TypeDeclaration>> subtypes) {
+        List<Unit> units = new ArrayList<Unit>();
+        for (Unit unit: pack.getUnits()) {
+            units.add(unit);
+        }
+        //the lazy loading of the binary types must not 
+        //happen while holding the lock of the index, so
+        //the types are computed in between two updates
+        Map<Unit, List<TypeDeclaration>> changedUnits = 
+                new IdentityHashMap<Unit, List<TypeDeclaration>>();
+        SubtypeIndex index = getInstance();
+        synchronized (index) {
+            PackageEntry entry = index.getPackageEntry(pack);
+            Set<String> currentUnits = new HashSet<String>();
+            for (Unit unit: units) {
+                currentUnits.add(unit.getFilename());
+            }
+            if (entry.units.keySet().retainAll(currentUnits)) {
+                entry.subtypes = null;
+            }
+            for (Unit unit: units) {
+                UnitEntry unitEntry = getUnitEntry(entry, unit);
+                if (unitEntry.declaredTypes == null ||
+                        unitEntry.declarationCount != 
+                            unit.getDeclarations().size()) {
+                    changedUnits.put(unit, null);
+                }
+            }
+            if (changedUnits.isEmpty() && entry.subtypes != null) {
+                merge(entry.subtypes, subtypes);
+                return;
+            }
+        }
+        Map<Unit, Integer> declarationCounts = 
+                new IdentityHashMap<Unit, Integer>();
+        for (Unit unit: changedUnits.keySet()) {
+            declarationCounts.put(unit, unit.getDeclarations().size());
+            changedUnits.put(unit, getDeclaredTypes(unit));
+        }
+        List<TypeDeclaration> allTypes = new ArrayList<TypeDeclaration>();
+        synchronized (index) {
+            PackageEntry entry = index.getPackageEntry(pack);
+            for (Map.Entry<Unit, List<TypeDeclaration>> e: 
+                    changedUnits.entrySet()) {
+                UnitEntry unitEntry = getUnitEntry(entry, e.getKey());
+                unitEntry.declaredTypes = e.getValue();
+                unitEntry.declarationCount = 
+                        declarationCounts.get(e.getKey());
+            }
+            for (UnitEntry unitEntry: entry.units.values()) {
+                if (unitEntry.declaredTypes != null) {
+                    allTypes.addAll(unitEntry.declaredTypes);
+                }
+            }
+        }
+        Map<TypeDeclaration, List<TypeDeclaration>> packageSubtypes = 
+                new HashMap<TypeDeclaration, List<TypeDeclaration>>();
+        for (TypeDeclaration td: allTypes) {
+            addDirectSubtype(td, packageSubtypes);
+        }
+        synchronized (index) {
+            index.getPackageEntry(pack).subtypes = packageSubtypes;
+        }
+        merge(packageSubtypes, subtypes);
+    }
+
+    private static void merge(
+            Map<TypeDeclaration, List<TypeDeclaration>> packageSubtypes,
+            Map<TypeDeclaration, List<TypeDeclaration>> subtypes) {
+        for (Map.Entry<TypeDeclaration, List<TypeDeclaration>> e:
+                packageSubtypes.entrySet()) {
+            List<TypeDeclaration> list = subtypes.get(e.getKey());
+            if (list == null) {
+                list = new ArrayList<TypeDeclaration>();
+                subtypes.put(e.getKey(), list);
+            }
+            list.addAll(e.getValue());
+        }
+    }
+
+    /**
+     * Adds the given type to the direct subtypes of its
+     * direct supertypes.
+     */
+    public static void addDirectSubtype(TypeDeclaration td,
+            Map<TypeDeclaration, List<TypeDeclaration>> subtypes) {
+        try {
+            ClassOrInterface etd = td.getExtendedTypeDeclaration();
+            if (etd!=null) {
+                addSubtype(etd, td, subtypes);
+            }
+            for (TypeDeclaration std: td.getSatisfiedTypeDeclarations()) {
+                addSubtype(std, td, subtypes);
+            }
+        }
+        catch (Exception e) {
+            CeylonPlugin.getInstance().getLog().log(new Status(IStatus.WARNING, 
+                    CeylonPlugin.PLUGIN_ID, "Failed to resolve the supertypes of " + 
+                            td.getQualifiedNameString(), e));
+        }
+    }
+
+    private static void addSubtype(TypeDeclaration supertype,
+            TypeDeclaration subtype,
+            Map<TypeDeclaration, List<TypeDeclaration>> subtypes) {
+        List<TypeDeclaration> list = subtypes.get(supertype);
+        if (list == null) {
+            list = new ArrayList<TypeDeclaration>(2);
+            subtypes.put(supertype, list);
+        }
+        list.add(subtype);
+    }
+
+    private static List<TypeDeclaration> getDeclaredTypes(Unit unit) {
+        List<TypeDeclaration> types = new ArrayList<TypeDeclaration>();
+        try {
+            //TODO: unshared inner types get
+            //      missed for binary modules
+            for (Declaration d: new ArrayList<Declaration>(unit.getDeclarations())) {
+                if (d instanceof ClassOrInterface) {
+                    types.add((TypeDeclaration) d);
+                }
+            }
+        }
+        catch (Exception e) {
+            CeylonPlugin.getInstance().getLog().log(new Status(IStatus.WARNING, 
+                    CeylonPlugin.PLUGIN_ID, "Failed to load the declarations of " + 
+                            unit.getFilename(), e));
+        }
+        return types;
+    }
+
+    private static final class TypesInTreeVisitor extends Visitor {
+
+        final List<TypeDeclaration> types = new ArrayList<TypeDeclaration>();
+
+        private void add(Declaration dec) {
+            if (dec instanceof TypeDeclaration && !types.contains(dec)) {
+                types.add((TypeDeclaration) dec);
+            }
+        }
+
+        private void addContainer(Declaration dec) {
+            if (dec!=null) {
+                Scope container = dec.getContainer();
+                if (container instanceof TypeDeclaration) {
+                    add((TypeDeclaration) container);
+                }
+            }
+        }
+
+        @Override
+        public void visit(Tree.Declaration that) {
+            if (that.getDeclarationModel()!=null) {
+                add(that.getDeclarationModel());
+                addContainer(that.getDeclarationModel());
+            }
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.ObjectDefinition that) {
+            if (that.getDeclarationModel()!=null) {
+                add(that.getDeclarationModel().getTypeDeclaration());
+            }
+            super.visit(that);
+        }
+
+        @Override
+        public void visit(Tree.SpecifierStatement that) {
+            if (that.getRefinement()) {
+                addContainer(that.getDeclaration());
+            }
+            super.visit(that);
+        }
+    }
+
+    @Override
+    public void modelParsed(IProject project) {
+        removeObsoletePackages();
+    }
+
+    /**
+     * Drops the packages that no longer belong to the model
+     * of any project, for example after the project was
+     * removed.
+     */
+    public static void removeObsoletePackages() {
+        SubtypeIndex index;
+        synchronized (SubtypeIndex.class) {
+            index = instance;
+        }
+        if (index != null) {
+            index.dropObsoletePackages();
+        }
+    }
+
+    private synchronized void dropObsoletePackages() {
+        Set<Module> currentModules =
+                Collections.newSetFromMap(
+                        new IdentityHashMap<Module, Boolean>());
+        for (IProject p: getProjects()) {
+            TypeChecker typeChecker = getProjectTypeChecker(p);
+            if (typeChecker!=null) {
+                currentModules.addAll(typeChecker.getContext()
+                        .getModules().getListOfModules());
+            }
+        }
+        for (Iterator<Package> it =
+                packages.keySet().iterator(); it.hasNext();) {
+            if (!currentModules.contains(it.next().getModule())) {
+                it.remove();
+            }
+        }
+    }
+}
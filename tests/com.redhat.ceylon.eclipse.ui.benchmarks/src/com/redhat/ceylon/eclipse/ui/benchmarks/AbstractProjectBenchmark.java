@@ -0,0 +1,63 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.junit.BeforeClass;
+
+import com.redhat.ceylon.eclipse.ui.test.AbstractMultiProjectTest;
+
+/**
+ * Imports and builds the projects of the
+ * <code>model-and-phased-units</code> resources of the test
+ * bundle, which the benchmarks then measure.
+ */
+public abstract class AbstractProjectBenchmark extends AbstractMultiProjectTest {
+
+    /**
+     * The resources directory of the test bundle, which is
+     * next to this bundle.
+     */
+    public static final Path testResources = new Path(System.getProperty("user.dir"))
+            .append("../com.redhat.ceylon.eclipse.ui.test/resources/");
+
+    /**
+     * Shadows the method of the superclass, so that the
+     * projects are imported from the test bundle.
+     */
+    @BeforeClass
+    public static void beforeClass() throws InterruptedException {
+        projectPathPrefix = testResources.append(projectGroup + "/");
+        importAndBuild();
+        if (compilationError != null) {
+            throw compilationError;
+        }
+    }
+
+    protected static String read(IFile file) throws CoreException, IOException {
+        InputStream stream = file.getContents();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    protected static void write(IFile file, String contents) throws CoreException {
+        file.setContents(new ByteArrayInputStream(contents.getBytes(Charset.forName("UTF-8"))),
+                true, false, null);
+    }
+}
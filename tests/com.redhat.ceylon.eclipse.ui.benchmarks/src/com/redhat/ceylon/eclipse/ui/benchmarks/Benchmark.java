@@ -0,0 +1,29 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks;
+
+/**
+ * One operation measured by the {@link BenchmarkRunner}.
+ * The {@link #setUp()} of each iteration is not measured.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the next iteration, for example by changing
+     * the file that an incremental build will compile.
+     */
+    protected void setUp() throws Exception {}
+
+    /**
+     * The measured operation.
+     */
+    protected abstract void run() throws Exception;
+}
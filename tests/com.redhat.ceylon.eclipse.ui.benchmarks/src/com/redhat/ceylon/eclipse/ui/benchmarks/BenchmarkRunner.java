@@ -0,0 +1,158 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.ceylon.eclipse.ui.CeylonPlugin;
+
+/**
+ * A minimal JMH-like harness that runs in the OSGi test
+ * runtime, where JMH can't fork its benchmark JVMs: each
+ * {@link Benchmark} is run a number of warmup iterations,
+ * then measured for a number of iterations, and the
+ * statistics of the measured iterations are printed and
+ * written, one JSON object per line, to a file per
+ * benchmark class, so that the numbers can be compared
+ * between releases.
+ *
+ * The harness is configured by system properties:
+ * <ul>
+ * <li><code>ceylon.benchmarks.warmups</code> (3 by default),</li>
+ * <li><code>ceylon.benchmarks.iterations</code> (10 by default),</li>
+ * <li><code>ceylon.benchmarks.output</code>, the directory of
+ * the result files (<code>benchmark-results</code> by default).</li>
+ * </ul>
+ *
+ * The result files are appended to, and the default directory
+ * is outside of <code>target</code>, so that the results of
+ * earlier runs survive a <code>mvn clean</code>.
+ */
+public class BenchmarkRunner {
+
+    public static final class Result {
+        private final String name;
+        private final long[] durations;
+
+        Result(String name, long[] durations) {
+            this.name = name;
+            this.durations = durations.clone();
+            Arrays.sort(this.durations);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIterations() {
+            return durations.length;
+        }
+
+        /**
+         * The given percentile of the durations of the
+         * measured iterations, in nanoseconds.
+         */
+        public long getPercentile(int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * durations.length) - 1;
+            return durations[Math.max(0, Math.min(index, durations.length - 1))];
+        }
+
+        public long getMin() {
+            return durations[0];
+        }
+
+        public long getMax() {
+            return durations[durations.length - 1];
+        }
+
+        public long getMean() {
+            long total = 0;
+            for (long duration: durations) {
+                total += duration;
+            }
+            return total / durations.length;
+        }
+
+        String toJson(String version, long timestamp) {
+            return "{\"benchmark\":\"" + name + "\"" +
+                    ",\"version\":\"" + version + "\"" +
+                    ",\"timestamp\":" + timestamp +
+                    ",\"iterations\":" + getIterations() +
+                    ",\"unit\":\"us\"" +
+                    ",\"min\":" + getMin() / 1000 +
+                    ",\"mean\":" + getMean() / 1000 +
+                    ",\"median\":" + getPercentile(50) / 1000 +
+                    ",\"p90\":" + getPercentile(90) / 1000 +
+                    ",\"max\":" + getMax() / 1000 + "}";
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-50s %5d iterations, mean %10.3f ms, median %10.3f ms, p90 %10.3f ms",
+                    name, getIterations(), getMean() / 1e6,
+                    getPercentile(50) / 1e6, getPercentile(90) / 1e6);
+        }
+    }
+
+    private final String group;
+    private final int warmups;
+    private final int iterations;
+    private final List<Result> results = new ArrayList<Result>();
+
+    /**
+     * @param group the name of the result file, usually the
+     *        simple name of the benchmark class
+     */
+    public BenchmarkRunner(String group) {
+        this.group = group;
+        warmups = Integer.getInteger("ceylon.benchmarks.warmups", 3);
+        iterations = Math.max(1, Integer.getInteger("ceylon.benchmarks.iterations", 10));
+    }
+
+    public Result run(Benchmark benchmark) throws Exception {
+        for (int i=0; i<warmups; i++) {
+            benchmark.setUp();
+            benchmark.run();
+        }
+        long[] durations = new long[iterations];
+        for (int i=0; i<iterations; i++) {
+            benchmark.setUp();
+            long start = System.nanoTime();
+            benchmark.run();
+            durations[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(group + "." + benchmark.getName(), durations);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Appends the results of the benchmarks run so far to
+     * the result file of the group.
+     */
+    public void writeResults() throws IOException {
+        File directory = new File(System.getProperty("ceylon.benchmarks.output",
+                "benchmark-results"));
+        directory.mkdirs();
+        String version = CeylonPlugin.getInstance().getBundle().getVersion().toString();
+        long timestamp = System.currentTimeMillis();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(
+                new File(directory, group + ".json"), true), "UTF-8");
+        try {
+            for (Result result: results) {
+                writer.write(result.toJson(version, timestamp));
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+        results.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks.headless;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.redhat.ceylon.eclipse.ui.benchmarks.AbstractProjectBenchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.Benchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.BenchmarkRunner;
+
+/**
+ * Full and incremental builds of the main project by the
+ * {@link com.redhat.ceylon.eclipse.core.builder.CeylonBuilder}.
+ * The workspace auto-build is disabled, so that the builds
+ * only run when the benchmark asks for them.
+ */
+public class BuilderBenchmark extends AbstractProjectBenchmark {
+
+    private static final BenchmarkRunner runner =
+            new BenchmarkRunner(BuilderBenchmark.class.getSimpleName());
+    private static boolean wasAutoBuilding;
+
+    @BeforeClass
+    public static void disableAutoBuild() throws CoreException {
+        IWorkspaceDescription description = workspace.getDescription();
+        wasAutoBuilding = description.isAutoBuilding();
+        description.setAutoBuilding(false);
+        workspace.setDescription(description);
+    }
+
+    @AfterClass
+    public static void writeResultsAndRestoreAutoBuild() throws Exception {
+        runner.writeResults();
+        IWorkspaceDescription description = workspace.getDescription();
+        description.setAutoBuilding(wasAutoBuilding);
+        workspace.setDescription(description);
+    }
+
+    @Test
+    public void fullBuild() throws Exception {
+        runner.run(new Benchmark("fullBuild") {
+            @Override
+            protected void run() throws CoreException {
+                mainProject.build(IncrementalProjectBuilder.FULL_BUILD, null);
+            }
+        });
+    }
+
+    @Test
+    public void incrementalBuildOfABodyChange() throws Exception {
+        final IFile file = mainProject.getFile("src/usedModule/run.ceylon");
+        final String original = read(file);
+        try {
+            runner.run(new Benchmark("incrementalBuildOfABodyChange") {
+                int iteration = 0;
+                @Override
+                protected void setUp() throws CoreException {
+                    write(file, original + "\n//change " + iteration++ + "\n");
+                }
+                @Override
+                protected void run() throws CoreException {
+                    mainProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, null);
+                }
+            });
+        }
+        finally {
+            write(file, original);
+            mainProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, null);
+        }
+    }
+
+    @Test
+    public void incrementalBuildWithoutChange() throws Exception {
+        runner.run(new Benchmark("incrementalBuildWithoutChange") {
+            @Override
+            protected void run() throws CoreException {
+                mainProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, null);
+            }
+        });
+    }
+}
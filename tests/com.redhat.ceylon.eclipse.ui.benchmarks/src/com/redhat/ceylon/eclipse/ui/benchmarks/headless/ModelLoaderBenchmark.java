@@ -0,0 +1,134 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.core.model.JDTModelLoader;
+import com.redhat.ceylon.eclipse.ui.benchmarks.AbstractProjectBenchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.Benchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.BenchmarkRunner;
+import com.redhat.ceylon.eclipse.ui.test.Utils;
+import com.redhat.ceylon.eclipse.ui.test.Utils.CeylonBuildSummary;
+import com.redhat.ceylon.model.loader.ModelLoader.DeclarationType;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+
+/**
+ * Lookups of the {@link JDTModelLoader} of the
+ * <code>references</code> project of the
+ * <code>model-loader-tests</code> resources, which loads
+ * the declarations of the <code>declarations</code> project
+ * from its binary archive, as in the model loader tests.
+ */
+public class ModelLoaderBenchmark {
+
+    private static final BenchmarkRunner runner =
+            new BenchmarkRunner(ModelLoaderBenchmark.class.getSimpleName());
+
+    private static IProject projectDeclarations;
+    private static IProject projectReferences;
+    private static JDTModelLoader modelLoader;
+    private static Module module;
+    private static final List<Declaration> declarations = new ArrayList<Declaration>();
+
+    @BeforeClass
+    public static void importProjects() throws Exception {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+        CeylonBuildSummary declarationsSummary =
+                new CeylonBuildSummary(workspace.getRoot().getProject("declarations"));
+        declarationsSummary.install();
+        projectDeclarations = Utils.importProject(workspace, "model-loader-tests",
+                AbstractProjectBenchmark.testResources.append("model-loader-tests/declarations/.project"));
+        Assert.assertTrue(declarationsSummary.waitForBuildEnd(120));
+        //load the declarations from the binary archive
+        projectDeclarations.getFile("modules/declarations/1.0.0/declarations-1.0.0.src")
+                .getLocation().toFile().delete();
+        projectDeclarations.getFile("modules/declarations/1.0.0/declarations-1.0.0.src.sha1")
+                .getLocation().toFile().delete();
+
+        CeylonBuildSummary referencesSummary =
+                new CeylonBuildSummary(workspace.getRoot().getProject("references"));
+        referencesSummary.install();
+        projectReferences = Utils.importProject(workspace, "model-loader-tests",
+                AbstractProjectBenchmark.testResources.append("model-loader-tests/references/.project"));
+        Assert.assertTrue(referencesSummary.waitForBuildEnd(120));
+
+        modelLoader = CeylonBuilder.getProjectModelLoader(projectReferences);
+        module = modelLoader.findModule("references", "1.0.0");
+        Assert.assertNotNull(module);
+
+        for (PhasedUnit pu: CeylonBuilder.getProjectTypeChecker(projectDeclarations)
+                .getPhasedUnits().getPhasedUnits()) {
+            for (Declaration declaration: pu.getUnit().getDeclarations()) {
+                if (declaration.isToplevel() && declaration.isShared()) {
+                    declarations.add(declaration);
+                }
+            }
+        }
+        Assert.assertFalse(declarations.isEmpty());
+    }
+
+    @AfterClass
+    public static void writeResultsAndDeleteProjects() throws Exception {
+        runner.writeResults();
+        if (projectReferences != null) projectReferences.delete(true, true, null);
+        if (projectDeclarations != null) projectDeclarations.delete(true, true, null);
+    }
+
+    private static String getJavaName(Declaration declaration) {
+        return declaration.getUnit().getPackage().getNameAsString() +
+                "." + declaration.getName();
+    }
+
+    @Test
+    public void lookupNewClassMirrors() throws Exception {
+        runner.run(new Benchmark("lookupNewClassMirrors") {
+            @Override
+            protected void run() {
+                for (Declaration declaration: declarations) {
+                    modelLoader.lookupNewClassMirror(module, getJavaName(declaration));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void lookupMissingClassMirrors() throws Exception {
+        runner.run(new Benchmark("lookupMissingClassMirrors") {
+            @Override
+            protected void run() {
+                for (Declaration declaration: declarations) {
+                    Assert.assertNull(modelLoader.lookupNewClassMirror(module,
+                            getJavaName(declaration) + "Missing"));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void getDeclarations() throws Exception {
+        runner.run(new Benchmark("getDeclarations") {
+            @Override
+            protected void run() {
+                for (Declaration declaration: declarations) {
+                    modelLoader.getDeclaration(module,
+                            getJavaName(declaration),
+                            declaration instanceof TypeDeclaration ?
+                                    DeclarationType.TYPE : DeclarationType.VALUE);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks.headless;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
+import com.redhat.ceylon.eclipse.ui.benchmarks.AbstractProjectBenchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.Benchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.BenchmarkRunner;
+
+/**
+ * Parsing and typechecking of the source files of the main
+ * project by {@link CeylonParseController#parse}, the way
+ * the editor does it for each reconciliation.
+ */
+public class ParseControllerBenchmark extends AbstractProjectBenchmark {
+
+    private static final BenchmarkRunner runner =
+            new BenchmarkRunner(ParseControllerBenchmark.class.getSimpleName());
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        runner.writeResults();
+    }
+
+    @Test
+    public void parseAllSourceFiles() throws Exception {
+        final Map<IPath, String> sources = new LinkedHashMap<IPath, String>();
+        mainProject.getFolder("src").accept(new IResourceVisitor() {
+            @Override
+            public boolean visit(IResource resource) throws CoreException {
+                if (resource instanceof IFile &&
+                        "ceylon".equals(resource.getFileExtension())) {
+                    try {
+                        sources.put(resource.getProjectRelativePath(),
+                                read((IFile) resource));
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return true;
+            }
+        });
+        Assert.assertFalse("No source file in the main project", sources.isEmpty());
+
+        runner.run(new Benchmark("parseAllSourceFiles") {
+            @Override
+            protected void run() {
+                for (Map.Entry<IPath, String> source: sources.entrySet()) {
+                    CeylonParseController controller = new CeylonParseController();
+                    controller.initialize(source.getKey(), mainProject, null);
+                    controller.parse(source.getValue(), new NullProgressMonitor(), null);
+                    Assert.assertNotNull(controller.getRootNode());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package com.redhat.ceylon.eclipse.ui.benchmarks.ui;
+
+import static com.redhat.ceylon.eclipse.code.parse.TreeLifecycleListener.Stage.TYPE_ANALYSIS;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.swt.widgets.Display;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.redhat.ceylon.eclipse.code.complete.CeylonCompletionProcessor;
+import com.redhat.ceylon.eclipse.code.editor.CeylonEditor;
+import com.redhat.ceylon.eclipse.code.parse.CeylonParseController;
+import com.redhat.ceylon.eclipse.ui.benchmarks.AbstractProjectBenchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.Benchmark;
+import com.redhat.ceylon.eclipse.ui.benchmarks.BenchmarkRunner;
+import com.redhat.ceylon.eclipse.ui.test.Utils;
+import com.redhat.ceylon.eclipse.util.EditorUtil;
+
+/**
+ * The computation of the completion proposals in an editor
+ * on the <code>run.ceylon</code> file of the main module,
+ * each iteration starting a new completion session, as when
+ * the user presses ctrl-space.
+ */
+public class CompletionBenchmark extends AbstractProjectBenchmark {
+
+    private static final BenchmarkRunner runner =
+            new BenchmarkRunner(CompletionBenchmark.class.getSimpleName());
+
+    private static CeylonEditor editor;
+
+    @BeforeClass
+    public static void openEditor() throws Exception {
+        Utils.openInEditor(mainProject, "src/mainModule/run.ceylon");
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                editor = (CeylonEditor) EditorUtil.getCurrentEditor();
+            }
+        });
+        Assert.assertNotNull(editor);
+        CeylonParseController controller = editor.getParseController();
+        for (int i=0; i<600 && controller.getStage().ordinal() < TYPE_ANALYSIS.ordinal(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(TYPE_ANALYSIS, controller.getStage());
+    }
+
+    @AfterClass
+    public static void writeResultsAndCloseEditor() throws Exception {
+        runner.writeResults();
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                editor.close(false);
+            }
+        });
+    }
+
+    private static Benchmark completion(String name,
+            final String text, final int offsetInText) {
+        final int offset = editor.getParseController().getDocument()
+                .get().indexOf(text) + offsetInText;
+        Assert.assertTrue(offset >= offsetInText);
+        final CeylonCompletionProcessor processor =
+                new CeylonCompletionProcessor(editor);
+        return new Benchmark(name) {
+            @Override
+            protected void setUp() {
+                processor.sessionStarted();
+            }
+            @Override
+            protected void run() {
+                Display.getDefault().syncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        Assert.assertNotNull(processor.getContentProposals(
+                                editor.getParseController(), offset,
+                                editor.getCeylonSourceViewer(), false, false,
+                                new NullProgressMonitor()));
+                    }
+                });
+            }
+        };
+    }
+
+    @Test
+    public void memberCompletion() throws Exception {
+        runner.run(completion("memberCompletion", "v1.method", 3));
+    }
+
+    @Test
+    public void prefixCompletion() throws Exception {
+        runner.run(completion("prefixCompletion", "ceylonTopLevelMethod_Main", 9));
+    }
+}
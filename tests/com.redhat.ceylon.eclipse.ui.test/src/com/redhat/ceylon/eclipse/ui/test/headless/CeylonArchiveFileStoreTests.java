@@ -0,0 +1,250 @@
+package com.redhat.ceylon.eclipse.ui.test.headless;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.redhat.ceylon.eclipse.core.external.CeylonArchiveFileStore;
+
+public class CeylonArchiveFileStoreTests {
+
+    private static final int PACKAGES = 100;
+    private static final int FILES_PER_PACKAGE = 100;
+
+    private static File archive;
+    private static IFileStore rootStore;
+
+    @BeforeClass
+    public static void createArchive() throws IOException, CoreException {
+        archive = File.createTempFile("archiveIndex", ".src");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (int p = 0; p < PACKAGES; p++) {
+                for (int f = 0; f < FILES_PER_PACKAGE; f++) {
+                    out.putNextEntry(new ZipEntry(entryName(p, f)));
+                    out.write(("// " + entryName(p, f)).getBytes("UTF-8"));
+                    out.closeEntry();
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        rootStore = EFS.getLocalFileSystem().fromLocalFile(archive);
+    }
+
+    @AfterClass
+    public static void deleteArchive() {
+        archive.delete();
+    }
+
+    private static String entryName(int p, int f) {
+        return "module/pkg" + p + "/Unit" + f + ".ceylon";
+    }
+
+    private static IFileStore store(String path) {
+        return new CeylonArchiveFileStore(rootStore, new Path(path));
+    }
+
+    @Test
+    public void testChildren() throws CoreException {
+        assertEquals(1, store("").childNames(EFS.NONE, null).length);
+        assertEquals(PACKAGES, store("module").childNames(EFS.NONE, null).length);
+        IFileInfo[] infos = store("module/pkg42").childInfos(EFS.NONE, null);
+        assertEquals(FILES_PER_PACKAGE, infos.length);
+        for (IFileInfo info : infos) {
+            assertFalse(info.isDirectory());
+        }
+    }
+
+    @Test
+    public void testFetchInfo() throws CoreException {
+        IFileInfo directoryInfo = store("module/pkg7").fetchInfo();
+        assertTrue(directoryInfo.exists());
+        assertTrue(directoryInfo.isDirectory());
+        IFileInfo fileInfo = store(entryName(7, 3)).fetchInfo();
+        assertTrue(fileInfo.exists());
+        assertFalse(fileInfo.isDirectory());
+        assertFalse(store("module/missing").fetchInfo().exists());
+    }
+
+    @Test
+    public void testContent() throws CoreException, IOException {
+        InputStream in = store(entryName(99, 99)).openInputStream(EFS.NONE, null);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            assertEquals("// " + entryName(99, 99), reader.readLine());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testBrowsing() throws CoreException, IOException {
+        int files = 0;
+        for (String pkg : store("module").childNames(EFS.NONE, null)) {
+            IFileStore pkgStore = store("module/" + pkg);
+            pkgStore.fetchInfo();
+            for (IFileStore fileStore : pkgStore.childStores(EFS.NONE, null)) {
+                fileStore.fetchInfo();
+                fileStore.openInputStream(EFS.NONE, null).close();
+                files ++;
+            }
+        }
+        assertEquals(PACKAGES * FILES_PER_PACKAGE, files);
+    }
+
+    /**
+     * Reads entries scattered across the archive through the
+     * index, and through a new {@link ZipFile} per entry, 
+     * which reads the whole central directory again, and 
+     * checks that the index is faster.
+     */
+    @Test
+    public void benchmarkRandomAccess() throws CoreException, IOException {
+        //build the index, and warm up both paths
+        readThroughIndex();
+        readThroughZipFiles();
+        long indexDuration = Long.MAX_VALUE;
+        long zipFileDuration = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            readThroughIndex();
+            indexDuration = Math.min(indexDuration, System.nanoTime() - start);
+            start = System.nanoTime();
+            readThroughZipFiles();
+            zipFileDuration = Math.min(zipFileDuration, System.nanoTime() - start);
+        }
+        System.out.println("Read " + PACKAGES + " entries of a source archive of " + 
+                PACKAGES * FILES_PER_PACKAGE + " entries in " + 
+                indexDuration / 1000 + " us through the index, and in " + 
+                zipFileDuration / 1000 + " us through a zip file per entry");
+        assertTrue("Reading through the index took " + indexDuration / 1000 + 
+                " us, and through a zip file per entry " + zipFileDuration / 1000 + " us", 
+                indexDuration < zipFileDuration);
+    }
+
+    private static void readThroughIndex() throws CoreException, IOException {
+        for (int p = 0; p < PACKAGES; p++) {
+            InputStream in = store(entryName(p, (p * 37) % FILES_PER_PACKAGE))
+                    .openInputStream(EFS.NONE, null);
+            try {
+                while (in.read() >= 0) {}
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    private static void readThroughZipFiles() throws IOException {
+        for (int p = 0; p < PACKAGES; p++) {
+            ZipFile zipFile = new ZipFile(archive);
+            try {
+                InputStream in = zipFile.getInputStream(
+                        zipFile.getEntry(entryName(p, (p * 37) % FILES_PER_PACKAGE)));
+                try {
+                    while (in.read() >= 0) {}
+                }
+                finally {
+                    in.close();
+                }
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStoredEntries() throws CoreException, IOException {
+        File stored = File.createTempFile("storedArchive", ".src");
+        try {
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(stored));
+            try {
+                byte[] content = "// stored".getBytes("UTF-8");
+                ZipEntry entry = new ZipEntry("module/stored.ceylon");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setCrc(crc.getValue());
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+            finally {
+                out.close();
+            }
+            IFileStore root = EFS.getLocalFileSystem().fromLocalFile(stored);
+            InputStream in = new CeylonArchiveFileStore(root, 
+                    new Path("module/stored.ceylon")).openInputStream(EFS.NONE, null);
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+                assertEquals("// stored", reader.readLine());
+                assertEquals(null, reader.readLine());
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            stored.delete();
+        }
+    }
+
+    @Test
+    public void testRewrittenArchive() throws CoreException, IOException {
+        File rewritten = File.createTempFile("rewrittenArchive", ".src");
+        try {
+            writeArchive(rewritten, "module/a.ceylon");
+            IFileStore root = EFS.getLocalFileSystem().fromLocalFile(rewritten);
+            IFileStore a = new CeylonArchiveFileStore(root, new Path("module/a.ceylon"));
+            assertTrue(a.fetchInfo().exists());
+            a.openInputStream(EFS.NONE, null).close();
+            //the index must not keep the archive open
+            assertTrue(rewritten.delete());
+            writeArchive(rewritten, "module/bb.ceylon");
+            rewritten.setLastModified(rewritten.lastModified() + 2000);
+            IFileStore b = new CeylonArchiveFileStore(root, new Path("module/bb.ceylon"));
+            assertFalse(a.fetchInfo().exists());
+            assertTrue(b.fetchInfo().exists());
+        }
+        finally {
+            rewritten.delete();
+        }
+    }
+
+    private static void writeArchive(File file, String entry) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(("// " + entry).getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.redhat.ceylon.eclipse.ui.test.headless;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.eclipse.core.builder.CeylonBuilder;
+import com.redhat.ceylon.eclipse.ui.test.AbstractMultiProjectTest;
+
+/**
+ * Checks that the incremental build typechecks the
+ * dependents of a changed file again if and only if the
+ * signatures of its declarations changed.
+ */
+public class DeclarationSignaturesTests extends AbstractMultiProjectTest {
+
+    private static final String DECLARATIONS = "mainModule/SignatureDeclarations.ceylon";
+    private static final String USE = "mainModule/SignatureUse.ceylon";
+
+    private static void write(IFile file, String content)
+            throws CoreException, UnsupportedEncodingException {
+        ByteArrayInputStream stream =
+                new ByteArrayInputStream(content.getBytes("UTF-8"));
+        if (file.exists()) {
+            file.setContents(stream, true, false, null);
+        }
+        else {
+            file.create(stream, true, null);
+        }
+        mainProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, null);
+    }
+
+    private static PhasedUnit getPhasedUnit(String path) {
+        PhasedUnit phasedUnit = CeylonBuilder.getProjectTypeChecker(mainProject)
+                .getPhasedUnitFromRelativePath(path);
+        assertNotNull("No phased unit for path : " + path, phasedUnit);
+        return phasedUnit;
+    }
+
+    private void checkDependentTypechecked(String declarations,
+            String changedDeclarations, String use, boolean expected)
+                    throws CoreException, UnsupportedEncodingException {
+        if (compilationError != null) {
+            throw compilationError;
+        }
+        IFile declarationsFile = mainProject.getFile("src/" + DECLARATIONS);
+        IFile useFile = mainProject.getFile("src/" + USE);
+        try {
+            write(declarationsFile, declarations);
+            write(useFile, use);
+            PhasedUnit useUnit = getPhasedUnit(USE);
+            write(declarationsFile, changedDeclarations);
+            assertEquals(expected ?
+                        "The dependent should have been typechecked again" :
+                        "The dependent should not have been typechecked again",
+                    expected, getPhasedUnit(USE) != useUnit);
+        }
+        finally {
+            useFile.delete(true, null);
+            declarationsFile.delete(true, null);
+            mainProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, null);
+        }
+    }
+
+    @Test
+    public void bodyChangeKeepsDependent() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "shared Integer twice(Integer i) { return i*2; }",
+                "shared Integer twice(Integer i) { return i+i; }",
+                "Integer useTwice() => twice(1);",
+                false);
+    }
+
+    @Test
+    public void typeParameterDefaultChange() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "shared class Holder<Element=String>() {}",
+                "shared class Holder<Element=Integer>() {}",
+                "Holder useHolder() => Holder();",
+                true);
+    }
+
+    @Test
+    public void typeParameterEnumeratedBoundChange() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "shared void enumerated<T>(T t) given T of String|Integer {}",
+                "shared void enumerated<T>(T t) given T of String|Integer|Float {}",
+                "void useEnumerated() { enumerated(\"\"); }",
+                true);
+    }
+
+    @Test
+    public void selfTypeChange() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "shared interface Ordered<Other> of Other given Other satisfies Ordered<Other> {}",
+                "shared interface Ordered<Other> given Other satisfies Ordered<Other> {}",
+                "class Ord() satisfies Ordered<Ord> {}",
+                true);
+    }
+
+    @Test
+    public void functionalParameterChange() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "shared void callback(void handler(String s)) {}",
+                "shared void callback(void handler(Object s)) {}",
+                "void useCallback() { callback(print); }",
+                true);
+    }
+
+    @Test
+    public void annotationArgumentChange() throws CoreException, UnsupportedEncodingException {
+        checkDependentTypechecked(
+                "doc(\"first\") shared void annotated() {}",
+                "doc(\"second\") shared void annotated() {}",
+                "void useAnnotated() { annotated(); }",
+                true);
+    }
+}
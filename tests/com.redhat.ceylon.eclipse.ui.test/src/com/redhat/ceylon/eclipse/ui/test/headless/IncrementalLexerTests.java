@@ -0,0 +1,271 @@
+package com.redhat.ceylon.eclipse.ui.test.headless;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.junit.Test;
+
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
+import com.redhat.ceylon.compiler.typechecker.util.NewlineFixingStringStream;
+import com.redhat.ceylon.eclipse.code.parse.IncrementalLexer;
+
+/**
+ * Checks that lexing and parsing successive versions of a
+ * text with an {@link IncrementalLexer} gives the same
+ * tokens and the same errors as lexing and parsing each
+ * version from scratch.
+ */
+public class IncrementalLexerTests {
+
+    private static final String SOURCE =
+            "import ceylon.collection { ArrayList }\n" +
+            "\n" +
+            "\"A counter.\"\n" +
+            "by (\"me\")\n" +
+            "shared class Counter(shared variable Integer count) {\n" +
+            "    shared void increment() => count++;\n" +
+            "}\n" +
+            "\n" +
+            "shared void run() {\n" +
+            "    value counter = Counter(0);\n" +
+            "    counter.increment();\n" +
+            "    print(counter.count);\n" +
+            "}\n";
+
+    private static final class Edit {
+        final String replaced;
+        final String replacement;
+        Edit(String replaced, String replacement) {
+            this.replaced = replaced;
+            this.replacement = replacement;
+        }
+        String apply(String text) {
+            int offset = text.indexOf(replaced);
+            assertTrue("Not found: " + replaced, offset>=0);
+            return text.substring(0, offset) + replacement +
+                    text.substring(offset+replaced.length());
+        }
+    }
+
+    private static Edit edit(String replaced, String replacement) {
+        return new Edit(replaced, replacement);
+    }
+
+    /**
+     * Lexes and parses the source, then each edited version
+     * of it, both incrementally and from scratch, and
+     * compares the results.
+     */
+    private static void checkEdits(Edit... edits)
+            throws RecognitionException {
+        IncrementalLexer lexer = new IncrementalLexer();
+        String text = SOURCE;
+        check(lexer, text);
+        for (Edit edit: edits) {
+            text = edit.apply(text);
+            check(lexer, text);
+        }
+    }
+
+    private static void check(IncrementalLexer lexer, String text)
+            throws RecognitionException {
+        List<CommonToken> lexedTokens = lexer.getTokens(text);
+        CommonTokenStream tokenStream =
+                IncrementalLexer.getTokenStream(lexedTokens);
+        CeylonParser parser = new CeylonParser(tokenStream);
+        parser.compilationUnit();
+        @SuppressWarnings("unchecked")
+        List<CommonToken> parsedTokens = tokenStream.getTokens();
+        lexer.parsed(lexedTokens, parsedTokens);
+
+        CeylonLexer fullLexer =
+                new CeylonLexer(new NewlineFixingStringStream(text));
+        CommonTokenStream fullTokenStream =
+                new CommonTokenStream(fullLexer);
+        fullTokenStream.fill();
+        @SuppressWarnings("unchecked")
+        List<CommonToken> fullTokens = fullTokenStream.getTokens();
+        assertEquals("Lexed tokens of:\n" + text,
+                describe(fullTokens), describe(lexedTokens));
+        CeylonParser fullParser = new CeylonParser(fullTokenStream);
+        fullParser.compilationUnit();
+
+        assertEquals("Parse errors of:\n" + text,
+                describeErrors(fullParser.getErrors()),
+                describeErrors(parser.getErrors()));
+        assertEquals("Parsed tokens of:\n" + text,
+                describe(fullTokens), describe(parsedTokens));
+    }
+
+    private static List<String> describe(List<CommonToken> tokens) {
+        List<String> descriptions = new ArrayList<String>();
+        for (CommonToken token: tokens) {
+            descriptions.add(token.getType() + ":" +
+                    token.getChannel() + ":" +
+                    token.getStartIndex() + "-" +
+                    token.getStopIndex() + ":" +
+                    token.getLine() + "," +
+                    token.getCharPositionInLine() + ":" +
+                    token.getText());
+        }
+        return descriptions;
+    }
+
+    private static List<String> describeErrors(List<ParseError> errors) {
+        List<String> descriptions = new ArrayList<String>();
+        for (ParseError error: errors) {
+            descriptions.add(error.getLine() + ": " +
+                    error.getMessage());
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void editAfterAnnotations() throws RecognitionException {
+        checkEdits(
+                edit("print(counter.count);",
+                     "print(counter.count);\n    counter.increment();"),
+                edit("value counter", "variable value counter"),
+                edit("    print(", "    print ("));
+    }
+
+    @Test
+    public void editBeforeImportsAndAnnotations() throws RecognitionException {
+        checkEdits(
+                edit("import ceylon", "//first\nimport ceylon"),
+                edit("\"A counter.\"", "\"A simple counter.\""),
+                edit("//first\n", ""));
+    }
+
+    @Test
+    public void editAnnotations() throws RecognitionException {
+        checkEdits(
+                edit("by (\"me\")", "by (\"me\", \"you\")"),
+                edit("shared class", "shared abstract class"),
+                edit("abstract ", ""),
+                edit("shared void run", "void run"));
+    }
+
+    @Test
+    public void editImports() throws RecognitionException {
+        checkEdits(
+                edit("{ ArrayList }", "{ ArrayList, HashMap }"),
+                edit("ceylon.collection", "ceylon.language"),
+                edit("import ceylon.language", "import ceylon.collection"));
+    }
+
+    @Test
+    public void introduceAndFixSyntaxErrors() throws RecognitionException {
+        checkEdits(
+                edit("Counter(0);", "Counter(0"),
+                edit("Counter(0", "Counter(0);"),
+                edit("shared void increment()", "shared void increment("),
+                edit("shared void increment(", "shared void increment()"));
+    }
+
+    @Test
+    public void editWhitespaceAndComments() throws RecognitionException {
+        IncrementalLexer lexer = new IncrementalLexer();
+        String text = SOURCE;
+        check(lexer, text);
+        List<CommonToken> tokens = lexer.getTokens(text);
+        List<String> descriptions = describe(tokens);
+        Edit[] edits = {
+                edit("    print(", "        print("),
+                edit("}\n\nshared void", "}\n\n//the entry point\nshared void"),
+                edit("count++;", "count++; /* increment */"),
+                edit("\n\n", "\n")
+        };
+        for (Edit edit: edits) {
+            text = edit.apply(text);
+            check(lexer, text);
+            List<CommonToken> newTokens = lexer.getTokens(text);
+            assertTrue("Not the same syntax:\n" + text,
+                    IncrementalLexer.isSameSyntax(tokens, newTokens));
+            assertEquals("The tokens of the first text were modified",
+                    descriptions, describe(tokens));
+        }
+        text = edit("counter.count)", "counter.count+1)").apply(text);
+        check(lexer, text);
+        assertFalse("The same syntax:\n" + text,
+                IncrementalLexer.isSameSyntax(tokens,
+                        lexer.getTokens(text)));
+        assertEquals("The tokens of the first text were modified",
+                descriptions, describe(tokens));
+    }
+
+    @Test
+    public void moveMultilineString() throws RecognitionException {
+        IncrementalLexer lexer = new IncrementalLexer();
+        String text =
+                "shared void run() {\n" +
+                "    print(\"first line\n" +
+                "           second line\");\n" +
+                "}\n";
+        check(lexer, text);
+        List<CommonToken> tokens = lexer.getTokens(text);
+        //moving the lines around the string doesn't change
+        //its value
+        text = edit("shared void", "//the entry point\nshared void").apply(text);
+        check(lexer, text);
+        assertTrue("Not the same syntax:\n" + text,
+                IncrementalLexer.isSameSyntax(tokens, lexer.getTokens(text)));
+        //moving the opening quote changes the indentation
+        //that is stripped from the second line
+        text = edit("    print(", "        print(").apply(text);
+        check(lexer, text);
+        assertFalse("The same syntax:\n" + text,
+                IncrementalLexer.isSameSyntax(tokens, lexer.getTokens(text)));
+    }
+
+    @Test
+    public void alternateTexts() throws RecognitionException {
+        IncrementalLexer lexer = new IncrementalLexer();
+        String text = SOURCE;
+        String otherText = edit("\"A counter.\"", "\"A counter.").apply(text);
+        List<CommonToken> tokens = lexer.getTokens(text);
+        List<String> descriptions = describe(tokens);
+        List<CommonToken> otherTokens = lexer.getTokens(otherText);
+        assertFalse("No lexical errors in:\n" + otherText,
+                IncrementalLexer.getErrors(otherTokens).isEmpty());
+        assertTrue("Lexical errors in:\n" + text,
+                IncrementalLexer.getErrors(tokens).isEmpty());
+        assertEquals("The tokens of the first text were modified",
+                descriptions, describe(tokens));
+        //the token stream of the first text, requested
+        //after the other text was lexed, is still the
+        //token stream of the first text
+        CommonTokenStream tokenStream =
+                IncrementalLexer.getTokenStream(tokens);
+        CeylonParser parser = new CeylonParser(tokenStream);
+        parser.compilationUnit();
+        assertTrue("Parse errors in:\n" + text,
+                parser.getErrors().isEmpty());
+        @SuppressWarnings("unchecked")
+        List<CommonToken> parsedTokens = tokenStream.getTokens();
+        assertEquals("Parsed tokens of:\n" + text,
+                descriptions.size(), parsedTokens.size());
+        check(lexer, text);
+        assertNull("Relexed from another version",
+                IncrementalLexer.getRelexedRegion(
+                        lexer.getTokens(text), tokens));
+    }
+
+    @Test
+    public void introduceAndFixLexicalErrors() throws RecognitionException {
+        checkEdits(
+                edit("\"A counter.\"", "\"A counter."),
+                edit("\"A counter.", "\"A counter.\""));
+    }
+
+}